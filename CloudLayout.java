@@ -0,0 +1,532 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Positions of the words of a tag cloud on a fixed canvas, for clouds that
+ * are rendered as images (SVG) or by another program (JSON) rather than laid
+ * out by a browser.
+ *
+ * Words get the font sizes {@code outputBody} gives them, and their boxes are
+ * estimated from the font size alone: {@value #GLYPH_WIDTH} em per character
+ * and {@value #LINE_HEIGHT} em of height (the SVG output stretches each word
+ * to exactly its box). Words are placed largest first, each at the first
+ * free spot along an Archimedean spiral out of the middle of the canvas,
+ * stretched to the canvas's proportions. Whether a spot is free is asked of a
+ * {@code RectangleQuadtree} of the boxes placed so far, so each test only
+ * looks at nearby words. Words that do not fit on the canvas are left out.
+ *
+ * Boxes are only ever added, so a spot found taken stays taken, also for
+ * any box that contains the one tested there. Since every word's box is
+ * centered on the same spiral, and a word with no smaller font and no fewer
+ * characters has a box containing the other's, a word starts its walk where
+ * the last such word placed (or gave up) stopped, instead of crossing the
+ * crowded middle again.
+ */
+public final class CloudLayout {
+
+    /**
+     * Smallest font size.
+     */
+    private static final int MIN_FONT = 11;
+
+    /**
+     * Largest font size.
+     */
+    private static final int MAX_FONT = 48;
+
+    /**
+     * Estimated width of a character, in em.
+     */
+    private static final double GLYPH_WIDTH = 0.6;
+
+    /**
+     * Height of a word's box, in em.
+     */
+    private static final double LINE_HEIGHT = 1.2;
+
+    /**
+     * Baseline of a word, in em below the top of its box.
+     */
+    private static final double BASELINE = 0.95;
+
+    /**
+     * Share of an automatically sized canvas the word boxes cover.
+     */
+    private static final double FILL = 0.4;
+
+    /**
+     * Width to height ratio of an automatically sized canvas.
+     */
+    private static final double ASPECT = 4.0 / 3.0;
+
+    /**
+     * Distance between successive turns of the spiral, in pixels.
+     */
+    private static final double TURN_SPACING = 4;
+
+    /**
+     * Greatest distance between successive spots tried on the spiral, in
+     * pixels.
+     */
+    private static final double STEP = 2;
+
+    /**
+     * Margin kept around every word, in pixels.
+     */
+    private static final int PADDING = 1;
+
+    /**
+     * Words of at least this many characters share one place to resume the
+     * spiral from.
+     */
+    private static final int MAX_CHARS = 64;
+
+    /**
+     * Width of the canvas.
+     */
+    private final int width;
+
+    /**
+     * Height of the canvas.
+     */
+    private final int height;
+
+    /**
+     * Placed words, in placement order (largest first).
+     */
+    private final String[] words;
+
+    /**
+     * Counts of the placed words.
+     */
+    private final int[] counts;
+
+    /**
+     * Font sizes of the placed words.
+     */
+    private final int[] fontSizes;
+
+    /**
+     * Left edges of the placed words' boxes.
+     */
+    private final int[] xs;
+
+    /**
+     * Top edges of the placed words' boxes.
+     */
+    private final int[] ys;
+
+    /**
+     * Widths of the placed words' boxes.
+     */
+    private final int[] widths;
+
+    /**
+     * Heights of the placed words' boxes.
+     */
+    private final int[] heights;
+
+    /**
+     * Number of words placed.
+     */
+    private int size;
+
+    /**
+     * Number of words that did not fit.
+     */
+    private int dropped;
+
+    /**
+     * Constructor for an empty layout with room for {@code capacity} words.
+     *
+     * @param width
+     *            width of the canvas
+     * @param height
+     *            height of the canvas
+     * @param capacity
+     *            the number of words to place
+     */
+    private CloudLayout(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.words = new String[capacity];
+        this.counts = new int[capacity];
+        this.fontSizes = new int[capacity];
+        this.xs = new int[capacity];
+        this.ys = new int[capacity];
+        this.widths = new int[capacity];
+        this.heights = new int[capacity];
+    }
+
+    /**
+     * Returns the font size {@code outputBody} gives a word.
+     *
+     * @param count
+     *            the count of the word
+     * @param maxCount
+     *            the highest count in the cloud
+     * @return the font size
+     */
+    private static int fontSize(int count, int maxCount) {
+        return (int) (MIN_FONT
+                + ((MAX_FONT - MIN_FONT) * (long) count) / maxCount);
+    }
+
+    /**
+     * Returns the estimated width of {@code word} at {@code fontSize}.
+     *
+     * @param word
+     *            the word
+     * @param fontSize
+     *            the font size
+     * @return the width of the word's box
+     */
+    private static int boxWidth(String word, int fontSize) {
+        return (int) Math.ceil(characters(word) * fontSize * GLYPH_WIDTH);
+    }
+
+    /**
+     * Returns the number of characters (code points) of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return the number of characters in {@code word}
+     */
+    private static int characters(String word) {
+        return word.codePointCount(0, word.length());
+    }
+
+    /**
+     * Returns the height of a word's box at {@code fontSize}.
+     *
+     * @param fontSize
+     *            the font size
+     * @return the height of the box
+     */
+    private static int boxHeight(int fontSize) {
+        return (int) Math.ceil(fontSize * LINE_HEIGHT);
+    }
+
+    /**
+     * Lays out {@code top} on a canvas sized for it: {@value #ASPECT} times as
+     * wide as high, with the word boxes covering about {@value #FILL} of it.
+     *
+     * @param top
+     *            the words of the cloud
+     * @return the layout
+     */
+    public static CloudLayout of(TopWords top) {
+        assert top != null : "Violation of: top is not null";
+
+        int maxCount = Math.max(top.maxCount(), 1);
+        double area = 0;
+        int widest = 1;
+        for (int i = 0; i < top.size(); i++) {
+            int fontSize = fontSize(top.count(i), maxCount);
+            int w = boxWidth(top.word(i), fontSize) + 2 * PADDING;
+            area += (double) w * (boxHeight(fontSize) + 2 * PADDING);
+            widest = Math.max(widest, w);
+        }
+        int canvasWidth = Math.max(widest,
+                (int) Math.ceil(Math.sqrt(area / FILL * ASPECT)));
+        int canvasHeight = Math.max(boxHeight(MAX_FONT) + 2 * PADDING,
+                (int) Math.ceil(canvasWidth / ASPECT));
+        return of(top, canvasWidth, canvasHeight);
+    }
+
+    /**
+     * Lays out {@code top} on a {@code width} by {@code height} canvas.
+     *
+     * @param top
+     *            the words of the cloud
+     * @param width
+     *            width of the canvas
+     * @param height
+     *            height of the canvas
+     * @return the layout
+     * @requires width > 0 and height > 0
+     */
+    public static CloudLayout of(TopWords top, int width, int height) {
+        assert top != null : "Violation of: top is not null";
+        assert width > 0 && height > 0 : "Violation of: width > 0 and height > 0";
+
+        PipelineStage stage = PipelineStage.start("layout");
+        int maxCount = Math.max(top.maxCount(), 1);
+
+        /*
+         * Largest first; words of equal count stay in alphabetical order
+         */
+        Integer[] order = new Integer[top.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(top.count(b),
+                top.count(a)));
+
+        CloudLayout layout = new CloudLayout(width, height, order.length);
+        RectangleQuadtree placed = new RectangleQuadtree(width, height);
+        /*
+         * resume[f][c]: angle up to which the spiral is known to be full for
+         * font size MIN_FONT + f and c characters (MAX_CHARS - 1 standing for
+         * that many or more), and therefore for any larger box
+         */
+        double[][] resume = new double[MAX_FONT - MIN_FONT + 1][MAX_CHARS];
+        for (int i : order) {
+            String word = top.word(i);
+            int fontSize = fontSize(top.count(i), maxCount);
+            int chars = Math.min(characters(word), MAX_CHARS - 1);
+            double start = 0;
+            for (int f = 0; f <= fontSize - MIN_FONT; f++) {
+                for (int c = 0; c <= chars; c++) {
+                    start = Math.max(start, resume[f][c]);
+                }
+            }
+            double end = layout.place(placed, word, top.count(i), fontSize,
+                    start);
+            if (end == Double.POSITIVE_INFINITY) {
+                layout.dropped++;
+            }
+            if (chars < MAX_CHARS - 1) {
+                resume[fontSize - MIN_FONT][chars] = end;
+            }
+        }
+        stage.end(0, 0, order.length, 0);
+        return layout;
+    }
+
+    /**
+     * Walks the spiral out of the middle of the canvas, from angle
+     * {@code theta}, until the first spot where the word's box (plus
+     * padding) fits, and places the word there.
+     *
+     * @param placed
+     *            the boxes placed so far
+     * @param word
+     *            the word
+     * @param count
+     *            the count of the word
+     * @param fontSize
+     *            the font size of the word
+     * @param start
+     *            angle on the spiral to start from
+     * @return the angle of the spot after the one taken, or
+     *         {@code Double.POSITIVE_INFINITY} if the word did not fit
+     * @updates this, placed
+     */
+    private double place(RectangleQuadtree placed, String word, int count,
+            int fontSize, double start) {
+        int w = boxWidth(word, fontSize);
+        int h = boxHeight(fontSize);
+        int boxW = w + 2 * PADDING;
+        int boxH = h + 2 * PADDING;
+        double centerX = (this.width - boxW) / 2.0;
+        double centerY = (this.height - boxH) / 2.0;
+        double stretch = (double) this.height / this.width;
+        double maxRadius = Math.hypot(this.width, this.height / stretch) / 2;
+        double theta = start;
+        double radius = TURN_SPACING * theta / (2 * Math.PI);
+        while (radius <= maxRadius) {
+            int x = (int) Math.round(centerX + radius * Math.cos(theta));
+            int y = (int) Math.round(
+                    centerY + radius * stretch * Math.sin(theta));
+            if (x >= 0 && y >= 0 && x + boxW <= this.width
+                    && y + boxH <= this.height
+                    && !placed.intersects(x, y, x + boxW, y + boxH)) {
+                placed.add(x, y, x + boxW, y + boxH);
+                this.words[this.size] = word;
+                this.counts[this.size] = count;
+                this.fontSizes[this.size] = fontSize;
+                this.xs[this.size] = x + PADDING;
+                this.ys[this.size] = y + PADDING;
+                this.widths[this.size] = w;
+                this.heights[this.size] = h;
+                this.size++;
+                return theta + STEP / Math.max(radius, STEP);
+            }
+            theta += STEP / Math.max(radius, STEP);
+            radius = TURN_SPACING * theta / (2 * Math.PI);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the width of the canvas.
+     *
+     * @return the width of the canvas
+     */
+    public int width() {
+        return this.width;
+    }
+
+    /**
+     * Returns the height of the canvas.
+     *
+     * @return the height of the canvas
+     */
+    public int height() {
+        return this.height;
+    }
+
+    /**
+     * Returns the number of words placed.
+     *
+     * @return the number of words placed
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of words that did not fit on the canvas.
+     *
+     * @return the number of words left out
+     */
+    public int dropped() {
+        return this.dropped;
+    }
+
+    /**
+     * Returns the {@code i}-th word placed.
+     *
+     * @param i
+     *            the position of the word in placement order
+     * @return the word
+     * @requires 0 <= i < size()
+     */
+    public String word(int i) {
+        return this.words[i];
+    }
+
+    /**
+     * Returns the left edge of the box of the {@code i}-th word placed.
+     *
+     * @param i
+     *            the position of the word in placement order
+     * @return the left edge of its box
+     * @requires 0 <= i < size()
+     */
+    public int x(int i) {
+        return this.xs[i];
+    }
+
+    /**
+     * Returns the top edge of the box of the {@code i}-th word placed.
+     *
+     * @param i
+     *            the position of the word in placement order
+     * @return the top edge of its box
+     * @requires 0 <= i < size()
+     */
+    public int y(int i) {
+        return this.ys[i];
+    }
+
+    /**
+     * Returns the width of the box of the {@code i}-th word placed.
+     *
+     * @param i
+     *            the position of the word in placement order
+     * @return the width of its box
+     * @requires 0 <= i < size()
+     */
+    public int width(int i) {
+        return this.widths[i];
+    }
+
+    /**
+     * Returns the height of the box of the {@code i}-th word placed.
+     *
+     * @param i
+     *            the position of the word in placement order
+     * @return the height of its box
+     * @requires 0 <= i < size()
+     */
+    public int height(int i) {
+        return this.heights[i];
+    }
+
+    /**
+     * Writes the layout as an SVG image, UTF-8 encoded, with each word
+     * stretched to exactly its box.
+     *
+     * @param file
+     *            the output file
+     * @param inputFileName
+     *            the name of the input file, used as the image title
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void writeSvg(Path file, String inputFileName) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert inputFileName != null : "Violation of: inputFileName is not null";
+
+        PipelineStage stage = PipelineStage.start("writeSvg");
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""
+                    + this.width + "\" height=\"" + this.height
+                    + "\" viewBox=\"0 0 " + this.width + " " + this.height
+                    + "\" font-family=\"sans-serif\">\n");
+            out.write("<title>Top " + this.size + " words in "
+                    + HtmlRenderer.escape(inputFileName) + "</title>\n");
+            for (int i = 0; i < this.size; i++) {
+                int baseline = this.ys[i]
+                        + (int) Math.round(this.fontSizes[i] * BASELINE);
+                out.write("<text x=\"" + this.xs[i] + "\" y=\"" + baseline
+                        + "\" font-size=\"" + this.fontSizes[i]
+                        + "\" textLength=\"" + this.widths[i]
+                        + "\" lengthAdjust=\"spacingAndGlyphs\"><title>count:"
+                        + this.counts[i] + "</title>"
+                        + HtmlRenderer.escape(this.words[i]) + "</text>\n");
+            }
+            out.write("</svg>\n");
+        }
+        stage.end(0, 0, this.size, 0);
+    }
+
+    /**
+     * Writes the layout as JSON, UTF-8 encoded: the canvas size and, for each
+     * word in placement order, its text, count, font size and box.
+     *
+     * @param file
+     *            the output file
+     * @param inputFileName
+     *            the name of the input file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void writeJson(Path file, String inputFileName) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert inputFileName != null : "Violation of: inputFileName is not null";
+
+        PipelineStage stage = PipelineStage.start("writeJson");
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            out.write("{\n  \"input\": "
+                    + PipelineStage.jsonString(inputFileName)
+                    + ",\n  \"width\": " + this.width + ",\n  \"height\": "
+                    + this.height + ",\n  \"dropped\": " + this.dropped
+                    + ",\n  \"words\": [");
+            for (int i = 0; i < this.size; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write("\n    {\"text\": "
+                        + PipelineStage.jsonString(this.words[i])
+                        + ", \"count\": " + this.counts[i] + ", \"fontSize\": "
+                        + this.fontSizes[i] + ", \"x\": " + this.xs[i]
+                        + ", \"y\": " + this.ys[i] + ", \"width\": "
+                        + this.widths[i] + ", \"height\": " + this.heights[i]
+                        + "}");
+            }
+            out.write("\n  ]\n}\n");
+        }
+        stage.end(0, 0, this.size, 0);
+    }
+
+}
@@ -0,0 +1,444 @@
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Word counts shared by many producer threads, for one live tag cloud of
+ * text arriving from everywhere at once (request bodies, chat messages).
+ *
+ * A producer never touches the shared counts per word: each thread tokenizes
+ * its fragments into its own {@code WordCountTable} batch and flushes the
+ * batch once it holds {@value #FLUSH_WORDS} words, or on its first fragment
+ * {@value #FLUSH_MILLIS} ms after the last flush, or when the thread calls
+ * {@link #flush()}. Until then the words of a batch are not visible. Every
+ * batch is registered with the counter, so {@link #top(int)} and
+ * {@link #snapshot()} first flush the batches of producers that have gone
+ * idle (or died) for {@value #FLUSH_MILLIS} ms; a batch is only ever
+ * flushed under its own lock, which its producer holds while adding. The
+ * shared counts are split into stripes by word hash, each a
+ * {@code WordCountTable} with its own lock; a flush sorts the batch by stripe
+ * and takes each stripe's lock once, so producers only contend when they
+ * flush into the same stripe at the same time.
+ *
+ * Every flush is applied as a whole under the shared side of a read-write
+ * lock, and {@link #top(int)} and {@link #snapshot()} read under its
+ * exclusive side, so a snapshot contains every flush or none of it. While a
+ * snapshot is being taken, producers do not wait for it: they keep filling
+ * their batches and flush after it, unless a batch reaches
+ * {@value #MAX_BATCH_WORDS} words.
+ */
+public final class ConcurrentWordCounter {
+
+    /**
+     * Number of words in a batch that triggers a flush.
+     */
+    private static final int FLUSH_WORDS = 1 << 12;
+
+    /**
+     * Number of words in a batch beyond which a flush waits for a snapshot
+     * being taken instead of being put off.
+     */
+    private static final int MAX_BATCH_WORDS = 1 << 16;
+
+    /**
+     * Age of a batch, in milliseconds, that triggers a flush.
+     */
+    private static final int FLUSH_MILLIS = 100;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /**
+     * Multiplier mixing word hashes into stripe numbers; different from the
+     * one {@code WordCountTable} uses, so the words of one stripe still
+     * spread over its slots.
+     */
+    private static final int STRIPE_SPREAD = 0x85EBCA6B;
+
+    /**
+     * Least number of stripes chosen by default.
+     */
+    private static final int MIN_STRIPES = 16;
+
+    /**
+     * Stripes chosen by default per available processor.
+     */
+    private static final int STRIPES_PER_PROCESSOR = 4;
+
+    /**
+     * Initial size of a producer's fragment buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 12;
+
+    /**
+     * Per-thread tokenizer and batch of words not flushed yet.
+     */
+    private final class Batch {
+
+        /**
+         * Held while the batch is being filled or flushed.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The thread the batch belongs to.
+         */
+        private final Thread owner = Thread.currentThread();
+
+        /**
+         * The thread's tokenizer.
+         */
+        private final WordTokenizer tokenizer = new WordTokenizer(
+                ConcurrentWordCounter.this.separators);
+
+        /**
+         * Words counted since the last flush.
+         */
+        private final WordCountTable table = new WordCountTable();
+
+        /**
+         * Copy of the fragment being tokenized, which is folded in place.
+         */
+        private char[] text = new char[BUFFER_SIZE];
+
+        /**
+         * {@code stripeOf[id]} is the stripe of word {@code id} of
+         * {@code table}, during a flush.
+         */
+        private int[] stripeOf = new int[FLUSH_WORDS];
+
+        /**
+         * Ids of {@code table} sorted by stripe, during a flush.
+         */
+        private int[] order = new int[FLUSH_WORDS];
+
+        /**
+         * {@code starts[s]} is the first index of {@code order} holding a
+         * word of stripe {@code s}, during a flush.
+         */
+        private final int[] starts = new int[
+                ConcurrentWordCounter.this.stripes.length + 1];
+
+        /**
+         * {@code System.nanoTime()} of the last flush.
+         */
+        private long flushedAt = System.nanoTime();
+
+        /**
+         * Constructor; registers the batch with the counter.
+         */
+        Batch() {
+            ConcurrentWordCounter.this.registered.add(this);
+        }
+    }
+
+    /**
+     * The characters that separate words.
+     */
+    private final String separators;
+
+    /**
+     * The shared counts; the lock of a stripe is the table itself.
+     */
+    private final WordCountTable[] stripes;
+
+    /**
+     * Right shift turning a mixed hash into a stripe number.
+     */
+    private final int shift;
+
+    /**
+     * Held shared by flushes and exclusively by snapshots.
+     */
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    /**
+     * Number of snapshots waiting for or holding the gate; producers put off
+     * their flushes while it is not 0.
+     */
+    private final AtomicInteger snapshots = new AtomicInteger();
+
+    /**
+     * Batches of every producer thread that has added words, alive or not.
+     */
+    private final Set<Batch> registered = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Batch of each producer thread.
+     */
+    private final ThreadLocal<Batch> batches = ThreadLocal
+            .withInitial(Batch::new);
+
+    /**
+     * Constructor with a number of stripes suited to the machine.
+     *
+     * @param separatorString
+     *            the characters that separate words
+     */
+    public ConcurrentWordCounter(String separatorString) {
+        this(separatorString, Math.max(MIN_STRIPES, Integer.highestOneBit(
+                Runtime.getRuntime().availableProcessors()
+                        * STRIPES_PER_PROCESSOR * 2 - 1)));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param separatorString
+     *            the characters that separate words
+     * @param stripes
+     *            number of independently locked parts of the shared counts
+     * @requires stripes >= 2 and [stripes is a power of 2]
+     */
+    public ConcurrentWordCounter(String separatorString, int stripes) {
+        assert separatorString != null : "Violation of: separatorString is not null";
+        assert stripes >= 2 && Integer.bitCount(stripes) == 1 : "Violation of: stripes >= 2 and stripes is a power of 2";
+
+        this.separators = separatorString;
+        this.stripes = new WordCountTable[stripes];
+        for (int s = 0; s < stripes; s++) {
+            this.stripes[s] = new WordCountTable();
+        }
+        this.shift = Integer.numberOfLeadingZeros(stripes) + 1;
+    }
+
+    /**
+     * Counts the words of {@code fragment} into the calling thread's batch,
+     * flushing the batch if it is due.
+     *
+     * @param fragment
+     *            the text
+     * @updates this
+     */
+    public void add(CharSequence fragment) {
+        assert fragment != null : "Violation of: fragment is not null";
+
+        Batch batch = this.batches.get();
+        batch.lock.lock();
+        try {
+            int length = fragment.length();
+            if (length > batch.text.length) {
+                batch.text = new char[Math.max(length, batch.text.length * 2)];
+            }
+            char[] text = batch.text;
+            for (int i = 0; i < length; i++) {
+                text[i] = fragment.charAt(i);
+            }
+            batch.tokenizer.tokenize(text, 0, length, true, batch.table);
+
+            long words = batch.table.totalCount();
+            if (words >= MAX_BATCH_WORDS) {
+                this.flush(batch, true);
+            } else if (words >= FLUSH_WORDS || (words > 0 && System.nanoTime()
+                    - batch.flushedAt >= FLUSH_MILLIS * NANOS_PER_MILLI)) {
+                this.flush(batch, false);
+            }
+        } finally {
+            batch.lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the calling thread's batch into the shared counts, waiting for
+     * a snapshot being taken if necessary, so that every word the thread has
+     * added is in the next snapshot.
+     *
+     * @updates this
+     */
+    public void flush() {
+        Batch batch = this.batches.get();
+        batch.lock.lock();
+        try {
+            this.flush(batch, true);
+        } finally {
+            batch.lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every batch that was last flushed {@value #FLUSH_MILLIS} ms ago
+     * or more and is not being filled, and forgets the empty batches of
+     * threads that have died. Called before a snapshot, so words added by
+     * producers that have since gone idle are not held back indefinitely.
+     */
+    private void flushStale() {
+        long now = System.nanoTime();
+        for (Batch batch : this.registered) {
+            if (batch.lock.tryLock()) {
+                try {
+                    if (now - batch.flushedAt >= FLUSH_MILLIS
+                            * NANOS_PER_MILLI) {
+                        this.flush(batch, true);
+                    }
+                    if (batch.table.size() == 0 && !batch.owner.isAlive()) {
+                        this.registered.remove(batch);
+                    }
+                } finally {
+                    batch.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds {@code batch} to the shared counts and clears it, unless
+     * {@code wait} is false and a snapshot is being taken.
+     *
+     * @param batch
+     *            a batch whose lock the calling thread holds
+     * @param wait
+     *            whether to wait for a snapshot being taken
+     * @updates this, batch
+     */
+    private void flush(Batch batch, boolean wait) {
+        WordCountTable table = batch.table;
+        int size = table.size();
+        if (size == 0) {
+            return;
+        }
+        Lock shared = this.gate.readLock();
+        if (wait) {
+            shared.lock();
+        } else if (this.snapshots.get() > 0 || !shared.tryLock()) {
+            return;
+        }
+        try {
+            /*
+             * Sort the batch by stripe (counting sort), then add each
+             * stripe's words under its lock, taken once
+             */
+            if (size > batch.order.length) {
+                batch.order = new int[Math.max(size, batch.order.length * 2)];
+                batch.stripeOf = new int[batch.order.length];
+            }
+            int[] starts = batch.starts;
+            Arrays.fill(starts, 0);
+            for (int id = 0; id < size; id++) {
+                int s = (table.word(id).hashCode()
+                        * STRIPE_SPREAD) >>> this.shift;
+                batch.stripeOf[id] = s;
+                starts[s + 1]++;
+            }
+            for (int s = 0; s < this.stripes.length; s++) {
+                starts[s + 1] += starts[s];
+            }
+            for (int id = 0; id < size; id++) {
+                int s = batch.stripeOf[id];
+                batch.order[starts[s]] = id;
+                starts[s]++;
+            }
+            /*
+             * starts[s] is now the end of stripe s, and the start of s + 1
+             */
+            int from = 0;
+            for (int s = 0; s < this.stripes.length; s++) {
+                int to = starts[s];
+                if (from < to) {
+                    WordCountTable stripe = this.stripes[s];
+                    synchronized (stripe) {
+                        for (int i = from; i < to; i++) {
+                            int id = batch.order[i];
+                            stripe.add(table.word(id), table.count(id));
+                        }
+                    }
+                }
+                from = to;
+            }
+        } finally {
+            shared.unlock();
+        }
+        table.clear();
+        batch.flushedAt = System.nanoTime();
+    }
+
+    /**
+     * Flushes stale batches, then acquires the gate exclusively, for a
+     * snapshot.
+     */
+    private void beginSnapshot() {
+        this.flushStale();
+        this.snapshots.incrementAndGet();
+        this.gate.writeLock().lock();
+    }
+
+    /**
+     * Releases the gate after a snapshot.
+     */
+    private void endSnapshot() {
+        this.gate.writeLock().unlock();
+        this.snapshots.decrementAndGet();
+    }
+
+    /**
+     * Selects the {@code k} most frequent words of everything flushed so far,
+     * ranked by decreasing count and then by increasing alphabetical order.
+     * Flushes are held back while the words are selected, which takes
+     * O(V log k) time for V distinct words, and no longer.
+     *
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words (all of them if there are fewer), in
+     *         alphabetical order
+     * @requires k > 0
+     */
+    public TopWords top(int k) {
+        assert k > 0 : "Violation of: k > 0";
+
+        PipelineStage stage = PipelineStage.start("concurrentTop");
+        TopWords.Selector selector;
+        long total = 0;
+        int distinct = 0;
+        this.beginSnapshot();
+        try {
+            for (WordCountTable stripe : this.stripes) {
+                distinct += stripe.size();
+            }
+            selector = new TopWords.Selector(
+                    Math.min(k, Math.max(distinct, 1)));
+            for (WordCountTable stripe : this.stripes) {
+                int size = stripe.size();
+                for (int id = 0; id < size; id++) {
+                    selector.offer(stripe.word(id), stripe.count(id));
+                }
+                total += stripe.totalCount();
+            }
+        } finally {
+            this.endSnapshot();
+        }
+        stage.end(0, total, distinct, 0);
+        return selector.result();
+    }
+
+    /**
+     * Returns a copy of everything flushed so far.
+     *
+     * @return a new table of the shared counts
+     */
+    public WordCountTable snapshot() {
+        PipelineStage stage = PipelineStage.start("concurrentSnapshot");
+        WordCountTable copy;
+        this.beginSnapshot();
+        try {
+            int size = 0;
+            for (WordCountTable stripe : this.stripes) {
+                size += stripe.size();
+            }
+            copy = new WordCountTable(size);
+            for (WordCountTable stripe : this.stripes) {
+                copy.addAll(stripe);
+            }
+        } finally {
+            this.endSnapshot();
+        }
+        stage.end(0, copy.totalCount(), copy.size(),
+                stage.recording() ? copy.estimatedBytes() : 0);
+        return copy;
+    }
+
+}
@@ -0,0 +1,259 @@
+import java.util.Arrays;
+
+/**
+ * Word counts of several corpora over one shared vocabulary: every distinct
+ * word is stored once, in a {@code WordCountTable} that gives it an id, and
+ * each corpus has a column of {@code int} counts indexed by those ids. The
+ * words of all corpora therefore cost one {@code String} each, however many
+ * corpora use them, plus four bytes per word and corpus.
+ *
+ * Besides the plain top words of each corpus, the matrix selects the words
+ * that distinguish a corpus from all the others, scored with Dunning's
+ * log-likelihood ratio (G²).
+ */
+public final class CorpusMatrix {
+
+    /**
+     * The shared vocabulary; its counts are the totals over all corpora.
+     */
+    private final WordCountTable dictionary = new WordCountTable();
+
+    /**
+     * {@code columns[c][id]} is the count of word {@code id} in corpus
+     * {@code c}; a column may be shorter than the vocabulary, in which case
+     * the missing counts are 0.
+     */
+    private final int[][] columns;
+
+    /**
+     * Number of words counted in each corpus.
+     */
+    private final long[] tokens;
+
+    /**
+     * Constructor.
+     *
+     * @param corpora
+     *            the number of corpora
+     * @requires corpora > 0
+     */
+    public CorpusMatrix(int corpora) {
+        assert corpora > 0 : "Violation of: corpora > 0";
+
+        this.columns = new int[corpora][0];
+        this.tokens = new long[corpora];
+    }
+
+    /**
+     * Returns a sink counting the words it receives into corpus {@code c}.
+     *
+     * @param c
+     *            the corpus
+     * @return the sink for corpus {@code c}
+     * @requires 0 <= c < corpora()
+     */
+    public WordTokenizer.Sink column(int c) {
+        assert 0 <= c && c < this.columns.length : "Violation of: 0 <= c < corpora()";
+
+        return (text, offset, length) -> this.add(c, text, offset, length);
+    }
+
+    /**
+     * Adds one occurrence of the word {@code text[offset, offset + length)}
+     * to corpus {@code c}.
+     *
+     * @param c
+     *            the corpus
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @updates this
+     */
+    private void add(int c, char[] text, int offset, int length) {
+        int id = this.dictionary.add(text, offset, length, 1);
+        int[] column = this.columns[c];
+        if (id >= column.length) {
+            column = Arrays.copyOf(column,
+                    Math.max(id + 1, Math.max(2 * column.length, 1024)));
+            this.columns[c] = column;
+        }
+        column[id]++;
+        this.tokens[c]++;
+    }
+
+    /**
+     * Returns the number of corpora.
+     *
+     * @return the number of corpora
+     */
+    public int corpora() {
+        return this.columns.length;
+    }
+
+    /**
+     * Returns the number of distinct words over all corpora.
+     *
+     * @return the size of the shared vocabulary
+     */
+    public int vocabulary() {
+        return this.dictionary.size();
+    }
+
+    /**
+     * Returns the number of words counted in corpus {@code c}.
+     *
+     * @param c
+     *            the corpus
+     * @return the number of words in corpus {@code c}
+     * @requires 0 <= c < corpora()
+     */
+    public long tokens(int c) {
+        return this.tokens[c];
+    }
+
+    /**
+     * Returns the count of word {@code id} in corpus {@code c}.
+     *
+     * @param c
+     *            the corpus
+     * @param id
+     *            the id of the word
+     * @return the count of the word in corpus {@code c}
+     * @requires 0 <= c < corpora() and 0 <= id < vocabulary()
+     */
+    public int count(int c, int id) {
+        int[] column = this.columns[c];
+        int count = 0;
+        if (id < column.length) {
+            count = column[id];
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this matrix.
+     *
+     * @return the estimated size of this matrix in bytes
+     */
+    public long estimatedBytes() {
+        long bytes = this.dictionary.estimatedBytes();
+        for (int[] column : this.columns) {
+            bytes += (long) column.length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Selects the {@code k} most frequent words of corpus {@code c}.
+     *
+     * @param c
+     *            the corpus
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words of corpus {@code c} (all of them if
+     *         there are fewer), in alphabetical order
+     * @requires 0 <= c < corpora() and k > 0
+     */
+    public TopWords top(int c, int k) {
+        assert k > 0 : "Violation of: k > 0";
+
+        int[] column = this.columns[c];
+        TopWords.Selector selector = new TopWords.Selector(
+                Math.min(k, Math.max(this.dictionary.size(), 1)));
+        for (int id = 0; id < column.length; id++) {
+            int count = column[id];
+            if (count > 0 && count >= selector.threshold()) {
+                selector.offer(this.dictionary.word(id), count);
+            }
+        }
+        return selector.result();
+    }
+
+    /**
+     * Returns {@code observed * ln(observed / expected)}, or 0 if
+     * {@code observed} is 0.
+     *
+     * @param observed
+     *            the observed count
+     * @param expected
+     *            the expected count
+     * @return the term of the log-likelihood sum for one cell
+     */
+    private static double term(double observed, double expected) {
+        double t = 0;
+        if (observed > 0) {
+            t = observed * Math.log(observed / expected);
+        }
+        return t;
+    }
+
+    /**
+     * Returns the log-likelihood ratio G² of a word occurring {@code a} times
+     * in {@code n1} words of one corpus and {@code b} times in {@code n2}
+     * words of the others, or 0 if the word is not relatively more frequent
+     * in the first.
+     *
+     * @param a
+     *            count of the word in the corpus
+     * @param b
+     *            count of the word in the other corpora
+     * @param n1
+     *            number of words in the corpus
+     * @param n2
+     *            number of words in the other corpora
+     * @return the G² score of the word for the corpus
+     * @requires n1 > 0 and n2 > 0
+     */
+    static double logLikelihood(long a, long b, long n1, long n2) {
+        double score = 0;
+        if ((double) a * n2 > (double) b * n1) {
+            double share = (double) (a + b) / (n1 + n2);
+            score = 2 * (term(a, n1 * share) + term(b, n2 * share));
+        }
+        return score;
+    }
+
+    /**
+     * Selects the {@code k} words that most distinguish corpus {@code c} from
+     * all the other corpora together: those relatively more frequent in
+     * {@code c}, ranked by their log-likelihood score. The scores are rounded
+     * to integers and take the place of the counts in the result, so they
+     * also set the font sizes of the cloud; words scoring below 1 are left
+     * out.
+     *
+     * @param c
+     *            the corpus
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} distinctive words of corpus {@code c}, in
+     *         alphabetical order, with their rounded scores
+     * @requires 0 <= c < corpora() and k > 0
+     */
+    public TopWords distinctive(int c, int k) {
+        assert k > 0 : "Violation of: k > 0";
+
+        long n1 = this.tokens[c];
+        long n2 = Arrays.stream(this.tokens).sum() - n1;
+        int[] column = this.columns[c];
+        TopWords.Selector selector = new TopWords.Selector(
+                Math.min(k, Math.max(this.dictionary.size(), 1)));
+        if (n1 > 0 && n2 > 0) {
+            for (int id = 0; id < column.length; id++) {
+                int a = column[id];
+                if (a > 0) {
+                    long b = this.dictionary.count(id) - a;
+                    long score = Math.round(logLikelihood(a, b, n1, n2));
+                    if (score >= Math.max(1, selector.threshold())) {
+                        selector.offer(this.dictionary.word(id),
+                                (int) Math.min(score, Integer.MAX_VALUE));
+                    }
+                }
+            }
+        }
+        return selector.result();
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Count-Min sketch of word frequencies with conservative update.
+ *
+ * The sketch has {@code depth} rows of {@code width} counters. A word is
+ * hashed to one counter per row, and its estimate is the smallest of those
+ * counters. Estimates never undercount; for a stream of N words, an estimate
+ * overcounts by more than {@code e * N / width} with probability at most
+ * {@code e^-depth}. Conservative update (only raising the counters that are
+ * at the current minimum) keeps that bound and usually tightens it.
+ */
+public final class CountMinSketch {
+
+    /**
+     * Multiplier deriving the first row hash from a word's hash code.
+     */
+    private static final int MIX1 = 0x9E3779B9;
+
+    /**
+     * Multiplier deriving the row step from a word's hash code.
+     */
+    private static final int MIX2 = 0x85EBCA6B;
+
+    /**
+     * Counters, row after row.
+     */
+    private final int[] counters;
+
+    /**
+     * Number of rows.
+     */
+    private final int depth;
+
+    /**
+     * Number of counters per row.
+     */
+    private final int width;
+
+    /**
+     * Constructor.
+     *
+     * @param depth
+     *            number of rows
+     * @param width
+     *            number of counters per row
+     * @requires depth > 0 and width > 0
+     */
+    public CountMinSketch(int depth, int width) {
+        assert depth > 0 : "Violation of: depth > 0";
+        assert width > 0 : "Violation of: width > 0";
+
+        this.depth = depth;
+        this.width = width;
+        this.counters = new int[depth * width];
+    }
+
+    /**
+     * Returns the number of counters per row.
+     *
+     * @return the width of the sketch
+     */
+    public int width() {
+        return this.width;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the depth of the sketch
+     */
+    public int depth() {
+        return this.depth;
+    }
+
+    /**
+     * Counts one occurrence of the word with the given hash code and returns
+     * the new estimate of its frequency.
+     *
+     * @param hash
+     *            the {@code String.hashCode} of the word
+     * @return an upper bound on the number of occurrences of the word so far
+     * @updates this
+     */
+    public int add(int hash) {
+        int h1 = hash * MIX1;
+        h1 ^= h1 >>> 16;
+        int h2 = (hash * MIX2) | 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            int i = row * this.width
+                    + Math.floorMod(h1 + row * h2, this.width);
+            min = Math.min(min, this.counters[i]);
+        }
+        int estimate = min + 1;
+        for (int row = 0; row < this.depth; row++) {
+            int i = row * this.width
+                    + Math.floorMod(h1 + row * h2, this.width);
+            if (this.counters[i] < estimate) {
+                this.counters[i] = estimate;
+            }
+        }
+        return estimate;
+    }
+
+}
@@ -0,0 +1,371 @@
+import java.util.Arrays;
+
+/**
+ * Word counts that fade with time, for "what is hot right now" clouds of a
+ * continuous feed: an occurrence counted {@code t} seconds ago weighs
+ * {@code 2^(-t / halfLife)}, so a word's score is roughly the number of times
+ * it occurred in the last {@code 1.44 * halfLife} seconds.
+ *
+ * Decay is applied lazily, with forward decay: instead of shrinking every
+ * score as time passes, each new occurrence is added with a weight that grows
+ * as {@code e^(lambda * (now - landmark))}, and a score is divided by the
+ * current weight only when it is read. Passing time thus changes no stored
+ * score and no ranking, scores only grow when words are counted, and the top
+ * {@code k} words are kept up to date one word at a time by an indexed
+ * min-heap, as in {@code IncrementalTopWords}.
+ *
+ * Before the weights could overflow, every {@value #RESCALE_EXPONENT} / lambda
+ * nanoseconds (about 46 half-lives), the scores are rescaled to a new
+ * landmark in one pass, and words whose score has faded below
+ * {@value #PRUNE_SCORE} are forgotten, so the vocabulary kept follows the
+ * recent text rather than all of it.
+ */
+public final class DecayingWordCounter implements WordTokenizer.Sink {
+
+    /**
+     * System property giving the half-life in seconds that makes
+     * {@code TagCloudFollower} count with decay.
+     */
+    public static final String HALF_LIFE_PROPERTY = "tagcloud.halfLife";
+
+    /**
+     * Exponent of the weight of a new occurrence beyond which the scores are
+     * rescaled.
+     */
+    private static final double RESCALE_EXPONENT = 32;
+
+    /**
+     * Score below which a word is dropped when the scores are rescaled.
+     */
+    private static final double PRUNE_SCORE = 1e-3;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Decay rate, per nanosecond.
+     */
+    private final double lambda;
+
+    /**
+     * Number of words kept in the top.
+     */
+    private final int k;
+
+    /**
+     * Ids of the words counted since the last rescale (with their total
+     * number of occurrences).
+     */
+    private WordCountTable dictionary = new WordCountTable();
+
+    /**
+     * {@code weights[id]} is the score of word {@code id} times
+     * {@code scale}.
+     */
+    private double[] weights = new double[1024];
+
+    /**
+     * Time the weights are relative to, in nanoseconds.
+     */
+    private long landmark;
+
+    /**
+     * Current time, in nanoseconds.
+     */
+    private long now;
+
+    /**
+     * Weight of an occurrence counted now: {@code e^(lambda * (now -
+     * landmark))}.
+     */
+    private double scale = 1;
+
+    /**
+     * Heap-ordered ids of the top words; the worst one is at the root.
+     */
+    private final int[] heap;
+
+    /**
+     * {@code position[id]} is 1 + the heap index of word {@code id}, or 0 if
+     * the word is not in the top.
+     */
+    private int[] position = new int[1024];
+
+    /**
+     * Number of words in the heap.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param halfLifeSeconds
+     *            time in which a score halves
+     * @param k
+     *            the number of words kept in the top
+     * @param start
+     *            the current time, in nanoseconds on the clock later passed
+     *            to {@link #advanceTo(long)}
+     * @requires halfLifeSeconds > 0 and k > 0
+     */
+    public DecayingWordCounter(double halfLifeSeconds, int k, long start) {
+        assert halfLifeSeconds > 0 : "Violation of: halfLifeSeconds > 0";
+        assert k > 0 : "Violation of: k > 0";
+
+        this.lambda = Math.log(2) / (halfLifeSeconds * NANOS_PER_SECOND);
+        this.k = k;
+        this.heap = new int[k];
+        this.landmark = start;
+        this.now = start;
+    }
+
+    /**
+     * Moves the clock to {@code nanos}; words counted from now on weigh more
+     * than all earlier ones. Moving the clock back is ignored.
+     *
+     * @param nanos
+     *            the current time, in nanoseconds
+     * @updates this
+     */
+    public void advanceTo(long nanos) {
+        if (nanos > this.now) {
+            this.now = nanos;
+            double exponent = this.lambda * (this.now - this.landmark);
+            if (exponent > RESCALE_EXPONENT) {
+                this.rescale();
+                exponent = 0;
+            }
+            this.scale = Math.exp(exponent);
+        }
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        int id = this.dictionary.add(text, offset, length, 1);
+        if (id >= this.weights.length) {
+            this.weights = Arrays.copyOf(this.weights,
+                    Math.max(id + 1, this.weights.length * 2));
+        }
+        this.weights[id] += this.scale;
+        this.counted(id);
+    }
+
+    /**
+     * Returns the current decayed score of word {@code id}.
+     *
+     * @param id
+     *            the id of the word
+     * @return the score of the word
+     */
+    private double score(int id) {
+        return this.weights[id] / this.scale;
+    }
+
+    /**
+     * Returns the current decayed score of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return the score of {@code word}, or 0 if it has not been counted or
+     *         has been forgotten
+     */
+    public double score(String word) {
+        int id = this.dictionary.indexOf(word);
+        double score = 0;
+        if (id >= 0) {
+            score = this.score(id);
+        }
+        return score;
+    }
+
+    /**
+     * Returns the number of distinct words kept.
+     *
+     * @return the number of distinct words kept
+     */
+    public int size() {
+        return this.dictionary.size();
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this counter.
+     *
+     * @return the estimated size of this counter in bytes
+     */
+    public long estimatedBytes() {
+        return this.dictionary.estimatedBytes()
+                + (long) this.weights.length * Double.BYTES
+                + (long) (this.position.length + this.heap.length)
+                        * Integer.BYTES;
+    }
+
+    /**
+     * Moves the landmark to the current time: divides every weight by
+     * {@code scale}, drops the words whose score is below
+     * {@value #PRUNE_SCORE}, and rebuilds the heap.
+     *
+     * @updates this
+     */
+    private void rescale() {
+        double factor = Math.exp(-this.lambda * (this.now - this.landmark));
+        WordCountTable kept = new WordCountTable();
+        double[] keptWeights = new double[this.weights.length];
+        for (int id = 0; id < this.dictionary.size(); id++) {
+            double score = this.weights[id] * factor;
+            if (score >= PRUNE_SCORE) {
+                int newId = kept.add(this.dictionary.word(id),
+                        this.dictionary.count(id));
+                keptWeights[newId] = score;
+            }
+        }
+        this.dictionary = kept;
+        this.weights = keptWeights;
+        this.landmark = this.now;
+        this.scale = 1;
+
+        Arrays.fill(this.position, 0);
+        this.size = 0;
+        for (int id = 0; id < kept.size(); id++) {
+            this.counted(id);
+        }
+    }
+
+    /**
+     * Updates the heap after the score of word {@code id} has grown.
+     *
+     * @param id
+     *            the id of the word whose score grew
+     * @updates this
+     */
+    private void counted(int id) {
+        if (id >= this.position.length) {
+            this.position = Arrays.copyOf(this.position,
+                    Math.max(id + 1, this.position.length * 2));
+        }
+        int p = this.position[id];
+        if (p != 0) {
+            this.siftDown(p - 1);
+        } else if (this.size < this.k) {
+            this.heap[this.size] = id;
+            this.position[id] = this.size + 1;
+            this.size++;
+            this.siftUp(this.size - 1);
+        } else if (this.worse(this.heap[0], id)) {
+            this.position[this.heap[0]] = 0;
+            this.heap[0] = id;
+            this.position[id] = 1;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Reports whether word {@code a} ranks below word {@code b}: it has a
+     * lower score, or the same score and comes later alphabetically.
+     *
+     * @param a
+     *            the id of the first word
+     * @param b
+     *            the id of the second word
+     * @return true iff {@code a} is worse than {@code b}
+     */
+    private boolean worse(int a, int b) {
+        double wa = this.weights[a];
+        double wb = this.weights[b];
+        return wa < wb || (wa == wb && this.dictionary.word(a)
+                .compareTo(this.dictionary.word(b)) > 0);
+    }
+
+    /**
+     * Puts word {@code id} at heap index {@code i}.
+     *
+     * @param i
+     *            the heap index
+     * @param id
+     *            the id of the word
+     */
+    private void place(int i, int id) {
+        this.heap[i] = id;
+        this.position[id] = i + 1;
+    }
+
+    /**
+     * Restores the heap property from index {@code i} towards the root.
+     *
+     * @param i
+     *            index of the entry to move up
+     */
+    private void siftUp(int i) {
+        int id = this.heap[i];
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (!this.worse(id, this.heap[parent])) {
+                break;
+            }
+            this.place(child, this.heap[parent]);
+            child = parent;
+        }
+        this.place(child, id);
+    }
+
+    /**
+     * Restores the heap property from index {@code i} towards the leaves.
+     *
+     * @param i
+     *            index of the entry to move down
+     */
+    private void siftDown(int i) {
+        int id = this.heap[i];
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && this.worse(this.heap[child + 1], this.heap[child])) {
+                child++;
+            }
+            if (!this.worse(this.heap[child], id)) {
+                break;
+            }
+            this.place(parent, this.heap[child]);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+        this.place(parent, id);
+    }
+
+    /**
+     * Returns the current top words, in alphabetical order, with their
+     * decayed scores rounded to whole occurrences (at least 1) as counts. This
+     * takes O(k log k) time whatever the size of the vocabulary.
+     *
+     * @return the top words
+     */
+    public TopWords top() {
+        TopWords.Selector selector = new TopWords.Selector(
+                Math.max(this.size, 1));
+        for (int i = 0; i < this.size; i++) {
+            int id = this.heap[i];
+            long rounded = Math.max(1, Math.round(this.score(id)));
+            selector.offer(this.dictionary.word(id),
+                    (int) Math.min(rounded, Integer.MAX_VALUE));
+        }
+        return selector.result();
+    }
+
+    /**
+     * Forgets every word.
+     *
+     * @clears this
+     */
+    public void clear() {
+        this.dictionary.clear();
+        Arrays.fill(this.weights, 0);
+        Arrays.fill(this.position, 0);
+        this.size = 0;
+        this.landmark = this.now;
+        this.scale = 1;
+    }
+
+}
@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream over a byte range of a file channel, using positional reads
+ * so that several streams can share one channel.
+ */
+final class FileRangeInputStream extends InputStream {
+
+    /**
+     * The channel to read from.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Next position to read.
+     */
+    private long position;
+
+    /**
+     * Position just past the end of the range.
+     */
+    private final long end;
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            the channel to read from
+     * @param start
+     *            first position of the range
+     * @param end
+     *            position just past the end of the range
+     */
+    FileRangeInputStream(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = this.read(one, 0, 1);
+        if (n == -1) {
+            return -1;
+        }
+        return one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (this.position >= this.end) {
+            return -1;
+        }
+        int max = (int) Math.min(len, this.end - this.position);
+        int n = this.channel.read(ByteBuffer.wrap(b, off, max),
+                this.position);
+        if (n > 0) {
+            this.position += n;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,617 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Writes tag cloud pages straight to a byte channel, producing the same
+ * markup as {@code TagCloudGenerator.outputTagCloud}.
+ *
+ * All constant markup is encoded once, when the renderer is created,
+ * including one {@code class="fNN" title="count:} fragment per font size, so
+ * rendering a word only copies bytes, writes its count in decimal and encodes
+ * the word itself. Everything goes into one reusable buffer that is written
+ * to the channel whenever it fills up; no {@code String} is built per word.
+ * Words and the input file name are HTML-escaped, and characters the output
+ * charset cannot encode are written as numeric character references, with
+ * each unpaired surrogate written as {@code &#65533;}. For such characters
+ * the page therefore differs from {@code TagCloudGenerator}'s, whose
+ * {@code PrintWriter} writes {@code ?} in their place; text the charset can
+ * encode gives the same bytes. Pages in
+ * a charset that does not encode ASCII as single bytes (see
+ * {@code ParallelWordCounter.isSplittable}) are written through
+ * {@code TagCloudGenerator}'s text output instead. A
+ * renderer keeps its buffer and encoder, so a single instance must not be
+ * used by more than one thread at a time.
+ */
+public final class HtmlRenderer {
+
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Default smallest font size, the smallest class of the stylesheet.
+     */
+    public static final int MIN_FONT = 11;
+
+    /**
+     * Default largest font size, the largest class of the stylesheet.
+     */
+    public static final int MAX_FONT = 48;
+
+    /**
+     * Largest number of bytes one escaped ASCII character takes.
+     */
+    private static final int MAX_ESCAPE = 6;
+
+    /**
+     * Room needed for a decimal long and the markup written along with it.
+     */
+    private static final int NUMBER_ROOM = 32;
+
+    /**
+     * Number of ASCII characters.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Radix of decimal numbers.
+     */
+    private static final int DECIMAL = 10;
+
+    /**
+     * Code point written for an unpaired surrogate.
+     */
+    private static final int REPLACEMENT = 0xFFFD;
+
+    /**
+     * Character reference of each ASCII character that is special in HTML,
+     * or null.
+     */
+    private static final String[] ESCAPES = new String[ASCII];
+
+    static {
+        ESCAPES['&'] = "&amp;";
+        ESCAPES['<'] = "&lt;";
+        ESCAPES['>'] = "&gt;";
+        ESCAPES['"'] = "&quot;";
+        ESCAPES['\''] = "&#39;";
+    }
+
+    /**
+     * {@code ESCAPES}, encoded in ASCII.
+     */
+    private final byte[][] escapes = new byte[ASCII][];
+
+    /**
+     * Markup before the word count in the title.
+     */
+    private final byte[] titleStart;
+
+    /**
+     * Markup between the title's word count and the input file name.
+     */
+    private final byte[] titleMiddle;
+
+    /**
+     * Markup from the end of the title to the word count in the heading.
+     */
+    private final byte[] headingStart;
+
+    /**
+     * Markup between the heading's word count and the input file name.
+     */
+    private final byte[] headingMiddle;
+
+    /**
+     * Markup from the end of the heading to the first word.
+     */
+    private final byte[] bodyStart;
+
+    /**
+     * Markup before the font class of a word.
+     */
+    private final byte[] spanStart;
+
+    /**
+     * {@code fontClass[size - minFont]} is the font class of {@code size}
+     * up to the count in the title.
+     */
+    private final byte[][] fontClass;
+
+    /**
+     * Markup before the error bound of an approximate count.
+     */
+    private final byte[] errorStart;
+
+    /**
+     * Markup between the title and the word.
+     */
+    private final byte[] spanMiddle;
+
+    /**
+     * Markup after the word.
+     */
+    private final byte[] spanEnd;
+
+    /**
+     * Closing markup of the page.
+     */
+    private final byte[] pageEnd;
+
+    /**
+     * Encoder for non-ASCII characters.
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * Whether the charset encodes ASCII characters as single ASCII bytes.
+     */
+    private final boolean asciiCompatible;
+
+    /**
+     * Smallest font size used.
+     */
+    private final int minFont;
+
+    /**
+     * Largest font size used.
+     */
+    private final int maxFont;
+
+    /**
+     * The output buffer.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Channel the page is being written to.
+     */
+    private WritableByteChannel out;
+
+    /**
+     * Constructor.
+     *
+     * @param charset
+     *            charset of the output
+     */
+    public HtmlRenderer(Charset charset) {
+        this(charset, MIN_FONT, MAX_FONT);
+    }
+
+    /**
+     * Constructor for pages whose font sizes range from {@code minFont} to
+     * {@code maxFont} rather than over every class of the stylesheet. Words
+     * are styled by the stylesheet's classes {@code f11} to {@code f48}, so
+     * the range must lie within {@value #MIN_FONT} to {@value #MAX_FONT}.
+     * Pages in a charset that does not encode ASCII as single bytes always
+     * use the default range.
+     *
+     * @param charset
+     *            charset of the output
+     * @param minFont
+     *            font size of the least frequent words
+     * @param maxFont
+     *            font size of the most frequent word
+     * @requires MIN_FONT <= minFont <= maxFont <= MAX_FONT
+     */
+    public HtmlRenderer(Charset charset, int minFont, int maxFont) {
+        assert charset != null : "Violation of: charset is not null";
+        assert MIN_FONT <= minFont && minFont <= maxFont
+                && maxFont <= MAX_FONT : "Violation of: MIN_FONT <= minFont <= maxFont <= MAX_FONT";
+
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.asciiCompatible = ParallelWordCounter.isSplittable(charset);
+        for (int c = 0; c < ASCII; c++) {
+            if (ESCAPES[c] != null) {
+                this.escapes[c] = this.encode(ESCAPES[c]);
+            }
+        }
+        String nl = System.lineSeparator();
+        this.titleStart = this.encode("<html><head><title>Top ");
+        this.titleMiddle = this.encode(" Words in ");
+        this.headingStart = this.encode("</title>" + nl
+                + "<link href= \"http://web.cse.ohio-state.edu/software/2231/"
+                + "web-sw2/assignments/projects/tag-cloud-generator/data/"
+                + "tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">" + nl
+                + "<link href=\"tagcloud.css\" rel=\"stylesheet\""
+                + " type=\"text/css\"></head>" + nl + "<body><h2>Top ");
+        this.headingMiddle = this.encode(" words in ");
+        this.bodyStart = this.encode("</h2><hr>" + nl
+                + "<div class =\"cdiv\">" + nl + "<p class=\"cbox\">" + nl);
+        this.spanStart = this
+                .encode("<span style=\"cursor:default\" class=\"");
+        this.minFont = minFont;
+        this.maxFont = maxFont;
+        this.fontClass = new byte[maxFont - minFont + 1][];
+        for (int size = minFont; size <= maxFont; size++) {
+            this.fontClass[size - minFont] = this
+                    .encode("f" + size + "\" title=\"count:");
+        }
+        this.errorStart = this.encode(" error:");
+        this.spanMiddle = this.encode("\">");
+        this.spanEnd = this.encode("</span>" + nl);
+        this.pageEnd = this.encode("</p>" + nl + "</div>" + nl + "</body>"
+                + nl + "</html>" + nl);
+    }
+
+    /**
+     * Encodes constant markup with the output charset.
+     *
+     * @param s
+     *            the markup
+     * @return the encoded markup
+     */
+    private byte[] encode(String s) {
+        return s.getBytes(this.encoder.charset());
+    }
+
+    /**
+     * Returns {@code s} with the characters that are special in HTML
+     * replaced by character references, for writers that do not go through
+     * a renderer.
+     *
+     * @param s
+     *            the text
+     * @return the escaped text
+     */
+    public static String escape(String s) {
+        assert s != null : "Violation of: s is not null";
+
+        StringBuilder escaped = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < ASCII && ESCAPES[c] != null) {
+                if (escaped == null) {
+                    escaped = new StringBuilder(s.length() + MAX_ESCAPE);
+                    escaped.append(s, 0, i);
+                }
+                escaped.append(ESCAPES[c]);
+            } else if (escaped != null) {
+                escaped.append(c);
+            }
+        }
+        return escaped == null ? s : escaped.toString();
+    }
+
+    /**
+     * Writes the complete tag cloud page for {@code words} to {@code out}.
+     *
+     * @param out
+     *            the output channel
+     * @param inputFileName
+     *            the name of the input file, as shown in the page
+     * @param cloudWordAmt
+     *            the amount of words to be included in the tag cloud
+     * @param words
+     *            the words of the tag cloud
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    public void render(WritableByteChannel out, String inputFileName,
+            int cloudWordAmt, TopWords words) throws IOException {
+        this.render(out, inputFileName, cloudWordAmt, words,
+                Collections.<String, Integer> emptyMap());
+    }
+
+    /**
+     * Writes the complete tag cloud page for {@code words}, whose counts may
+     * be overestimated, to {@code out}. The title of every word with an
+     * error bound in {@code errorBounds} shows that bound next to its count.
+     *
+     * @param out
+     *            the output channel
+     * @param inputFileName
+     *            the name of the input file, as shown in the page
+     * @param cloudWordAmt
+     *            the amount of words to be included in the tag cloud
+     * @param words
+     *            the words of the tag cloud
+     * @param errorBounds
+     *            the most each word's count may exceed its true count; words
+     *            not in this Map have exact counts
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    public void render(WritableByteChannel out, String inputFileName,
+            int cloudWordAmt, TopWords words, Map<String, Integer> errorBounds)
+            throws IOException {
+        assert out != null : "Violation of: out is not null";
+        assert inputFileName != null : "Violation of: inputFileName is not null";
+        assert words != null : "Violation of: words is not null";
+        assert errorBounds != null : "Violation of: errorBounds is not null";
+
+        PipelineStage stage = PipelineStage.start("render");
+        if (!this.asciiCompatible) {
+            this.renderText(out, inputFileName, cloudWordAmt, words,
+                    errorBounds);
+            stage.end(0, 0, words.size(), 0);
+            return;
+        }
+        this.out = out;
+        this.buffer.clear();
+        try {
+            this.put(this.titleStart);
+            this.putNumber(cloudWordAmt);
+            this.put(this.titleMiddle);
+            this.putText(inputFileName);
+            this.put(this.headingStart);
+            this.putNumber(cloudWordAmt);
+            this.put(this.headingMiddle);
+            this.putText(inputFileName);
+            this.put(this.bodyStart);
+
+            long maxCount = Math.max(words.maxCount(), 1);
+            boolean approximate = !errorBounds.isEmpty();
+            for (int i = 0; i < words.size(); i++) {
+                int count = words.count(i);
+                int fontSize = (int) (this.minFont
+                        + (this.maxFont - this.minFont) * (long) count
+                                / maxCount);
+                this.put(this.spanStart);
+                this.put(this.fontClass[fontSize - this.minFont]);
+                this.putNumber(count);
+                if (approximate) {
+                    Integer error = errorBounds.get(words.word(i));
+                    if (error != null && error > 0) {
+                        this.put(this.errorStart);
+                        this.putNumber(error);
+                    }
+                }
+                this.put(this.spanMiddle);
+                this.putText(words.word(i));
+                this.put(this.spanEnd);
+            }
+
+            this.put(this.pageEnd);
+            this.flush();
+        } finally {
+            this.out = null;
+        }
+        stage.end(0, 0, words.size(), 0);
+    }
+
+    /**
+     * Writes the page through {@code TagCloudGenerator}'s text output, for
+     * charsets in which the markup cannot be encoded piece by piece (such as
+     * UTF-16, whose encoder starts every piece with a byte order mark).
+     *
+     * @param out
+     *            the output channel
+     * @param inputFileName
+     *            the name of the input file, as shown in the page
+     * @param cloudWordAmt
+     *            the amount of words to be included in the tag cloud
+     * @param words
+     *            the words of the tag cloud
+     * @param errorBounds
+     *            the most each word's count may exceed its true count
+     */
+    private void renderText(WritableByteChannel out, String inputFileName,
+            int cloudWordAmt, TopWords words,
+            Map<String, Integer> errorBounds) {
+        PrintWriter html = new PrintWriter(
+                Channels.newWriter(out, this.encoder.charset()));
+        TagCloudGenerator.outputHeader(html, inputFileName, cloudWordAmt);
+        TagCloudGenerator.outputBody(words.toSortedMap(), errorBounds, html,
+                Math.max(words.maxCount(), 1));
+        html.println("</body>");
+        html.println("</html>");
+        html.flush();
+    }
+
+    /**
+     * Writes the complete tag cloud page for {@code words} to {@code file},
+     * replacing its contents.
+     *
+     * @param file
+     *            the output HTML file
+     * @param inputFileName
+     *            the name of the input file, as shown in the page
+     * @param cloudWordAmt
+     *            the amount of words to be included in the tag cloud
+     * @param words
+     *            the words of the tag cloud
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void write(Path file, String inputFileName, int cloudWordAmt,
+            TopWords words) throws IOException {
+        this.write(file, inputFileName, cloudWordAmt, words,
+                Collections.<String, Integer> emptyMap());
+    }
+
+    /**
+     * Writes the complete tag cloud page for {@code words}, whose counts may
+     * be overestimated, to {@code file}, replacing its contents.
+     *
+     * @param file
+     *            the output HTML file
+     * @param inputFileName
+     *            the name of the input file, as shown in the page
+     * @param cloudWordAmt
+     *            the amount of words to be included in the tag cloud
+     * @param words
+     *            the words of the tag cloud
+     * @param errorBounds
+     *            the most each word's count may exceed its true count
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void write(Path file, String inputFileName, int cloudWordAmt,
+            TopWords words, Map<String, Integer> errorBounds)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.render(channel, inputFileName, cloudWordAmt, words,
+                    errorBounds);
+        }
+    }
+
+    /**
+     * Writes out the buffer if fewer than {@code room} bytes are left in it.
+     *
+     * @param room
+     *            number of bytes about to be put
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void ensure(int room) throws IOException {
+        if (this.buffer.remaining() < room) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.out.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Puts pre-encoded markup.
+     *
+     * @param bytes
+     *            the markup
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void put(byte[] bytes) throws IOException {
+        this.ensure(bytes.length);
+        this.buffer.put(bytes);
+    }
+
+    /**
+     * Puts {@code n} in decimal.
+     *
+     * @param n
+     *            the number
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void putNumber(long n) throws IOException {
+        if (n < 0) {
+            this.putText(Long.toString(n));
+            return;
+        }
+        this.ensure(NUMBER_ROOM);
+        int start = this.buffer.position();
+        long rest = n;
+        do {
+            this.buffer.put((byte) ('0' + rest % DECIMAL));
+            rest /= DECIMAL;
+        } while (rest > 0);
+        /*
+         * The digits went in backwards
+         */
+        int end = this.buffer.position() - 1;
+        for (int i = start; i < end; i++, end--) {
+            byte b = this.buffer.get(i);
+            this.buffer.put(i, this.buffer.get(end));
+            this.buffer.put(end, b);
+        }
+    }
+
+    /**
+     * Puts {@code text}, HTML-escaped and encoded with the output charset.
+     * ASCII characters are copied byte by byte; runs of other characters go
+     * through the encoder.
+     *
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void putText(String text) throws IOException {
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < ASCII) {
+                if (run < i) {
+                    this.putEncoded(CharBuffer.wrap(text, run, i));
+                }
+                if (this.escapes[c] != null) {
+                    this.put(this.escapes[c]);
+                } else {
+                    this.ensure(1);
+                    this.buffer.put((byte) c);
+                }
+                run = i + 1;
+            }
+        }
+        if (run < text.length()) {
+            this.putEncoded(CharBuffer.wrap(text, run, text.length()));
+        }
+    }
+
+    /**
+     * Puts {@code chars} encoded with the output charset, writing each
+     * character it cannot encode as a numeric character reference (and each
+     * unpaired surrogate as U+FFFD).
+     *
+     * @param chars
+     *            the characters, none of which needs escaping
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void putEncoded(CharBuffer chars) throws IOException {
+        this.encoder.reset();
+        while (true) {
+            CoderResult result = this.encoder.encode(chars, this.buffer, true);
+            if (result.isUnderflow()) {
+                result = this.encoder.flush(this.buffer);
+                if (result.isUnderflow()) {
+                    return;
+                }
+            }
+            if (result.isOverflow()) {
+                this.flush();
+            } else {
+                int codePoint = REPLACEMENT;
+                if (result.isUnmappable()) {
+                    codePoint = Character.codePointAt(chars, 0);
+                }
+                chars.position(chars.position() + result.length());
+                this.putNumericReference(codePoint);
+                this.encoder.reset();
+            }
+        }
+    }
+
+    /**
+     * Puts the numeric character reference of {@code codePoint}.
+     *
+     * @param codePoint
+     *            the character
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private void putNumericReference(int codePoint) throws IOException {
+        this.put(this.encode("&#" + codePoint + ";"));
+    }
+
+}
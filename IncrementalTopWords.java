@@ -0,0 +1,195 @@
+import java.util.Arrays;
+
+/**
+ * The {@code k} most frequent words of a growing {@code WordCountTable}, kept
+ * up to date one counted word at a time.
+ *
+ * Counts in the table only ever grow, so when a word is counted it is the only
+ * word whose rank changes: if it is already among the top {@code k} it stays
+ * there, and otherwise it enters exactly when it now beats the worst word kept,
+ * which it then replaces. The kept words live in an indexed min-heap of table
+ * ids, so each counted word costs O(log k), and {@link #result()} costs
+ * O(k log k) whatever the size of the vocabulary. Ties are broken the same way
+ * as in {@code TopWords}.
+ */
+public final class IncrementalTopWords {
+
+    /**
+     * The table whose words are ranked.
+     */
+    private final WordCountTable table;
+
+    /**
+     * Number of words kept.
+     */
+    private final int k;
+
+    /**
+     * Heap-ordered ids of the kept words; the worst one is at the root.
+     */
+    private final int[] heap;
+
+    /**
+     * {@code position[id]} is 1 + the heap index of word {@code id}, or 0 if
+     * the word is not kept.
+     */
+    private int[] position;
+
+    /**
+     * Number of words kept so far.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param table
+     *            the table whose words are ranked; it must only be changed by
+     *            adding occurrences, each reported to {@link #counted(int)}
+     * @param k
+     *            the number of words to keep
+     * @requires k > 0
+     */
+    public IncrementalTopWords(WordCountTable table, int k) {
+        assert table != null : "Violation of: table is not null";
+        assert k > 0 : "Violation of: k > 0";
+
+        this.table = table;
+        this.k = k;
+        this.heap = new int[k];
+        this.position = new int[Math.max(table.size(), k)];
+        for (int id = 0; id < table.size(); id++) {
+            this.counted(id);
+        }
+    }
+
+    /**
+     * Reports that the count of word {@code id} has just grown (or that the
+     * word has just been added).
+     *
+     * @param id
+     *            the id of the word whose count grew
+     * @updates this
+     * @requires 0 <= id < table.size()
+     */
+    public void counted(int id) {
+        if (id >= this.position.length) {
+            this.position = Arrays.copyOf(this.position,
+                    Math.max(id + 1, this.position.length * 2));
+        }
+        int p = this.position[id];
+        if (p != 0) {
+            this.siftDown(p - 1);
+        } else if (this.size < this.k) {
+            this.heap[this.size] = id;
+            this.position[id] = this.size + 1;
+            this.size++;
+            this.siftUp(this.size - 1);
+        } else if (this.worse(this.heap[0], id)) {
+            this.position[this.heap[0]] = 0;
+            this.heap[0] = id;
+            this.position[id] = 1;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Reports whether word {@code a} ranks below word {@code b}.
+     *
+     * @param a
+     *            id of the first word
+     * @param b
+     *            id of the second word
+     * @return true iff {@code a} is worse than {@code b}
+     */
+    private boolean worse(int a, int b) {
+        int ca = this.table.count(a);
+        int cb = this.table.count(b);
+        return ca < cb || (ca == cb
+                && this.table.word(a).compareTo(this.table.word(b)) > 0);
+    }
+
+    /**
+     * Puts word {@code id} at heap index {@code i}.
+     *
+     * @param i
+     *            the heap index
+     * @param id
+     *            the id of the word
+     */
+    private void place(int i, int id) {
+        this.heap[i] = id;
+        this.position[id] = i + 1;
+    }
+
+    /**
+     * Restores the heap property from index {@code i} towards the root.
+     *
+     * @param i
+     *            heap index of the entry to move up
+     */
+    private void siftUp(int i) {
+        int id = this.heap[i];
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (!this.worse(id, this.heap[parent])) {
+                break;
+            }
+            this.place(child, this.heap[parent]);
+            child = parent;
+        }
+        this.place(child, id);
+    }
+
+    /**
+     * Restores the heap property from index {@code i} towards the leaves.
+     *
+     * @param i
+     *            heap index of the entry to move down
+     */
+    private void siftDown(int i) {
+        int id = this.heap[i];
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && this.worse(this.heap[child + 1], this.heap[child])) {
+                child++;
+            }
+            if (!this.worse(this.heap[child], id)) {
+                break;
+            }
+            this.place(parent, this.heap[child]);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+        this.place(parent, id);
+    }
+
+    /**
+     * Returns the words kept right now, in alphabetical order.
+     *
+     * @return the current top words
+     */
+    public TopWords result() {
+        TopWords.Selector selector = new TopWords.Selector(
+                Math.max(this.size, 1));
+        for (int i = 0; i < this.size; i++) {
+            int id = this.heap[i];
+            selector.offer(this.table.word(id), this.table.count(id));
+        }
+        return selector.result();
+    }
+
+    /**
+     * Forgets every kept word, for when the table has been cleared.
+     *
+     * @clears this
+     */
+    public void clear() {
+        Arrays.fill(this.position, 0);
+        this.size = 0;
+    }
+
+}
@@ -0,0 +1,275 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from {@code long} keys to {@code int} counts,
+ * the primitive counterpart of {@code WordCountTable} for keys that are
+ * already numbers (such as packed pairs of word ids).
+ *
+ * Every distinct key gets a stable id (0, 1, 2, ... in order of first
+ * appearance); keys and counts live in parallel arrays indexed by id, and the
+ * probe table only stores ids, so no object is allocated per key.
+ */
+public final class LongCountTable {
+
+    /**
+     * Default number of distinct keys the table is sized for.
+     */
+    private static final int DEFAULT_EXPECTED = 1024;
+
+    /**
+     * Multiplier used to spread keys over the probe table.
+     */
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Probe table: {@code slots[i]} is 1 + the id stored in slot {@code i}, or
+     * 0 if the slot is empty. Its length is a power of two and at least twice
+     * {@code size}.
+     */
+    private int[] slots;
+
+    /**
+     * Distinct keys, indexed by id.
+     */
+    private long[] keys;
+
+    /**
+     * Count of each key, indexed by id.
+     */
+    private int[] counts;
+
+    /**
+     * Number of distinct keys.
+     */
+    private int size;
+
+    /**
+     * Sum of all counts.
+     */
+    private long total;
+
+    /**
+     * No-argument constructor.
+     */
+    public LongCountTable() {
+        this(DEFAULT_EXPECTED);
+    }
+
+    /**
+     * Constructor for a table expected to hold about {@code expected} distinct
+     * keys before it has to grow.
+     *
+     * @param expected
+     *            the expected number of distinct keys
+     * @requires expected >= 0
+     */
+    public LongCountTable(int expected) {
+        assert expected >= 0 : "Violation of: expected >= 0";
+
+        int capacity = Math.max(expected, 2);
+        this.keys = new long[capacity];
+        this.counts = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+    /**
+     * Returns the probe table index where the search for {@code key} starts.
+     *
+     * @param key
+     *            the key
+     * @param mask
+     *            the probe table length minus one
+     * @return the first slot to probe
+     */
+    private static int home(long key, int mask) {
+        long h = key * SPREAD;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Packs two ints into one key, {@code high} in the upper half.
+     *
+     * @param high
+     *            the upper 32 bits
+     * @param low
+     *            the lower 32 bits
+     * @return the packed key
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << Integer.SIZE) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the upper half of a key made by {@link #pack(int, int)}.
+     *
+     * @param key
+     *            the packed key
+     * @return the {@code high} argument of {@code pack}
+     */
+    public static int high(long key) {
+        return (int) (key >>> Integer.SIZE);
+    }
+
+    /**
+     * Returns the lower half of a key made by {@link #pack(int, int)}.
+     *
+     * @param key
+     *            the packed key
+     * @return the {@code low} argument of {@code pack}
+     */
+    public static int low(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code key}.
+     *
+     * @param key
+     *            the key
+     * @param count
+     *            amount to add
+     * @return the id of the key
+     * @updates this
+     * @requires count >= 0
+     */
+    public int add(long key, int count) {
+        assert count >= 0 : "Violation of: count >= 0";
+
+        int mask = this.slots.length - 1;
+        int i = home(key, mask);
+        int slot = this.slots[i];
+        while (slot != 0) {
+            int id = slot - 1;
+            if (this.keys[id] == key) {
+                this.counts[id] += count;
+                this.total += count;
+                return id;
+            }
+            i = (i + 1) & mask;
+            slot = this.slots[i];
+        }
+
+        int id = this.size;
+        if (id == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, id * 2);
+            this.counts = Arrays.copyOf(this.counts, id * 2);
+        }
+        this.keys[id] = key;
+        this.counts[id] = count;
+        this.slots[i] = id + 1;
+        this.size++;
+        this.total += count;
+        if (this.size * 2 > this.slots.length) {
+            this.growSlots();
+        }
+        return id;
+    }
+
+    /**
+     * Doubles the probe table and re-places every id.
+     *
+     * @updates this
+     */
+    private void growSlots() {
+        int[] newSlots = new int[this.slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int i = home(this.keys[id], mask);
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = id + 1;
+        }
+        this.slots = newSlots;
+    }
+
+    /**
+     * Returns the id of {@code key}, or -1 if it has not been counted.
+     *
+     * @param key
+     *            the key to look up
+     * @return the id of {@code key}, or -1
+     */
+    public int indexOf(long key) {
+        int mask = this.slots.length - 1;
+        int i = home(key, mask);
+        int slot = this.slots[i];
+        while (slot != 0) {
+            int id = slot - 1;
+            if (this.keys[id] == key) {
+                return id;
+            }
+            i = (i + 1) & mask;
+            slot = this.slots[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     *
+     * @return the number of distinct keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the total of all counts.
+     *
+     * @return the sum of all counts
+     */
+    public long totalCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns the key with the given id.
+     *
+     * @param id
+     *            the id of the key
+     * @return the key
+     * @requires 0 <= id < size()
+     */
+    public long key(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size()";
+
+        return this.keys[id];
+    }
+
+    /**
+     * Returns the count of the key with the given id.
+     *
+     * @param id
+     *            the id of the key
+     * @return the count of the key
+     * @requires 0 <= id < size()
+     */
+    public int count(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size()";
+
+        return this.counts[id];
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this table.
+     *
+     * @return the estimated size of this table in bytes
+     */
+    public long estimatedBytes() {
+        return (long) this.slots.length * Integer.BYTES
+                + (long) this.keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Removes every key, keeping the allocated arrays for reuse.
+     *
+     * @clears this
+     */
+    public void clear() {
+        Arrays.fill(this.slots, 0);
+        this.size = 0;
+        this.total = 0;
+    }
+
+}
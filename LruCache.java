@@ -0,0 +1,179 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe least-recently-used cache with a memory budget.
+ *
+ * Every value has a weight (its estimated size in bytes); once the total
+ * weight goes over the budget, the least recently used values are evicted.
+ * Concurrent requests for a key that is not cached yet share a single load:
+ * the first caller computes the value and the others wait for it.
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ */
+public final class LruCache<K, V> {
+
+    /**
+     * Computes the value of a key on a cache miss.
+     *
+     * @param <V>
+     *            type of the value
+     */
+    public interface Loader<V> {
+        /**
+         * Computes the value.
+         *
+         * @return the value
+         * @throws Exception
+         *             if the value cannot be computed
+         */
+        V load() throws Exception;
+    }
+
+    /**
+     * A cached or loading value.
+     *
+     * @param <V>
+     *            type of the value
+     */
+    private static final class Entry<V> {
+
+        /**
+         * Completes when the value has been loaded.
+         */
+        private final CompletableFuture<V> value = new CompletableFuture<>();
+
+        /**
+         * Weight of the value; 0 while it is loading.
+         */
+        private long weight;
+    }
+
+    /**
+     * Entries in access order, least recently used first.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16,
+            0.75f, true);
+
+    /**
+     * Computes the weight of a value.
+     */
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * Largest total weight kept.
+     */
+    private final long budget;
+
+    /**
+     * Total weight of the loaded values.
+     */
+    private long weight;
+
+    /**
+     * Constructor.
+     *
+     * @param budget
+     *            largest total weight kept
+     * @param weigher
+     *            computes the weight of a value
+     */
+    public LruCache(long budget, ToLongFunction<V> weigher) {
+        assert weigher != null : "Violation of: weigher is not null";
+
+        this.budget = budget;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the value of {@code key}, loading it with {@code loader} if it is
+     * not cached. If another thread is already loading it, waits for that
+     * load instead.
+     *
+     * @param key
+     *            the key
+     * @param loader
+     *            computes the value on a miss
+     * @return the value of {@code key}
+     * @throws Exception
+     *             if the load (this one or the shared one) failed
+     */
+    public V get(K key, Loader<V> loader) throws Exception {
+        Entry<V> entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = this.entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>();
+                this.entries.put(key, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                V value = loader.load();
+                long w = Math.max(1, this.weigher.applyAsLong(value));
+                synchronized (this) {
+                    entry.weight = w;
+                    this.weight += w;
+                    this.evict();
+                }
+                entry.value.complete(value);
+            } catch (Throwable e) {
+                /*
+                 * Errors too (OutOfMemoryError, AssertionError): an entry
+                 * that is never completed would block its waiters forever
+                 */
+                synchronized (this) {
+                    this.entries.remove(key, entry);
+                }
+                entry.value.completeExceptionally(e);
+            }
+        }
+        try {
+            return entry.value.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Evicts least recently used loaded values until the total weight is
+     * within the budget. Values still loading are never evicted.
+     */
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> it = this.entries.entrySet()
+                .iterator();
+        while (this.weight > this.budget && it.hasNext()) {
+            Entry<V> entry = it.next().getValue();
+            if (entry.weight > 0) {
+                this.weight -= entry.weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the total weight of the cached values.
+     *
+     * @return the weight of this cache
+     */
+    public synchronized long weight() {
+        return this.weight;
+    }
+
+}
@@ -0,0 +1,485 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Tokenizes files straight from memory-mapped byte buffers, without reading
+ * them through a {@code Reader} or building a {@code String} per line.
+ *
+ * The file is mapped in windows of at most {@code windowSize} bytes, each
+ * ending at a line boundary, so files larger than 2 GB are handled and no word
+ * ever spans two windows. Inside a window, ASCII bytes are classified with the
+ * tokenizer's separator table and ASCII words are case folded while they are
+ * copied into a small word buffer; nothing is decoded. Only when a non-ASCII
+ * byte shows up is the rest of that line decoded with the file's charset and
+ * handed to the {@code WordTokenizer}, which keeps the tokens identical to the
+ * {@code Reader} path.
+ *
+ * The byte-level path is used for charsets in which ASCII bytes always stand
+ * for ASCII characters (see {@code ParallelWordCounter.isSplittable}); any
+ * other file is decoded as a whole. When the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}, runs of ASCII text are
+ * classified and folded many bytes at a time by a {@code VectorWordScanner};
+ * otherwise, or with {@code -D}{@value #VECTOR_PROPERTY}{@code =false}, the
+ * scalar code below does all the work. A scanner keeps reusable buffers, so a
+ * single instance must not be used by more than one thread at a time.
+ */
+public final class MappedWordScanner {
+
+    /**
+     * Default upper bound on the size of one mapped window.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 256 << 20;
+
+    /**
+     * System property that turns the Vector API path off when set to
+     * {@code "false"}.
+     */
+    public static final String VECTOR_PROPERTY = "tagcloud.vector";
+
+    /**
+     * Name of the module the Vector API path needs.
+     */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Scanner of runs of ASCII text, implemented with SIMD instructions by
+     * {@code VectorWordScanner}.
+     */
+    interface AsciiScanner {
+        /**
+         * Reports the words in {@code buffer[from, limit)} to {@code sink},
+         * stopping early at the first word boundary before a non-ASCII byte
+         * or near {@code limit}.
+         *
+         * @param buffer
+         *            the mapped window
+         * @param from
+         *            index of the first byte to scan; not inside a word
+         * @param limit
+         *            number of bytes in the window
+         * @param sink
+         *            receiver of the words found
+         * @return the index where scanning stopped; not inside a word, and
+         *         every word before it has been reported
+         */
+        int scan(ByteBuffer buffer, int from, int limit,
+                WordTokenizer.Sink sink);
+    }
+
+    /**
+     * Number of ASCII characters.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Distance between an ASCII lower case letter and its upper case form.
+     */
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    /**
+     * Tokenizer used for non-ASCII lines and for its separator table.
+     */
+    private final WordTokenizer tokenizer;
+
+    /**
+     * Charset the file is decoded with.
+     */
+    private final Charset charset;
+
+    /**
+     * Decoder for non-ASCII lines, replacing malformed input as
+     * {@code InputStreamReader} does.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Upper bound on the size of one mapped window.
+     */
+    private final int windowSize;
+
+    /**
+     * Whether ASCII bytes can be scanned without decoding.
+     */
+    private final boolean byteLevel;
+
+    /**
+     * Whether ASCII words can be folded while they are copied.
+     */
+    private final boolean asciiFolding;
+
+    /**
+     * {@code asciiSeparator[b]} is true iff ASCII byte {@code b} separates
+     * words.
+     */
+    private final boolean[] asciiSeparator;
+
+    /**
+     * SIMD scanner of ASCII runs, or null to scan them byte by byte.
+     */
+    private final AsciiScanner vector;
+
+    /**
+     * Reusable buffer for the current ASCII word.
+     */
+    private char[] word;
+
+    /**
+     * Reusable buffer for decoded non-ASCII lines.
+     */
+    private char[] decoded;
+
+    /**
+     * Constructor using the default window size.
+     *
+     * @param tokenizer
+     *            the tokenizer defining separators and case folding
+     * @param charset
+     *            the charset of the files scanned
+     */
+    public MappedWordScanner(WordTokenizer tokenizer, Charset charset) {
+        this(tokenizer, charset, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tokenizer
+     *            the tokenizer defining separators and case folding
+     * @param charset
+     *            the charset of the files scanned
+     * @param windowSize
+     *            upper bound on the size of one mapped window
+     * @requires windowSize > 0
+     */
+    public MappedWordScanner(WordTokenizer tokenizer, Charset charset,
+            int windowSize) {
+        this(tokenizer, charset, windowSize,
+                !"false".equals(System.getProperty(VECTOR_PROPERTY)));
+    }
+
+    /**
+     * Constructor choosing whether the Vector API path is used when it is
+     * available.
+     *
+     * @param tokenizer
+     *            the tokenizer defining separators and case folding
+     * @param charset
+     *            the charset of the files scanned
+     * @param windowSize
+     *            upper bound on the size of one mapped window
+     * @param vectorize
+     *            whether to scan ASCII text with SIMD instructions if the JVM
+     *            supports it
+     * @requires windowSize > 0
+     */
+    public MappedWordScanner(WordTokenizer tokenizer, Charset charset,
+            int windowSize, boolean vectorize) {
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+        assert charset != null : "Violation of: charset is not null";
+        assert windowSize > 0 : "Violation of: windowSize > 0";
+
+        this.tokenizer = tokenizer;
+        this.charset = charset;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.windowSize = windowSize;
+        this.byteLevel = ParallelWordCounter.isSplittable(charset);
+        this.asciiFolding = tokenizer.foldsAsciiInPlace();
+        this.asciiSeparator = new boolean[ASCII];
+        for (int b = 0; b < ASCII; b++) {
+            this.asciiSeparator[b] = tokenizer.isSeparator((char) b);
+        }
+        if (vectorize && this.byteLevel && this.asciiFolding) {
+            this.vector = vectorScanner(this.asciiSeparator);
+        } else {
+            this.vector = null;
+        }
+        this.word = new char[ASCII];
+        this.decoded = new char[ASCII];
+    }
+
+    /**
+     * Creates a {@code VectorWordScanner} if the Vector API module is present
+     * and the CPU has wide enough vectors. The class is loaded reflectively,
+     * so this class still loads and runs without the module.
+     *
+     * @param asciiSeparator
+     *            the separator table of the ASCII bytes
+     * @return the scanner, or null if the Vector API path is not available
+     */
+    private static AsciiScanner vectorScanner(boolean[] asciiSeparator) {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName("VectorWordScanner");
+            if (!(Boolean) type.getDeclaredMethod("supported").invoke(null)) {
+                return null;
+            }
+            Constructor<?> constructor = type
+                    .getDeclaredConstructor(boolean[].class);
+            return (AsciiScanner) constructor
+                    .newInstance((Object) asciiSeparator);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reports whether ASCII text is scanned with SIMD instructions.
+     *
+     * @return true iff the Vector API path is in use
+     */
+    public boolean vectorized() {
+        return this.vector != null;
+    }
+
+    /**
+     * Reports every word in bytes {@code [start, end)} of {@code channel} to
+     * {@code sink}.
+     *
+     * @param channel
+     *            the file to scan
+     * @param start
+     *            first byte to scan; the start of the file or of a line
+     * @param end
+     *            byte just past the last one to scan; the end of the file or
+     *            the start of a line
+     * @param sink
+     *            receiver of the words found
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires 0 <= start <= end <= channel.size
+     */
+    public void scan(FileChannel channel, long start, long end,
+            WordTokenizer.Sink sink) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert 0 <= start && start <= end : "Violation of: 0 <= start <= end";
+
+        if (!this.byteLevel) {
+            this.decodeRange(channel, start, end, sink);
+            return;
+        }
+        long pos = start;
+        while (pos < end) {
+            long windowEnd = Math.min(end, pos + this.windowSize);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    pos, windowEnd - pos);
+            int limit = (int) (windowEnd - pos);
+            if (windowEnd < end) {
+                /*
+                 * Cut the window back to its last line boundary; a line longer
+                 * than the window gets a window of its own
+                 */
+                int cut = lastLineStart(window, limit);
+                if (cut > 0) {
+                    limit = cut;
+                    windowEnd = pos + cut;
+                } else {
+                    windowEnd = ParallelWordCounter.nextLineStart(channel,
+                            windowEnd, end);
+                    if (windowEnd == -1) {
+                        windowEnd = end;
+                    }
+                    if (windowEnd - pos > Integer.MAX_VALUE) {
+                        this.decodeRange(channel, pos, windowEnd, sink);
+                        pos = windowEnd;
+                        continue;
+                    }
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                            windowEnd - pos);
+                    limit = (int) (windowEnd - pos);
+                }
+            }
+            this.scanWindow(window, limit, sink);
+            pos = windowEnd;
+        }
+    }
+
+    /**
+     * Returns the index just after the last line terminator in
+     * {@code buffer[0, limit)}, or 0 if there is none.
+     *
+     * @param buffer
+     *            the mapped window
+     * @param limit
+     *            number of bytes in the window
+     * @return the start of the last line beginning in the window, or 0
+     */
+    private static int lastLineStart(ByteBuffer buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reports every word in {@code buffer[0, limit)} to {@code sink}.
+     *
+     * @param buffer
+     *            the mapped window; it ends at a line boundary
+     * @param limit
+     *            number of bytes in the window
+     * @param sink
+     *            receiver of the words found
+     */
+    private void scanWindow(ByteBuffer buffer, int limit,
+            WordTokenizer.Sink sink) {
+        boolean[] separator = this.asciiSeparator;
+        int i = 0;
+        while (i < limit) {
+            if (this.vector != null) {
+                i = this.vector.scan(buffer, i, limit, sink);
+                if (i == limit) {
+                    break;
+                }
+            }
+            byte b = buffer.get(i);
+            if (b >= 0 && separator[b]) {
+                i++;
+            } else if (b >= 0 && this.asciiFolding) {
+                /*
+                 * ASCII word: fold it while copying it into the word buffer,
+                 * unless a non-ASCII byte turns up before it ends
+                 */
+                int wordStart = i;
+                char[] w = this.word;
+                int n = 0;
+                boolean ascii = true;
+                char c = (char) b;
+                if (c >= 'a' && c <= 'z') {
+                    c = (char) (c - CASE_OFFSET);
+                }
+                w[n] = c;
+                n++;
+                i++;
+                while (i < limit) {
+                    b = buffer.get(i);
+                    if (b < 0) {
+                        ascii = false;
+                        break;
+                    }
+                    if (separator[b]) {
+                        break;
+                    }
+                    c = (char) b;
+                    if (c >= 'A' && c <= 'Z') {
+                        c = (char) (c + CASE_OFFSET);
+                    }
+                    if (n == w.length) {
+                        this.word = Arrays.copyOf(w, n * 2);
+                        w = this.word;
+                    }
+                    w[n] = c;
+                    n++;
+                    i++;
+                }
+                if (ascii) {
+                    sink.word(w, 0, n);
+                } else {
+                    i = this.decodeLine(buffer, wordStart, limit, sink);
+                }
+            } else {
+                i = this.decodeLine(buffer, i, limit, sink);
+            }
+        }
+    }
+
+    /**
+     * Decodes {@code buffer} from {@code from} up to the end of its line and
+     * tokenizes the decoded characters.
+     *
+     * @param buffer
+     *            the mapped window
+     * @param from
+     *            index of the first byte to decode; not inside a word
+     * @param limit
+     *            number of bytes in the window
+     * @param sink
+     *            receiver of the words found
+     * @return the index of the line terminator ending the line, or
+     *         {@code limit}
+     */
+    private int decodeLine(ByteBuffer buffer, int from, int limit,
+            WordTokenizer.Sink sink) {
+        int lineEnd = from;
+        while (lineEnd < limit) {
+            byte b = buffer.get(lineEnd);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            lineEnd++;
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.limit(lineEnd).position(from);
+        this.decoder.reset();
+        CharBuffer out = CharBuffer.wrap(this.decoded);
+        CoderResult result = this.decoder.decode(in, out, true);
+        while (result.isOverflow()) {
+            out = this.grow(out);
+            result = this.decoder.decode(in, out, true);
+        }
+        result = this.decoder.flush(out);
+        while (result.isOverflow()) {
+            out = this.grow(out);
+            result = this.decoder.flush(out);
+        }
+        this.tokenizer.tokenize(this.decoded, 0, out.position(), true, sink);
+        return lineEnd;
+    }
+
+    /**
+     * Doubles the decode buffer, keeping what has been decoded so far.
+     *
+     * @param out
+     *            the full buffer wrapping {@code decoded}
+     * @return a buffer wrapping the new {@code decoded}, positioned after the
+     *         characters already decoded
+     */
+    private CharBuffer grow(CharBuffer out) {
+        this.decoded = Arrays.copyOf(this.decoded,
+                this.decoded.length * 2);
+        CharBuffer grown = CharBuffer.wrap(this.decoded);
+        grown.position(out.position());
+        return grown;
+    }
+
+    /**
+     * Tokenizes bytes {@code [start, end)} of {@code channel} through a
+     * decoding {@code Reader}, for charsets and lines the byte-level path
+     * cannot handle.
+     *
+     * @param channel
+     *            the file to scan
+     * @param start
+     *            first byte to scan
+     * @param end
+     *            byte just past the last one to scan
+     * @param sink
+     *            receiver of the words found
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private void decodeRange(FileChannel channel, long start, long end,
+            WordTokenizer.Sink sink) throws IOException {
+        this.tokenizer.tokenize(new InputStreamReader(
+                new FileRangeInputStream(channel, start, end), this.charset),
+                sink);
+    }
+
+}
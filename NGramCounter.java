@@ -0,0 +1,394 @@
+/**
+ * Counts the phrases of {@code n} consecutive words (n-grams) a
+ * {@code WordTokenizer} reports, so a tag cloud can show "Connection timeout"
+ * rather than "Connection" and "Timeout" apart.
+ *
+ * Words are dictionary-encoded as they arrive: a {@code WordCountTable} gives
+ * every distinct word an {@code int} id. An n-gram is then counted under one
+ * {@code long} key in a {@code LongCountTable}, packing the id of its first
+ * {@code n - 1} words with the id of its last word; for a bigram the first
+ * part is simply a word id, and for longer n-grams it is the id the prefix
+ * itself gets in a table of prefixes. Counting therefore allocates nothing
+ * per phrase, and only the phrases of the final cloud are ever turned into
+ * {@code String}s, with their words joined by single spaces.
+ *
+ * The phrases are ranked like words: by decreasing count, and then in the
+ * {@code String.compareTo} order of the joined phrases, which is worked out
+ * from the words without joining them.
+ */
+public final class NGramCounter implements WordCounter {
+
+    /**
+     * System property giving the number of words per phrase that
+     * {@code TagCloudGenerator} counts; 1 (the default) counts single words.
+     */
+    public static final String NGRAM_PROPERTY = "tagcloud.ngram";
+
+    /**
+     * Character the words of a phrase are joined with.
+     */
+    private static final char JOINER = ' ';
+
+    /**
+     * Number of words per phrase.
+     */
+    private final int n;
+
+    /**
+     * Every word seen, with its id and number of occurrences.
+     */
+    private final WordCountTable dictionary;
+
+    /**
+     * {@code prefixes[j]} gives ids to the first {@code j + 2} words of the
+     * phrases: its keys pack the id of the first {@code j + 1} words (a word
+     * id when {@code j = 0}) with the id of the next word.
+     */
+    private final LongCountTable[] prefixes;
+
+    /**
+     * The phrase counts, keyed by the id of the first {@code n - 1} words
+     * packed with the id of the last word.
+     */
+    private final LongCountTable grams;
+
+    /**
+     * Ids of the last {@code n - 1} words, oldest first.
+     */
+    private final int[] recent;
+
+    /**
+     * Number of ids in {@code recent}, which is less than {@code n - 1} only
+     * before the first phrase is complete.
+     */
+    private int recentCount;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the number of words per phrase
+     * @requires n >= 2
+     */
+    public NGramCounter(int n) {
+        assert n >= 2 : "Violation of: n >= 2";
+
+        this.n = n;
+        this.dictionary = new WordCountTable();
+        this.prefixes = new LongCountTable[n - 2];
+        for (int j = 0; j < this.prefixes.length; j++) {
+            this.prefixes[j] = new LongCountTable();
+        }
+        this.grams = new LongCountTable();
+        this.recent = new int[n - 1];
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        int id = this.dictionary.add(text, offset, length, 1);
+        int last = this.n - 1;
+        if (this.recentCount < last) {
+            this.recent[this.recentCount] = id;
+            this.recentCount++;
+            return;
+        }
+
+        int prefix = this.recent[0];
+        for (int j = 1; j < last; j++) {
+            prefix = this.prefixes[j - 1]
+                    .add(LongCountTable.pack(prefix, this.recent[j]), 0);
+        }
+        this.grams.add(LongCountTable.pack(prefix, id), 1);
+        System.arraycopy(this.recent, 1, this.recent, 0, last - 1);
+        this.recent[last - 1] = id;
+    }
+
+    /**
+     * Returns the number of distinct phrases counted.
+     *
+     * @return the number of distinct phrases
+     */
+    @Override
+    public int size() {
+        return this.grams.size();
+    }
+
+    /**
+     * Returns the number of phrases counted, which is {@code n - 1} less than
+     * the number of words (or 0).
+     *
+     * @return the sum of all phrase counts
+     */
+    @Override
+    public long totalCount() {
+        return this.grams.totalCount();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = this.dictionary.estimatedBytes()
+                + this.grams.estimatedBytes();
+        for (LongCountTable table : this.prefixes) {
+            bytes += table.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of occurrences of each single word, as counted on
+     * the way.
+     *
+     * @return the word dictionary
+     */
+    public WordCountTable words() {
+        return this.dictionary;
+    }
+
+    @Override
+    public void clear() {
+        this.dictionary.clear();
+        for (LongCountTable table : this.prefixes) {
+            table.clear();
+        }
+        this.grams.clear();
+        this.recentCount = 0;
+    }
+
+    /**
+     * Writes the word ids of the phrase with the given id into {@code ids}.
+     *
+     * @param gram
+     *            the id of the phrase in {@code grams}
+     * @param ids
+     *            the array to fill
+     * @replaces ids
+     * @requires |ids| = n
+     */
+    private void decode(int gram, int[] ids) {
+        long key = this.grams.key(gram);
+        ids[this.n - 1] = LongCountTable.low(key);
+        int prefix = LongCountTable.high(key);
+        for (int j = this.n - 2; j > 0; j--) {
+            key = this.prefixes[j - 1].key(prefix);
+            ids[j] = LongCountTable.low(key);
+            prefix = LongCountTable.high(key);
+        }
+        ids[0] = prefix;
+    }
+
+    /**
+     * Compares the phrases with word ids {@code a} and {@code b} the way
+     * {@code String.compareTo} compares them joined, one character at a time,
+     * without building either string.
+     *
+     * @param a
+     *            the word ids of the first phrase
+     * @param b
+     *            the word ids of the second phrase
+     * @return a negative number, zero or a positive number as the first
+     *         phrase sorts before, with or after the second
+     */
+    private int comparePhrases(int[] a, int[] b) {
+        /*
+         * Identical leading words (and the joiners after them) match
+         */
+        int wa = 0;
+        while (wa < this.n - 1 && a[wa] == b[wa]) {
+            wa++;
+        }
+        int wb = wa;
+        String sa = this.dictionary.word(a[wa]);
+        String sb = this.dictionary.word(b[wb]);
+        int ia = 0;
+        int ib = 0;
+        while (true) {
+            boolean endA = ia == sa.length() && wa == this.n - 1;
+            boolean endB = ib == sb.length() && wb == this.n - 1;
+            if (endA || endB) {
+                return Boolean.compare(!endA, !endB);
+            }
+            char ca = JOINER;
+            if (ia < sa.length()) {
+                ca = sa.charAt(ia);
+            }
+            char cb = JOINER;
+            if (ib < sb.length()) {
+                cb = sb.charAt(ib);
+            }
+            if (ca != cb) {
+                return ca - cb;
+            }
+            if (ia < sa.length()) {
+                ia++;
+            } else {
+                wa++;
+                sa = this.dictionary.word(a[wa]);
+                ia = 0;
+            }
+            if (ib < sb.length()) {
+                ib++;
+            } else {
+                wb++;
+                sb = this.dictionary.word(b[wb]);
+                ib = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the phrase with the given id, its words joined by spaces.
+     *
+     * @param gram
+     *            the id of the phrase in {@code grams}
+     * @param ids
+     *            scratch array for the word ids
+     * @return the phrase
+     * @requires |ids| = n
+     */
+    private String phrase(int gram, int[] ids) {
+        this.decode(gram, ids);
+        StringBuilder phrase = new StringBuilder(this.dictionary.word(ids[0]));
+        for (int j = 1; j < this.n; j++) {
+            phrase.append(JOINER).append(this.dictionary.word(ids[j]));
+        }
+        return phrase.toString();
+    }
+
+    /**
+     * Selects the {@code k} most frequent phrases. A min-heap of phrase ids
+     * keeps the best {@code k} seen; a phrase is only decoded when its count
+     * ties with the worst one kept, and only the selected phrases are joined
+     * into strings.
+     *
+     * @param k
+     *            the number of phrases to select
+     * @return the top {@code k} phrases (all of them if there are fewer), in
+     *         alphabetical order
+     * @requires k > 0
+     */
+    @Override
+    public TopWords top(int k) {
+        assert k > 0 : "Violation of: k > 0";
+
+        PipelineStage stage = PipelineStage.start("selectTopNGrams");
+        int capacity = Math.min(k, this.grams.size());
+        int[] heap = new int[capacity];
+        int[] a = new int[this.n];
+        int[] b = new int[this.n];
+        int heapSize = 0;
+        for (int gram = 0; gram < this.grams.size(); gram++) {
+            if (heapSize < capacity) {
+                heap[heapSize] = gram;
+                heapSize++;
+                this.siftUp(heap, heapSize - 1, a, b);
+            } else {
+                int count = this.grams.count(gram);
+                int worst = this.grams.count(heap[0]);
+                if (count > worst || (count == worst
+                        && this.ranksBelow(heap[0], gram, a, b))) {
+                    heap[0] = gram;
+                    this.siftDown(heap, heapSize, 0, a, b);
+                }
+            }
+        }
+
+        TopWords.Selector selector = new TopWords.Selector(
+                Math.max(capacity, 1));
+        for (int i = 0; i < heapSize; i++) {
+            selector.offer(this.phrase(heap[i], a), this.grams.count(heap[i]));
+        }
+        TopWords top = selector.result();
+        stage.end(0, 0, this.grams.size(),
+                stage.recording() ? this.estimatedBytes() : 0);
+        return top;
+    }
+
+    /**
+     * Reports whether phrase {@code x} ranks below phrase {@code y}: it has a
+     * lower count, or the same count and sorts after it.
+     *
+     * @param x
+     *            the id of the first phrase
+     * @param y
+     *            the id of the second phrase
+     * @param a
+     *            scratch array for the word ids of {@code x}
+     * @param b
+     *            scratch array for the word ids of {@code y}
+     * @return true iff {@code x} is worse than {@code y}
+     */
+    private boolean ranksBelow(int x, int y, int[] a, int[] b) {
+        int cx = this.grams.count(x);
+        int cy = this.grams.count(y);
+        if (cx != cy) {
+            return cx < cy;
+        }
+        this.decode(x, a);
+        this.decode(y, b);
+        return this.comparePhrases(a, b) > 0;
+    }
+
+    /**
+     * Restores the min-heap property of {@code heap} from entry {@code i}
+     * towards the root.
+     *
+     * @param heap
+     *            the heap of phrase ids
+     * @param i
+     *            index of the entry to move up
+     * @param a
+     *            scratch array for word ids
+     * @param b
+     *            scratch array for word ids
+     * @updates heap
+     */
+    private void siftUp(int[] heap, int i, int[] a, int[] b) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (!this.ranksBelow(heap[child], heap[parent], a, b)) {
+                return;
+            }
+            int t = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = t;
+            child = parent;
+        }
+    }
+
+    /**
+     * Restores the min-heap property of the first {@code size} entries of
+     * {@code heap} from entry {@code i} towards the leaves.
+     *
+     * @param heap
+     *            the heap of phrase ids
+     * @param size
+     *            number of entries in the heap
+     * @param i
+     *            index of the entry to move down
+     * @param a
+     *            scratch array for word ids
+     * @param b
+     *            scratch array for word ids
+     * @updates heap
+     */
+    private void siftDown(int[] heap, int size, int i, int[] a, int[] b) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < size) {
+            if (child + 1 < size
+                    && this.ranksBelow(heap[child + 1], heap[child], a, b)) {
+                child++;
+            }
+            if (!this.ranksBelow(heap[child], heap[parent], a, b)) {
+                return;
+            }
+            int t = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = t;
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+}
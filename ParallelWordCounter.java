@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the words of one large file on all cores of a {@code ForkJoinPool}.
+ *
+ * The file is split recursively into byte ranges until each range is at most
+ * {@code leafSize} bytes. Every split point is moved forward to the start of
+ * the next line, so no word (and no character) is cut in two, and the
+ * tokenizer behaves exactly as it does on the whole file. Each leaf range is
+ * scanned straight from memory-mapped bytes by a {@code MappedWordScanner}
+ * into its own {@code WordCountTable}, and the two halves of every
+ * split are merged as soon as both are done, which gives a parallel tree
+ * reduction of the partial tables.
+ *
+ * Splitting on bytes is only safe for charsets in which a line terminator
+ * byte always is a line terminator character (UTF-8, US-ASCII, ISO-8859-1).
+ * Files in any other charset are counted by a single worker.
+ */
+public final class ParallelWordCounter {
+
+    /**
+     * Default upper bound on the size of a range counted by one task.
+     */
+    public static final int DEFAULT_LEAF_SIZE = 16 << 20;
+
+    /**
+     * Number of bytes read at a time while looking for a line start.
+     */
+    private static final int SCAN_BLOCK = 8192;
+
+    /**
+     * Charset the file is decoded with.
+     */
+    private final Charset charset;
+
+    /**
+     * Pool the counting tasks run in.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Upper bound on the size of a range counted by one task.
+     */
+    private final long leafSize;
+
+    /**
+     * Scanner of each worker thread, reused across the ranges it counts.
+     */
+    private final ThreadLocal<MappedWordScanner> scanners;
+
+    /**
+     * Constructor using the common pool, the default charset (as
+     * {@code FileReader} does) and the default leaf size.
+     *
+     * @param separatorString
+     *            the characters that separate words
+     */
+    public ParallelWordCounter(String separatorString) {
+        this(separatorString, Charset.defaultCharset(),
+                ForkJoinPool.commonPool(), DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param separatorString
+     *            the characters that separate words
+     * @param charset
+     *            the charset the file is decoded with
+     * @param pool
+     *            the pool to run the counting tasks in
+     * @param leafSize
+     *            upper bound on the number of bytes counted by one task
+     * @requires leafSize > 0
+     */
+    public ParallelWordCounter(String separatorString, Charset charset,
+            ForkJoinPool pool, long leafSize) {
+        assert separatorString != null : "Violation of: separatorString is not null";
+        assert charset != null : "Violation of: charset is not null";
+        assert pool != null : "Violation of: pool is not null";
+        assert leafSize > 0 : "Violation of: leafSize > 0";
+
+        this.charset = charset;
+        this.pool = pool;
+        this.leafSize = leafSize;
+        this.scanners = ThreadLocal.withInitial(() -> new MappedWordScanner(
+                new WordTokenizer(separatorString), charset));
+    }
+
+    /**
+     * Reports whether files in {@code charset} can be split at line terminator
+     * bytes.
+     *
+     * @param charset
+     *            the charset to check
+     * @return true iff byte ranges of the file can be counted independently
+     */
+    public static boolean isSplittable(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Counts every word in {@code file}. The result has the same words and
+     * counts as {@code TagCloudGenerator.countWordsInFile} on the same file.
+     *
+     * @param file
+     *            the file to count
+     * @return the words of {@code file} and their counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public WordCountTable count(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        PipelineStage stage = PipelineStage.start("countWordsParallel");
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long leaf = this.leafSize;
+            if (!isSplittable(this.charset)) {
+                leaf = Math.max(size, 1);
+            }
+            WordCountTable table = this.pool
+                    .invoke(new CountTask(channel, 0, size, leaf));
+            stage.end(size, table.totalCount(), table.size(),
+                    stage.recording() ? table.estimatedBytes() : 0);
+            return table;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the position just after the first line terminator in
+     * {@code [from, to)} of {@code channel}, or -1 if there is none.
+     *
+     * @param channel
+     *            the file being split
+     * @param from
+     *            first position to look at
+     * @param to
+     *            position just past the last one to look at
+     * @return the start of the first line beginning after {@code from}, or -1
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static long nextLineStart(FileChannel channel, long from, long to)
+            throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK);
+        long pos = from;
+        while (pos < to) {
+            block.clear();
+            block.limit((int) Math.min(SCAN_BLOCK, to - pos));
+            int n = channel.read(block, pos);
+            if (n <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = block.get(i);
+                if (b == '\n' || b == '\r') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position just after the last line terminator in
+     * {@code [from, to)} of {@code channel}, or {@code from} if there is none.
+     *
+     * @param channel
+     *            the file being split
+     * @param from
+     *            first position to look at
+     * @param to
+     *            position just past the last one to look at
+     * @return the end of the complete lines in {@code [from, to)}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static long lastLineStart(FileChannel channel, long from, long to)
+            throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK);
+        long blockEnd = to;
+        while (blockEnd > from) {
+            long blockStart = Math.max(from, blockEnd - SCAN_BLOCK);
+            block.clear();
+            block.limit((int) (blockEnd - blockStart));
+            int n = 0;
+            while (block.hasRemaining()) {
+                int r = channel.read(block, blockStart + n);
+                if (r <= 0) {
+                    return from;
+                }
+                n += r;
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                byte b = block.get(i);
+                if (b == '\n' || b == '\r') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return from;
+    }
+
+    /**
+     * Fork/join task counting the words in one byte range of the file.
+     */
+    private final class CountTask extends RecursiveTask<WordCountTable> {
+
+        /**
+         * Serialization id (tasks are never serialized).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The file being counted.
+         */
+        private final transient FileChannel channel;
+
+        /**
+         * First byte of the range.
+         */
+        private final long start;
+
+        /**
+         * Byte just past the end of the range.
+         */
+        private final long end;
+
+        /**
+         * Largest range this task counts without splitting.
+         */
+        private final long leaf;
+
+        /**
+         * Constructor.
+         *
+         * @param channel
+         *            the file being counted
+         * @param start
+         *            first byte of the range
+         * @param end
+         *            byte just past the end of the range
+         * @param leaf
+         *            largest range counted without splitting
+         */
+        CountTask(FileChannel channel, long start, long end, long leaf) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected WordCountTable compute() {
+            try {
+                long split = -1;
+                if (this.end - this.start > this.leaf) {
+                    split = nextLineStart(this.channel,
+                            this.start + (this.end - this.start) / 2,
+                            this.end);
+                }
+                if (split == -1 || split == this.end) {
+                    return this.countRange();
+                }
+                CountTask right = new CountTask(this.channel, split, this.end,
+                        this.leaf);
+                right.fork();
+                WordCountTable left = new CountTask(this.channel, this.start,
+                        split, this.leaf).compute();
+                return merge(left, right.join());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Counts the words of this task's range on the current thread.
+         *
+         * @return the words of the range and their counts
+         * @throws IOException
+         *             if the file cannot be read
+         */
+        private WordCountTable countRange() throws IOException {
+            WordCountTable table = new WordCountTable();
+            ParallelWordCounter.this.scanners.get().scan(this.channel,
+                    this.start, this.end, table);
+            return table;
+        }
+    }
+
+    /**
+     * Merges two partial tables by adding the smaller into the larger.
+     *
+     * @param a
+     *            a partial table
+     * @param b
+     *            another partial table
+     * @return the table holding the counts of both
+     */
+    private static WordCountTable merge(WordCountTable a, WordCountTable b) {
+        WordCountTable larger = a;
+        WordCountTable smaller = b;
+        if (b.size() > a.size()) {
+            larger = b;
+            smaller = a;
+        }
+        larger.addAll(smaller);
+        return larger;
+    }
+
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Instrumentation of one stage of the tag cloud pipeline: reading and
+ * counting, sorting or selecting, writing HTML.
+ *
+ * A stage is started with {@link #start(String)} and finished with
+ * {@link #end(long, long, long, long)}, which records its wall time and the
+ * amounts it handled in two places:
+ * <ul>
+ * <li>a {@code StageEvent} for JDK Flight Recorder, committed only while a
+ * recording has the event enabled (for example with
+ * {@code -XX:StartFlightRecording});</li>
+ * <li>a JSON run report, written at exit to the file named by the system
+ * property {@value #REPORT_PROPERTY}, if it is set.</li>
+ * </ul>
+ * With neither enabled a stage costs a few checks and no allocation: every
+ * {@code start} returns the same inert stage, and callers skip computing
+ * costly amounts such as the table size unless {@link #recording()} is true.
+ * Nothing is done per word.
+ */
+public final class PipelineStage {
+
+    /**
+     * System property naming the file the JSON run report is written to.
+     */
+    public static final String REPORT_PROPERTY = "tagcloud.report";
+
+    /**
+     * The report file, or null if no report is written.
+     */
+    private static final Path REPORT;
+
+    /**
+     * Wall clock time the report starts at.
+     */
+    private static final Instant RUN_START = Instant.now();
+
+    /**
+     * {@code System.nanoTime()} when the report starts.
+     */
+    private static final long RUN_START_NANOS = System.nanoTime();
+
+    /**
+     * JSON objects of the finished stages, in finishing order.
+     */
+    private static final List<String> STAGES = new ArrayList<>();
+
+    static {
+        String report = System.getProperty(REPORT_PROPERTY);
+        if (report == null) {
+            REPORT = null;
+        } else {
+            REPORT = Paths.get(report);
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(PipelineStage::writeReport, "tagcloud-report"));
+        }
+    }
+
+    /**
+     * The stage returned while nothing is recorded; its {@code end} does
+     * nothing.
+     */
+    private static final PipelineStage OFF = new PipelineStage(null, null);
+
+    /**
+     * Name of this stage.
+     */
+    private final String name;
+
+    /**
+     * Flight Recorder event of this stage, or null if the event is not
+     * enabled.
+     */
+    private final StageEvent event;
+
+    /**
+     * {@code System.nanoTime()} when this stage started, if reporting.
+     */
+    private final long startNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            name of the stage
+     * @param event
+     *            the begun event of the stage, or null
+     */
+    private PipelineStage(String name, StageEvent event) {
+        this.name = name;
+        this.event = event;
+        this.startNanos = REPORT == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @param name
+     *            name of the stage, usually the method it times
+     * @return the running stage
+     */
+    public static PipelineStage start(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        /*
+         * Without Flight Recorder initialized no recording can have the
+         * event enabled, and looking up its state would initialize it
+         */
+        StageEvent event = null;
+        if (FlightRecorder.isInitialized()) {
+            event = new StageEvent();
+            if (event.isEnabled()) {
+                event.begin();
+            } else {
+                event = null;
+            }
+        }
+        if (event == null && REPORT == null) {
+            return OFF;
+        }
+        return new PipelineStage(name, event);
+    }
+
+    /**
+     * Reports whether this stage is recorded anywhere; amounts that are
+     * costly to compute need only be passed to {@code end} if it is.
+     *
+     * @return true iff this stage is recorded
+     */
+    public boolean recording() {
+        return this != OFF;
+    }
+
+    /**
+     * Finishes this stage and records it.
+     *
+     * @param bytesRead
+     *            bytes (or, from a {@code Reader}, characters) of input read
+     * @param tokens
+     *            number of words counted
+     * @param distinctWords
+     *            number of distinct words handled
+     * @param tableBytes
+     *            estimated heap size of the count table, or 0 (always 0 is
+     *            fine when {@link #recording()} is false)
+     */
+    public void end(long bytesRead, long tokens, long distinctWords,
+            long tableBytes) {
+        StageEvent e = this.event;
+        if (e != null) {
+            e.end();
+            if (e.shouldCommit()) {
+                e.stage = this.name;
+                e.bytesRead = bytesRead;
+                e.tokens = tokens;
+                e.distinctWords = distinctWords;
+                e.tableBytes = tableBytes;
+                e.commit();
+            }
+        }
+        if (REPORT != null) {
+            long end = System.nanoTime();
+            String json = "{\"stage\": " + jsonString(this.name)
+                    + ", \"thread\": "
+                    + jsonString(Thread.currentThread().getName())
+                    + ", \"startNanos\": " + (this.startNanos - RUN_START_NANOS)
+                    + ", \"wallNanos\": " + (end - this.startNanos)
+                    + ", \"bytesRead\": " + bytesRead + ", \"tokens\": "
+                    + tokens + ", \"distinctWords\": " + distinctWords
+                    + ", \"tableBytes\": " + tableBytes + "}";
+            synchronized (STAGES) {
+                STAGES.add(json);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a JSON run report is being collected.
+     *
+     * @return true iff {@value #REPORT_PROPERTY} is set
+     */
+    public static boolean reporting() {
+        return REPORT != null;
+    }
+
+    /**
+     * Quotes {@code s} as a JSON string.
+     *
+     * @param s
+     *            the string
+     * @return the JSON string literal for {@code s}
+     */
+    static String jsonString(String s) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Writes the JSON run report; called at exit.
+     */
+    private static void writeReport() {
+        long wallNanos = System.nanoTime() - RUN_START_NANOS;
+        Runtime runtime = Runtime.getRuntime();
+        try (PrintWriter out = new PrintWriter(
+                Files.newBufferedWriter(REPORT, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.println("  \"start\": " + jsonString(RUN_START.toString())
+                    + ",");
+            out.println("  \"wallNanos\": " + wallNanos + ",");
+            out.println("  \"processors\": " + runtime.availableProcessors()
+                    + ",");
+            out.println("  \"heapUsedBytes\": "
+                    + (runtime.totalMemory() - runtime.freeMemory()) + ",");
+            out.print("  \"stages\": [");
+            synchronized (STAGES) {
+                for (int i = 0; i < STAGES.size(); i++) {
+                    out.print(i == 0 ? "\n    " : ",\n    ");
+                    out.print(STAGES.get(i));
+                }
+            }
+            out.println("\n  ]");
+            out.println("}");
+        } catch (IOException e) {
+            System.err.println("Error writing run report: " + e);
+        }
+    }
+
+}
@@ -0,0 +1,453 @@
+/**
+ * The Porter stemming algorithm for English (M.F. Porter, "An algorithm for
+ * suffix stripping", Program 14(3), 1980), as in Porter's own reference
+ * implementation: "Connected", "connecting" and "connection" all become
+ * "connect", "generalizations" becomes "gener".
+ *
+ * Words are stemmed in place in a caller's buffer of lower case ASCII
+ * letters; nothing is allocated. A stemmer keeps the state of the word being
+ * stemmed, so a single instance must not be used by more than one thread at
+ * a time.
+ */
+public final class PorterStemmer {
+
+    /**
+     * The word being stemmed.
+     */
+    private char[] b;
+
+    /**
+     * Index of the last character of the word as stemmed so far.
+     */
+    private int k;
+
+    /**
+     * Index of the last character before the suffix found by
+     * {@link #ends(String)}.
+     */
+    private int j;
+
+    /**
+     * Stems {@code word[0, length)} in place.
+     *
+     * @param word
+     *            the buffer holding the word, in lower case ASCII letters
+     * @param length
+     *            the length of the word
+     * @return the length of the stem, which is at most {@code length}
+     * @updates word
+     * @requires 0 <= length <= |word| and [word[0, length) is lower case
+     *           ASCII letters]
+     */
+    public int stem(char[] word, int length) {
+        assert word != null : "Violation of: word is not null";
+        assert 0 <= length && length <= word.length : "Violation of: 0 <= length <= |word|";
+
+        /*
+         * Words of one or two letters are left alone
+         */
+        if (length <= 2) {
+            return length;
+        }
+        this.b = word;
+        this.k = length - 1;
+        this.step1ab();
+        if (this.k > 0) {
+            this.step1c();
+            this.step2();
+            this.step3();
+            this.step4();
+            this.step5();
+        }
+        this.b = null;
+        return this.k + 1;
+    }
+
+    /**
+     * Reports whether {@code b[i]} is a consonant: not a, e, i, o or u, and
+     * not a y preceded by a consonant.
+     *
+     * @param i
+     *            the index of the character
+     * @return true iff {@code b[i]} is a consonant
+     */
+    private boolean cons(int i) {
+        boolean consonant;
+        switch (this.b[i]) {
+            case 'a':
+            case 'e':
+            case 'i':
+            case 'o':
+            case 'u':
+                consonant = false;
+                break;
+            case 'y':
+                consonant = i == 0 || !this.cons(i - 1);
+                break;
+            default:
+                consonant = true;
+                break;
+        }
+        return consonant;
+    }
+
+    /**
+     * Returns the measure m of {@code b[0, j]}: the number of
+     * vowel-consonant sequences in it, when it is written [C](VC)^m[V].
+     *
+     * @return the measure of the stem before the suffix
+     */
+    private int m() {
+        int n = 0;
+        int i = 0;
+        while (i <= this.j && this.cons(i)) {
+            i++;
+        }
+        while (i <= this.j) {
+            while (i <= this.j && !this.cons(i)) {
+                i++;
+            }
+            if (i > this.j) {
+                break;
+            }
+            n++;
+            while (i <= this.j && this.cons(i)) {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Reports whether {@code b[0, j]} contains a vowel.
+     *
+     * @return true iff the stem before the suffix contains a vowel
+     */
+    private boolean vowelInStem() {
+        for (int i = 0; i <= this.j; i++) {
+            if (!this.cons(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reports whether {@code b[i - 1, i]} is a double consonant.
+     *
+     * @param i
+     *            the index of the second character
+     * @return true iff the two characters are the same consonant
+     */
+    private boolean doubleC(int i) {
+        return i >= 1 && this.b[i] == this.b[i - 1] && this.cons(i);
+    }
+
+    /**
+     * Reports whether {@code b[i - 2, i]} is consonant-vowel-consonant and
+     * the second consonant is not w, x or y, as in "hop", "cav" or "lov".
+     * This restores an e in "hoping", "caving" and "loving" but not in
+     * "snowing", "boxing" or "traying".
+     *
+     * @param i
+     *            the index of the last character
+     * @return true iff the three characters are consonant-vowel-consonant
+     */
+    private boolean cvc(int i) {
+        if (i < 2 || !this.cons(i) || this.cons(i - 1)
+                || !this.cons(i - 2)) {
+            return false;
+        }
+        char c = this.b[i];
+        return c != 'w' && c != 'x' && c != 'y';
+    }
+
+    /**
+     * Reports whether the word ends with {@code s}, setting {@code j} to
+     * the index just before it if it does.
+     *
+     * @param s
+     *            the suffix
+     * @return true iff {@code b[0, k]} ends with {@code s}
+     */
+    private boolean ends(String s) {
+        int length = s.length();
+        int o = this.k - length + 1;
+        if (o < 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.b[o + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        this.j = this.k - length;
+        return true;
+    }
+
+    /**
+     * Replaces the suffix after {@code j} with {@code s}.
+     *
+     * @param s
+     *            the new suffix
+     */
+    private void setTo(String s) {
+        int length = s.length();
+        s.getChars(0, length, this.b, this.j + 1);
+        this.k = this.j + length;
+    }
+
+    /**
+     * Replaces the suffix after {@code j} with {@code s} if the stem before
+     * it has a measure above 0.
+     *
+     * @param s
+     *            the new suffix
+     */
+    private void replace(String s) {
+        if (this.m() > 0) {
+            this.setTo(s);
+        }
+    }
+
+    /**
+     * Step 1ab: removes plurals and -ed or -ing. "caresses" becomes "caress",
+     * "ponies" "poni", "cats" "cat", "agreed" "agree", "plastered" "plaster",
+     * "motoring" "motor", "hopping" "hop" and "filing" "file".
+     */
+    private void step1ab() {
+        if (this.b[this.k] == 's') {
+            if (this.ends("sses")) {
+                this.k -= 2;
+            } else if (this.ends("ies")) {
+                this.setTo("i");
+            } else if (this.b[this.k - 1] != 's') {
+                this.k--;
+            }
+        }
+        if (this.ends("eed")) {
+            if (this.m() > 0) {
+                this.k--;
+            }
+        } else if ((this.ends("ed") || this.ends("ing"))
+                && this.vowelInStem()) {
+            this.k = this.j;
+            if (this.ends("at")) {
+                this.setTo("ate");
+            } else if (this.ends("bl")) {
+                this.setTo("ble");
+            } else if (this.ends("iz")) {
+                this.setTo("ize");
+            } else if (this.doubleC(this.k)) {
+                char c = this.b[this.k];
+                if (c != 'l' && c != 's' && c != 'z') {
+                    this.k--;
+                }
+            } else {
+                this.j = this.k;
+                if (this.m() == 1 && this.cvc(this.k)) {
+                    this.setTo("e");
+                }
+            }
+        }
+    }
+
+    /**
+     * Step 1c: turns a final y into i when there is another vowel in the
+     * stem, so "happy" becomes "happi" and "sky" stays.
+     */
+    private void step1c() {
+        if (this.ends("y") && this.vowelInStem()) {
+            this.b[this.k] = 'i';
+        }
+    }
+
+    /**
+     * Step 2: maps double suffixes to single ones, so "relational" becomes
+     * "relate" and "hopefulness" "hopeful", when the stem has a measure
+     * above 0.
+     */
+    private void step2() {
+        switch (this.b[this.k - 1]) {
+            case 'a':
+                if (this.ends("ational")) {
+                    this.replace("ate");
+                } else if (this.ends("tional")) {
+                    this.replace("tion");
+                }
+                break;
+            case 'c':
+                if (this.ends("enci")) {
+                    this.replace("ence");
+                } else if (this.ends("anci")) {
+                    this.replace("ance");
+                }
+                break;
+            case 'e':
+                if (this.ends("izer")) {
+                    this.replace("ize");
+                }
+                break;
+            case 'l':
+                if (this.ends("bli")) {
+                    this.replace("ble");
+                } else if (this.ends("alli")) {
+                    this.replace("al");
+                } else if (this.ends("entli")) {
+                    this.replace("ent");
+                } else if (this.ends("eli")) {
+                    this.replace("e");
+                } else if (this.ends("ousli")) {
+                    this.replace("ous");
+                }
+                break;
+            case 'o':
+                if (this.ends("ization")) {
+                    this.replace("ize");
+                } else if (this.ends("ation")) {
+                    this.replace("ate");
+                } else if (this.ends("ator")) {
+                    this.replace("ate");
+                }
+                break;
+            case 's':
+                if (this.ends("alism")) {
+                    this.replace("al");
+                } else if (this.ends("iveness")) {
+                    this.replace("ive");
+                } else if (this.ends("fulness")) {
+                    this.replace("ful");
+                } else if (this.ends("ousness")) {
+                    this.replace("ous");
+                }
+                break;
+            case 't':
+                if (this.ends("aliti")) {
+                    this.replace("al");
+                } else if (this.ends("iviti")) {
+                    this.replace("ive");
+                } else if (this.ends("biliti")) {
+                    this.replace("ble");
+                }
+                break;
+            case 'g':
+                if (this.ends("logi")) {
+                    this.replace("log");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Step 3: removes or shortens -ic-, -full, -ness and the like, so
+     * "triplicate" becomes "triplic" and "goodness" "good".
+     */
+    private void step3() {
+        switch (this.b[this.k]) {
+            case 'e':
+                if (this.ends("icate")) {
+                    this.replace("ic");
+                } else if (this.ends("ative")) {
+                    this.replace("");
+                } else if (this.ends("alize")) {
+                    this.replace("al");
+                }
+                break;
+            case 'i':
+                if (this.ends("iciti")) {
+                    this.replace("ic");
+                }
+                break;
+            case 'l':
+                if (this.ends("ical")) {
+                    this.replace("ic");
+                } else if (this.ends("ful")) {
+                    this.replace("");
+                }
+                break;
+            case 's':
+                if (this.ends("ness")) {
+                    this.replace("");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Step 4: removes -ant, -ence and the like when the stem has a measure
+     * above 1, so "allowance" becomes "allow" and "adoption" "adopt".
+     */
+    private void step4() {
+        boolean found;
+        switch (this.b[this.k - 1]) {
+            case 'a':
+                found = this.ends("al");
+                break;
+            case 'c':
+                found = this.ends("ance") || this.ends("ence");
+                break;
+            case 'e':
+                found = this.ends("er");
+                break;
+            case 'i':
+                found = this.ends("ic");
+                break;
+            case 'l':
+                found = this.ends("able") || this.ends("ible");
+                break;
+            case 'n':
+                found = this.ends("ant") || this.ends("ement")
+                        || this.ends("ment") || this.ends("ent");
+                break;
+            case 'o':
+                found = (this.ends("ion") && this.j >= 0
+                        && (this.b[this.j] == 's' || this.b[this.j] == 't'))
+                        || this.ends("ou");
+                break;
+            case 's':
+                found = this.ends("ism");
+                break;
+            case 't':
+                found = this.ends("ate") || this.ends("iti");
+                break;
+            case 'u':
+                found = this.ends("ous");
+                break;
+            case 'v':
+                found = this.ends("ive");
+                break;
+            case 'z':
+                found = this.ends("ize");
+                break;
+            default:
+                found = false;
+                break;
+        }
+        if (found && this.m() > 1) {
+            this.k = this.j;
+        }
+    }
+
+    /**
+     * Step 5: removes a final e and undoubles a final ll when the stem has
+     * a large enough measure, so "probate" becomes "probat" and "controll"
+     * "control".
+     */
+    private void step5() {
+        this.j = this.k;
+        if (this.b[this.k] == 'e') {
+            int a = this.m();
+            if (a > 1 || (a == 1 && !this.cvc(this.k - 1))) {
+                this.k--;
+            }
+        }
+        if (this.b[this.k] == 'l' && this.doubleC(this.k) && this.m() > 1) {
+            this.k--;
+        }
+    }
+
+}
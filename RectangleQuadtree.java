@@ -0,0 +1,319 @@
+import java.util.Arrays;
+
+/**
+ * Region quadtree of axis-aligned rectangles on an integer canvas, answering
+ * "does this rectangle overlap any stored one?" without testing them all.
+ *
+ * Every node covers a quarter of its parent. A rectangle is stored in the
+ * deepest node whose region contains it entirely, so small rectangles sink
+ * towards the leaves and a query only visits the nodes its own rectangle
+ * overlaps: about O(log n) of them for the small, spread out rectangles of a
+ * tag cloud. A leaf is split once it holds more than {@value #CAPACITY}
+ * rectangles. Rectangles are half-open: {@code [x0, x1) x [y0, y1)}.
+ */
+public final class RectangleQuadtree {
+
+    /**
+     * Number of rectangles a leaf holds before it is split.
+     */
+    private static final int CAPACITY = 8;
+
+    /**
+     * Depth below which nodes are no longer split.
+     */
+    private static final int MAX_DEPTH = 16;
+
+    /**
+     * A square-ish region of the canvas and the rectangles stored at it.
+     */
+    private static final class Node {
+
+        /**
+         * Left edge of the region.
+         */
+        private final int x0;
+
+        /**
+         * Top edge of the region.
+         */
+        private final int y0;
+
+        /**
+         * Right edge of the region (exclusive).
+         */
+        private final int x1;
+
+        /**
+         * Bottom edge of the region (exclusive).
+         */
+        private final int y1;
+
+        /**
+         * Depth of the node; the root is at depth 0.
+         */
+        private final int depth;
+
+        /**
+         * Indexes of the rectangles stored at this node.
+         */
+        private int[] items = new int[CAPACITY];
+
+        /**
+         * Number of rectangles stored at this node.
+         */
+        private int count;
+
+        /**
+         * The four quarters of the region, or null for a leaf.
+         */
+        private Node[] children;
+
+        /**
+         * Constructor.
+         *
+         * @param x0
+         *            left edge
+         * @param y0
+         *            top edge
+         * @param x1
+         *            right edge, exclusive
+         * @param y1
+         *            bottom edge, exclusive
+         * @param depth
+         *            depth of the node
+         */
+        Node(int x0, int y0, int x1, int y1, int depth) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.depth = depth;
+        }
+
+        /**
+         * Stores rectangle {@code item} at this node.
+         *
+         * @param item
+         *            the index of the rectangle
+         */
+        void push(int item) {
+            if (this.count == this.items.length) {
+                this.items = Arrays.copyOf(this.items, this.count * 2);
+            }
+            this.items[this.count] = item;
+            this.count++;
+        }
+    }
+
+    /**
+     * The node covering the whole canvas.
+     */
+    private final Node root;
+
+    /**
+     * Left edges of the rectangles, indexed by insertion order.
+     */
+    private int[] left = new int[CAPACITY];
+
+    /**
+     * Top edges of the rectangles.
+     */
+    private int[] top = new int[CAPACITY];
+
+    /**
+     * Right edges of the rectangles (exclusive).
+     */
+    private int[] right = new int[CAPACITY];
+
+    /**
+     * Bottom edges of the rectangles (exclusive).
+     */
+    private int[] bottom = new int[CAPACITY];
+
+    /**
+     * Number of rectangles stored.
+     */
+    private int size;
+
+    /**
+     * Constructor for an empty tree over the canvas
+     * {@code [0, width) x [0, height)}.
+     *
+     * @param width
+     *            width of the canvas
+     * @param height
+     *            height of the canvas
+     * @requires width > 0 and height > 0
+     */
+    public RectangleQuadtree(int width, int height) {
+        assert width > 0 && height > 0 : "Violation of: width > 0 and height > 0";
+
+        this.root = new Node(0, 0, width, height, 0);
+    }
+
+    /**
+     * Returns the number of rectangles stored.
+     *
+     * @return the number of rectangles
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds the rectangle {@code [x0, x1) x [y0, y1)}.
+     *
+     * @param x0
+     *            left edge
+     * @param y0
+     *            top edge
+     * @param x1
+     *            right edge, exclusive
+     * @param y1
+     *            bottom edge, exclusive
+     * @updates this
+     * @requires x0 < x1 and y0 < y1
+     */
+    public void add(int x0, int y0, int x1, int y1) {
+        assert x0 < x1 && y0 < y1 : "Violation of: x0 < x1 and y0 < y1";
+
+        int item = this.size;
+        if (item == this.left.length) {
+            int capacity = item * 2;
+            this.left = Arrays.copyOf(this.left, capacity);
+            this.top = Arrays.copyOf(this.top, capacity);
+            this.right = Arrays.copyOf(this.right, capacity);
+            this.bottom = Arrays.copyOf(this.bottom, capacity);
+        }
+        this.left[item] = x0;
+        this.top[item] = y0;
+        this.right[item] = x1;
+        this.bottom[item] = y1;
+        this.size++;
+
+        Node node = this.root;
+        while (true) {
+            if (node.children == null) {
+                if (node.count < CAPACITY || node.depth == MAX_DEPTH
+                        || node.x1 - node.x0 < 2 || node.y1 - node.y0 < 2) {
+                    node.push(item);
+                    return;
+                }
+                this.split(node);
+            }
+            Node child = this.childContaining(node, item);
+            if (child == null) {
+                node.push(item);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Gives {@code node} four children and moves down every rectangle that
+     * fits in one of them.
+     *
+     * @param node
+     *            a full leaf
+     */
+    private void split(Node node) {
+        int midX = (node.x0 + node.x1) >>> 1;
+        int midY = (node.y0 + node.y1) >>> 1;
+        int depth = node.depth + 1;
+        node.children = new Node[] {
+                new Node(node.x0, node.y0, midX, midY, depth),
+                new Node(midX, node.y0, node.x1, midY, depth),
+                new Node(node.x0, midY, midX, node.y1, depth),
+                new Node(midX, midY, node.x1, node.y1, depth) };
+        int kept = 0;
+        for (int i = 0; i < node.count; i++) {
+            int item = node.items[i];
+            Node child = this.childContaining(node, item);
+            if (child == null) {
+                node.items[kept] = item;
+                kept++;
+            } else {
+                child.push(item);
+            }
+        }
+        node.count = kept;
+    }
+
+    /**
+     * Returns the child of {@code node} whose region contains rectangle
+     * {@code item} entirely, or null if it straddles two of them.
+     *
+     * @param node
+     *            a node with children
+     * @param item
+     *            the index of the rectangle
+     * @return the child containing the rectangle, or null
+     */
+    private Node childContaining(Node node, int item) {
+        Node found = null;
+        for (Node child : node.children) {
+            if (child.x0 <= this.left[item] && this.right[item] <= child.x1
+                    && child.y0 <= this.top[item]
+                    && this.bottom[item] <= child.y1) {
+                found = child;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reports whether the rectangle {@code [x0, x1) x [y0, y1)} overlaps any
+     * stored rectangle.
+     *
+     * @param x0
+     *            left edge
+     * @param y0
+     *            top edge
+     * @param x1
+     *            right edge, exclusive
+     * @param y1
+     *            bottom edge, exclusive
+     * @return true iff some stored rectangle overlaps it
+     */
+    public boolean intersects(int x0, int y0, int x1, int y1) {
+        return this.intersects(this.root, x0, y0, x1, y1);
+    }
+
+    /**
+     * Reports whether the rectangle {@code [x0, x1) x [y0, y1)} overlaps any
+     * rectangle stored at {@code node} or below it.
+     *
+     * @param node
+     *            the subtree to search
+     * @param x0
+     *            left edge
+     * @param y0
+     *            top edge
+     * @param x1
+     *            right edge, exclusive
+     * @param y1
+     *            bottom edge, exclusive
+     * @return true iff some rectangle of the subtree overlaps it
+     */
+    private boolean intersects(Node node, int x0, int y0, int x1, int y1) {
+        for (int i = 0; i < node.count; i++) {
+            int item = node.items[i];
+            if (this.left[item] < x1 && x0 < this.right[item]
+                    && this.top[item] < y1 && y0 < this.bottom[item]) {
+                return true;
+            }
+        }
+        if (node.children != null) {
+            for (Node child : node.children) {
+                if (child.x0 < x1 && x0 < child.x1 && child.y0 < y1
+                        && y0 < child.y1
+                        && this.intersects(child, x0, y0, x1, y1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
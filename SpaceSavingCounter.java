@@ -0,0 +1,431 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Approximate word counter with a fixed number of counters (the Space-Saving
+ * algorithm of Metwally, Agrawal and El Abbadi), optionally backed by a
+ * {@code CountMinSketch}. Its memory use is set up front and does not grow
+ * with the vocabulary, so it can rank the most frequent words of text full of
+ * unique identifiers.
+ *
+ * Every counted word is monitored: a word that is not monitored takes over the
+ * counter with the smallest count. Each monitored word has a count and an
+ * error such that, for its true number of occurrences f,
+ * {@code count - error <= f <= count}. For a stream of N words and m counters:
+ * <ul>
+ * <li>every error is at most {@link #errorBound()}, which is at most
+ * N / m;</li>
+ * <li>every word with f > {@link #errorBound()} is monitored, so any word
+ * occurring more than N / m times is reported;</li>
+ * <li>a reported top-k word whose {@code count - error} is at least the
+ * count of the (k+1)-th word is guaranteed to belong to the true top k.</li>
+ * </ul>
+ * With a sketch, a newly monitored word starts at the smaller of the plain
+ * Space-Saving count and the sketch's estimate, which with high probability
+ * shrinks errors to about {@code e * N / width} (see {@code CountMinSketch}).
+ */
+public final class SpaceSavingCounter implements WordTokenizer.Sink {
+
+    /**
+     * Estimated heap bytes used per counter: the word itself plus the entries
+     * of the parallel arrays, heap and probe table.
+     */
+    public static final int BYTES_PER_COUNTER = 96;
+
+    /**
+     * Number of rows of the sketch created by {@link #withBudget}.
+     */
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * Fraction (in quarters) of the budget given to counters when a sketch is
+     * used; the sketch gets the rest.
+     */
+    private static final int COUNTER_QUARTERS = 3;
+
+    /**
+     * Multiplier used to spread hash codes over the probe table.
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /**
+     * Number of counters.
+     */
+    private final int capacity;
+
+    /**
+     * Monitored words, indexed by counter.
+     */
+    private final String[] words;
+
+    /**
+     * {@code String.hashCode} of each monitored word.
+     */
+    private final int[] hashes;
+
+    /**
+     * Count of each counter.
+     */
+    private final int[] counts;
+
+    /**
+     * Error of each counter: the most its count may exceed the true count.
+     */
+    private final int[] errors;
+
+    /**
+     * Probe table: 1 + the counter of the word hashed there, or 0.
+     */
+    private final int[] slots;
+
+    /**
+     * Counters in min-heap order of their counts.
+     */
+    private final int[] heap;
+
+    /**
+     * Heap index of each counter.
+     */
+    private final int[] heapIndex;
+
+    /**
+     * Optional sketch bounding the counts of newly monitored words, or null.
+     */
+    private final CountMinSketch sketch;
+
+    /**
+     * Number of counters in use.
+     */
+    private int size;
+
+    /**
+     * Number of words counted.
+     */
+    private long total;
+
+    /**
+     * Largest count ever taken over from a counter; no word that is not
+     * monitored has occurred more often than this.
+     */
+    private int floor;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            number of counters
+     * @param sketch
+     *            sketch bounding the counts of newly monitored words, or null
+     * @requires capacity > 0
+     */
+    public SpaceSavingCounter(int capacity, CountMinSketch sketch) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+
+        this.capacity = capacity;
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.errors = new int[capacity];
+        this.heap = new int[capacity];
+        this.heapIndex = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        this.sketch = sketch;
+    }
+
+    /**
+     * Creates a counter whose counters (and sketch, if asked for) fit in about
+     * {@code bytes} bytes of heap.
+     *
+     * @param bytes
+     *            the memory budget
+     * @param useSketch
+     *            whether to spend a quarter of the budget on a sketch
+     * @return the new counter
+     * @requires bytes > 0
+     */
+    public static SpaceSavingCounter withBudget(long bytes, boolean useSketch) {
+        assert bytes > 0 : "Violation of: bytes > 0";
+
+        final int quarters = 4;
+        final int maxCapacity = 1 << 29;
+        long counterBytes = bytes;
+        CountMinSketch sketch = null;
+        if (useSketch) {
+            counterBytes = bytes / quarters * COUNTER_QUARTERS;
+            long width = (bytes - counterBytes) / Integer.BYTES / SKETCH_DEPTH;
+            sketch = new CountMinSketch(SKETCH_DEPTH,
+                    (int) Math.max(1, Math.min(width, maxCapacity)));
+        }
+        int capacity = (int) Math.max(1,
+                Math.min(counterBytes / BYTES_PER_COUNTER, maxCapacity));
+        return new SpaceSavingCounter(capacity, sketch);
+    }
+
+    /**
+     * Returns the probe table index where the search for {@code hash} starts.
+     *
+     * @param hash
+     *            the {@code String.hashCode} of a word
+     * @return the first slot to probe
+     */
+    private int home(int hash) {
+        int h = hash * SPREAD;
+        return (h ^ (h >>> 16)) & (this.slots.length - 1);
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        int hash = WordCountTable.hash(text, offset, length);
+        this.total++;
+        int estimate = Integer.MAX_VALUE;
+        if (this.sketch != null) {
+            estimate = this.sketch.add(hash);
+        }
+        int mask = this.slots.length - 1;
+        int i = this.home(hash);
+        int slot = this.slots[i];
+        while (slot != 0) {
+            int c = slot - 1;
+            if (this.hashes[c] == hash
+                    && WordCountTable.matches(this.words[c], text, offset,
+                            length)) {
+                this.counts[c]++;
+                this.siftDown(this.heapIndex[c]);
+                return;
+            }
+            i = (i + 1) & mask;
+            slot = this.slots[i];
+        }
+        this.monitor(new String(text, offset, length), hash, estimate);
+    }
+
+    /**
+     * Starts monitoring a word that is not monitored, taking over the counter
+     * with the smallest count once all counters are in use.
+     *
+     * @param word
+     *            the word
+     * @param hash
+     *            {@code word.hashCode()}
+     * @param estimate
+     *            the sketch's upper bound on the word's count, or
+     *            {@code Integer.MAX_VALUE}
+     * @updates this
+     */
+    private void monitor(String word, int hash, int estimate) {
+        int c;
+        int count;
+        if (this.size < this.capacity) {
+            c = this.size;
+            this.heap[c] = c;
+            this.heapIndex[c] = c;
+            this.size++;
+            count = 1;
+        } else {
+            c = this.heap[0];
+            this.floor = Math.max(this.floor, this.counts[c]);
+            this.unlink(c);
+            count = (int) Math.min((long) this.floor + 1, estimate);
+        }
+        this.words[c] = word;
+        this.hashes[c] = hash;
+        this.counts[c] = count;
+        this.errors[c] = count - 1;
+        int mask = this.slots.length - 1;
+        int i = this.home(hash);
+        while (this.slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.slots[i] = c + 1;
+        this.siftUp(this.heapIndex[c]);
+        this.siftDown(this.heapIndex[c]);
+    }
+
+    /**
+     * Removes counter {@code c} from the probe table, shifting later entries of
+     * its probe run back so lookups still find them.
+     *
+     * @param c
+     *            the counter to remove
+     * @updates this.slots
+     */
+    private void unlink(int c) {
+        int mask = this.slots.length - 1;
+        int hole = this.home(this.hashes[c]);
+        while (this.slots[hole] != c + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int j = hole;
+        while (true) {
+            j = (j + 1) & mask;
+            if (this.slots[j] == 0) {
+                break;
+            }
+            int k = this.home(this.hashes[this.slots[j] - 1]);
+            /*
+             * The entry at j may fill the hole unless its home slot lies
+             * cyclically in (hole, j]
+             */
+            boolean stays;
+            if (hole <= j) {
+                stays = hole < k && k <= j;
+            } else {
+                stays = hole < k || k <= j;
+            }
+            if (!stays) {
+                this.slots[hole] = this.slots[j];
+                hole = j;
+            }
+        }
+        this.slots[hole] = 0;
+    }
+
+    /**
+     * Returns the count of the counter at heap index {@code i}.
+     *
+     * @param i
+     *            the heap index
+     * @return the count at {@code i}
+     */
+    private int countAt(int i) {
+        return this.counts[this.heap[i]];
+    }
+
+    /**
+     * Swaps heap entries {@code i} and {@code j}.
+     *
+     * @param i
+     *            first heap index
+     * @param j
+     *            second heap index
+     */
+    private void swap(int i, int j) {
+        int a = this.heap[i];
+        int b = this.heap[j];
+        this.heap[i] = b;
+        this.heap[j] = a;
+        this.heapIndex[b] = i;
+        this.heapIndex[a] = j;
+    }
+
+    /**
+     * Restores the heap property from index {@code i} towards the root.
+     *
+     * @param i
+     *            heap index of the entry to move up
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (this.countAt(parent) <= this.countAt(child)) {
+                return;
+            }
+            this.swap(child, parent);
+            child = parent;
+        }
+    }
+
+    /**
+     * Restores the heap property from index {@code i} towards the leaves.
+     *
+     * @param i
+     *            heap index of the entry to move down
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && this.countAt(child + 1) < this.countAt(child)) {
+                child++;
+            }
+            if (this.countAt(parent) <= this.countAt(child)) {
+                return;
+            }
+            this.swap(child, parent);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+    /**
+     * Returns the number of counters.
+     *
+     * @return the capacity of this counter
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of words counted.
+     *
+     * @return N, the length of the stream so far
+     */
+    public long totalCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns the largest possible error of any count, which is also the
+     * largest possible true count of a word that is not monitored. It is at
+     * most {@code totalCount() / capacity()}.
+     *
+     * @return the error bound of this counter
+     */
+    public int errorBound() {
+        return this.floor;
+    }
+
+    /**
+     * Selects the {@code k} monitored words with the highest counts.
+     *
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words (all monitored words if there are fewer)
+     * @requires k > 0
+     */
+    public TopWords top(int k) {
+        assert k > 0 : "Violation of: k > 0";
+
+        TopWords.Selector selector = new TopWords.Selector(
+                Math.min(k, Math.max(this.size, 1)));
+        for (int c = 0; c < this.size; c++) {
+            if (this.counts[c] >= selector.threshold()) {
+                selector.offer(this.words[c], this.counts[c]);
+            }
+        }
+        return selector.result();
+    }
+
+    /**
+     * Returns the error of each word of {@code words}, as expected by
+     * {@code TagCloudGenerator.outputBody}.
+     *
+     * @param words
+     *            words selected by {@link #top(int)}
+     * @return a map from each word to the most its count may be too high
+     */
+    public Map<String, Integer> errors(TopWords words) {
+        assert words != null : "Violation of: words is not null";
+
+        Map<String, Integer> map = new TreeMap<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.word(i);
+            int hash = word.hashCode();
+            int mask = this.slots.length - 1;
+            int j = this.home(hash);
+            while (this.slots[j] != 0) {
+                int c = this.slots[j] - 1;
+                if (this.hashes[c] == hash && this.words[c].equals(word)) {
+                    map.put(word, this.errors[c]);
+                    break;
+                }
+                j = (j + 1) & mask;
+            }
+        }
+        return map;
+    }
+
+}
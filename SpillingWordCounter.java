@@ -0,0 +1,510 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Exact word counter that works within a memory budget, for vocabularies too
+ * large to count in the heap.
+ *
+ * Words are counted in a {@code WordCountTable} until its estimated size
+ * reaches the budget. The table is then spilled: each (word, count) pair is
+ * appended to one of {@value #PARTITIONS} run files in a temporary directory,
+ * chosen by bits of the word's hash code, and the table is cleared. A word
+ * therefore always lands in the same partition, and partitions share no
+ * words. {@link #top(int)} spills what is left, then counts each partition
+ * on its own, adding up the counts it spilled over time, and offers the
+ * totals to a {@code TopWords.Selector}. The top words are exactly those of
+ * the in-memory path.
+ *
+ * A partition that still does not fit in the budget is partitioned again on
+ * the next bits of the hash, up to {@value #MAX_LEVEL} levels deep. Disk
+ * access is sequential: run files are only appended to, then read once from
+ * start to end.
+ */
+public final class SpillingWordCounter implements WordTokenizer.Sink,
+        Closeable {
+
+    /**
+     * Thrown from {@link #word(char[], int, int)}, which cannot throw
+     * {@code IOException}, when a spill fails.
+     */
+    public static final class SpillException extends RuntimeException {
+
+        /**
+         * Serialization id.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         *
+         * @param cause
+         *            the failure writing the run file
+         */
+        SpillException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Number of hash bits that pick a partition.
+     */
+    private static final int PARTITION_BITS = 6;
+
+    /**
+     * Number of partitions a spill is split into.
+     */
+    public static final int PARTITIONS = 1 << PARTITION_BITS;
+
+    /**
+     * Deepest level that is partitioned further; past it, all hash bits are
+     * used and a partition is counted in memory whatever its size.
+     */
+    public static final int MAX_LEVEL = Integer.SIZE / PARTITION_BITS - 1;
+
+    /**
+     * Estimated heap bytes per distinct word in the table, not counting its
+     * characters: the {@code String} header (40), the word, hash and count
+     * arrays (16) and the probe table (8), doubled for the spare capacity of
+     * arrays that grow by doubling.
+     */
+    private static final int BYTES_PER_WORD = 40 + 2 * (16 + 8);
+
+    /**
+     * Size of the write buffer of each run file.
+     */
+    private static final int RUN_BUFFER_SIZE = 8 << 10;
+
+    /**
+     * Multiplier used to spread hash codes over the partitions.
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /**
+     * Memory budget, in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Directory the run files are created in.
+     */
+    private final Path directory;
+
+    /**
+     * Partitioning level: level {@code l} picks the partition with hash bits
+     * {@code [l * PARTITION_BITS, (l + 1) * PARTITION_BITS)}.
+     */
+    private final int level;
+
+    /**
+     * Counts of the words seen since the last spill.
+     */
+    private WordCountTable table = new WordCountTable();
+
+    /**
+     * Estimated heap size of {@code table}.
+     */
+    private long tableBytes;
+
+    /**
+     * Run file of each partition, or null while nothing has been spilled.
+     */
+    private Path[] runs;
+
+    /**
+     * Open writer of each run file.
+     */
+    private DataOutputStream[] writers;
+
+    /**
+     * Sum of all counts.
+     */
+    private long total;
+
+    /**
+     * Number of spills.
+     */
+    private int spills;
+
+    /**
+     * Bytes written to run files, including those of partitions split again.
+     */
+    private long spilledBytes;
+
+    /**
+     * Number of word counts written to the run files, which is at least the
+     * number of distinct words among them.
+     */
+    private long spilledEntries;
+
+    /**
+     * Number of distinct words found by the last {@link #top(int)}.
+     */
+    private long distinctWords;
+
+    /**
+     * Constructor.
+     *
+     * @param budget
+     *            memory budget for the counts, in bytes
+     * @param directory
+     *            directory to create the run files in
+     * @requires budget > 0 and [directory is a writable directory]
+     */
+    public SpillingWordCounter(long budget, Path directory) {
+        this(budget, directory, 0);
+    }
+
+    /**
+     * Constructor for a counter of one partition.
+     *
+     * @param budget
+     *            memory budget for the counts, in bytes
+     * @param directory
+     *            directory to create the run files in
+     * @param level
+     *            the partitioning level
+     */
+    private SpillingWordCounter(long budget, Path directory, int level) {
+        assert budget > 0 : "Violation of: budget > 0";
+        assert directory != null : "Violation of: directory is not null";
+
+        this.budget = budget;
+        this.directory = directory;
+        this.level = level;
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        int size = this.table.size();
+        this.table.add(text, offset, length, 1);
+        this.total++;
+        if (this.table.size() > size) {
+            this.added(length);
+        }
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the number of occurrences to add
+     * @updates this
+     * @requires count > 0
+     */
+    public void add(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+
+        int size = this.table.size();
+        this.table.add(word, count);
+        this.total += count;
+        if (this.table.size() > size) {
+            this.added(word.length());
+        }
+    }
+
+    /**
+     * Accounts for a new word of {@code length} characters in the table and
+     * spills the table once it is over budget.
+     *
+     * @param length
+     *            length of the new word
+     * @updates this
+     */
+    private void added(int length) {
+        this.tableBytes += BYTES_PER_WORD + 2L * length;
+        if (this.tableBytes > this.budget && this.level <= MAX_LEVEL) {
+            try {
+                this.spill();
+            } catch (IOException e) {
+                throw new SpillException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the partition of a word with hash code {@code hash} at this
+     * counter's level.
+     *
+     * @param hash
+     *            {@code String.hashCode} of the word
+     * @return the partition, in [0, {@value #PARTITIONS})
+     */
+    private int partition(int hash) {
+        return Integer.rotateLeft(hash * SPREAD,
+                this.level * PARTITION_BITS) >>> (Integer.SIZE
+                        - PARTITION_BITS);
+    }
+
+    /**
+     * Appends every (word, count) pair of the table to its partition's run
+     * file and clears the table.
+     *
+     * @throws IOException
+     *             if a run file cannot be written
+     * @updates this
+     */
+    private void spill() throws IOException {
+        PipelineStage stage = PipelineStage.start("spill");
+        if (this.runs == null) {
+            this.runs = new Path[PARTITIONS];
+            this.writers = new DataOutputStream[PARTITIONS];
+        }
+        int size = this.table.size();
+        for (int id = 0; id < size; id++) {
+            String word = this.table.word(id);
+            int p = this.partition(word.hashCode());
+            if (this.writers[p] == null) {
+                this.runs[p] = Files.createTempFile(this.directory,
+                        "tagcloud-run-", ".bin");
+                this.writers[p] = new DataOutputStream(
+                        new BufferedOutputStream(
+                                Files.newOutputStream(this.runs[p]),
+                                RUN_BUFFER_SIZE));
+            }
+            DataOutputStream out = this.writers[p];
+            int before = out.size();
+            writeVarint(out, this.table.count(id));
+            writeVarint(out, word.length());
+            for (int i = 0; i < word.length(); i++) {
+                writeVarint(out, word.charAt(i));
+            }
+            this.spilledBytes += out.size() - before;
+        }
+        this.spilledEntries += size;
+        stage.end(0, 0, size,
+                stage.recording() ? this.table.estimatedBytes() : 0);
+        this.table.clear();
+        this.tableBytes = 0;
+        this.spills++;
+    }
+
+    /**
+     * Writes {@code value} in 7-bit groups, low group first, with the high
+     * bit of each byte set if another byte follows.
+     *
+     * @param out
+     *            the output
+     * @param value
+     *            the value
+     * @throws IOException
+     *             if it cannot be written
+     * @requires value >= 0
+     */
+    private static void writeVarint(OutputStream out, int value)
+            throws IOException {
+        int v = value;
+        while (v >= 0x80) {
+            out.write(v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /**
+     * Reads a value written by {@code writeVarint}.
+     *
+     * @param in
+     *            the input
+     * @return the value, or -1 if {@code in} is at its end
+     * @throws IOException
+     *             if it cannot be read, or the input ends inside the value
+     */
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+        while (b >= 0x80) {
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated run file");
+            }
+        }
+        return value | b << shift;
+    }
+
+    /**
+     * Selects the {@code k} most frequent words counted so far. Spilled counts
+     * are merged one partition at a time, so at most one partition's words
+     * are in memory; the run files are kept until {@link #close()}.
+     *
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words (all of them if there are fewer), in
+     *         alphabetical order
+     * @throws IOException
+     *             if a run file cannot be read or written
+     * @requires k > 0
+     */
+    public TopWords top(int k) throws IOException {
+        assert k > 0 : "Violation of: k > 0";
+
+        PipelineStage stage = PipelineStage.start("mergeSpilledRuns");
+        /*
+         * The distinct words are only known after the merge, but there are
+         * no more of them than counts in the table and the run files
+         */
+        long bound = this.table.size() + this.spilledEntries;
+        TopWords.Selector selector = new TopWords.Selector(
+                (int) Math.min(k, Math.max(bound, 1)));
+        this.distinctWords = this.offerTo(selector);
+        TopWords top = selector.result();
+        stage.end(this.spilledBytes, this.total, this.distinctWords, 0);
+        return top;
+    }
+
+    /**
+     * Offers the total count of every word to {@code selector}.
+     *
+     * @param selector
+     *            the selector
+     * @return the number of distinct words offered
+     * @throws IOException
+     *             if a run file cannot be read or written
+     * @updates selector
+     */
+    private long offerTo(TopWords.Selector selector) throws IOException {
+        if (this.runs == null) {
+            for (int id = 0; id < this.table.size(); id++) {
+                int count = this.table.count(id);
+                if (count >= selector.threshold()) {
+                    selector.offer(this.table.word(id), count);
+                }
+            }
+            return this.table.size();
+        }
+
+        if (this.table.size() > 0) {
+            this.spill();
+        }
+        /*
+         * Drop the table's arrays, sized for the whole budget, before the
+         * partitions are counted in budgets of their own
+         */
+        this.table = new WordCountTable();
+        long distinct = 0;
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (this.writers[p] == null) {
+                continue;
+            }
+            this.writers[p].flush();
+            try (SpillingWordCounter partition = new SpillingWordCounter(
+                    this.budget, this.directory, this.level + 1);
+                    DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(
+                                    Files.newInputStream(this.runs[p])))) {
+                char[] word = new char[16];
+                int count = readVarint(in);
+                while (count >= 0) {
+                    int length = readVarint(in);
+                    if (length < 0) {
+                        throw new EOFException("Truncated run file");
+                    }
+                    if (length > word.length) {
+                        word = new char[Math.max(length, 2 * word.length)];
+                    }
+                    for (int i = 0; i < length; i++) {
+                        word[i] = (char) readVarint(in);
+                    }
+                    partition.add(new String(word, 0, length), count);
+                    count = readVarint(in);
+                }
+                distinct += partition.offerTo(selector);
+                this.spilledBytes += partition.spilledBytes;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Returns the sum of all counts.
+     *
+     * @return the number of words counted
+     */
+    public long totalCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of distinct words found by the last
+     * {@link #top(int)}.
+     *
+     * @return the number of distinct words, or 0 before {@code top} is called
+     */
+    public long distinctWords() {
+        return this.distinctWords;
+    }
+
+    /**
+     * Returns the number of times the table was spilled to the run files.
+     *
+     * @return the number of spills
+     */
+    public int spills() {
+        return this.spills;
+    }
+
+    /**
+     * Returns the number of bytes written to run files.
+     *
+     * @return the size of all runs written
+     */
+    public long spilledBytes() {
+        return this.spilledBytes;
+    }
+
+    /**
+     * Closes and deletes the run files.
+     *
+     * @throws IOException
+     *             if a run file cannot be closed or deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.runs == null) {
+            return;
+        }
+        IOException failure = null;
+        for (int p = 0; p < PARTITIONS; p++) {
+            if (this.writers[p] == null) {
+                continue;
+            }
+            try {
+                this.writers[p].close();
+                Files.deleteIfExists(this.runs[p]);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        this.runs = null;
+        this.writers = null;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
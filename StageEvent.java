@@ -0,0 +1,52 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for one stage of the tag cloud pipeline, emitted
+ * by {@code PipelineStage}. Its duration is the wall time of the stage.
+ */
+@Name("tagcloud.PipelineStage")
+@Label("Pipeline Stage")
+@Category("Tag Cloud")
+@Description("One stage of generating a tag cloud")
+@StackTrace(false)
+public final class StageEvent extends Event {
+
+    /**
+     * Name of the stage.
+     */
+    @Label("Stage")
+    String stage;
+
+    /**
+     * Bytes (or, from a {@code Reader}, characters) of input read.
+     */
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    /**
+     * Number of words counted.
+     */
+    @Label("Tokens")
+    long tokens;
+
+    /**
+     * Number of distinct words handled.
+     */
+    @Label("Distinct Words")
+    long distinctWords;
+
+    /**
+     * Estimated heap size of the count table at the end of the stage.
+     */
+    @Label("Table Size")
+    @DataAmount
+    long tableBytes;
+
+}
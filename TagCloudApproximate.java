@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * A program that generates a tag cloud of a text file with bounded memory,
+ * using approximate counts from a {@code SpaceSavingCounter}.
+ *
+ * The number of counters is derived from a memory budget given in megabytes,
+ * so the vocabulary of the file never has to fit in memory. The title of every
+ * word in the page shows its count and, if that count may be too high, the
+ * most it can be off by (see {@code SpaceSavingCounter} for the guarantees).
+ *
+ * Usage: {@code TagCloudApproximate <input file> <output HTML file>
+ * <word count> <memory budget in MB> [sketch]}
+ */
+public final class TagCloudApproximate {
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final long BYTES_PER_MB = 1L << 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudApproximate() {
+        //no code needed here
+    }
+
+    /**
+     * Counts the words of {@code input} into {@code counter}.
+     *
+     * @param input
+     *            the input file
+     * @param counter
+     *            the approximate counter
+     * @throws IOException
+     *             if the file cannot be read
+     * @updates counter
+     */
+    public static void countWords(Path input, SpaceSavingCounter counter)
+            throws IOException {
+        MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+        try (FileChannel channel = FileChannel.open(input,
+                StandardOpenOption.READ)) {
+            scanner.scan(channel, 0, channel.size(), counter);
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input file, output HTML file,
+     *            word count, memory budget in megabytes and optionally
+     *            "sketch" to back the counters with a Count-Min sketch
+     */
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 5
+                || (args.length == 5 && !args[4].equals("sketch"))) {
+            System.err.println("Usage: TagCloudApproximate <input file> "
+                    + "<output HTML file> <word count> "
+                    + "<memory budget in MB> [sketch]");
+            return;
+        }
+
+        int cloudWordAmt;
+        long budget;
+        try {
+            cloudWordAmt = Integer.parseInt(args[2]);
+            budget = Long.parseLong(args[3]) * BYTES_PER_MB;
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count and memory budget must be "
+                    + "integers");
+            return;
+        }
+        if (cloudWordAmt <= 0 || budget <= 0) {
+            System.err.println("ERROR: word count and memory budget must be "
+                    + "positive");
+            return;
+        }
+
+        SpaceSavingCounter counter = SpaceSavingCounter.withBudget(budget,
+                args.length == 5);
+        try {
+            countWords(Paths.get(args[0]), counter);
+        } catch (IOException e) {
+            System.err.println("Error reading input file");
+            return;
+        }
+        if (counter.totalCount() == 0) {
+            System.out.println(
+                    "The input file was empty, so no tag cloud could be generated.");
+            return;
+        }
+
+        TopWords topWords = counter.top(cloudWordAmt);
+        Map<String, Integer> errors = counter.errors(topWords);
+        try {
+            new HtmlRenderer(Charset.defaultCharset()).write(
+                    Paths.get(args[1]), args[0], cloudWordAmt, topWords,
+                    errors);
+        } catch (IOException e) {
+            System.err.println("Error opening output file");
+            return;
+        }
+
+        System.out.println(counter.capacity() + " counters, "
+                + counter.totalCount() + " words; every count is at most "
+                + counter.errorBound() + " too high");
+    }
+
+}
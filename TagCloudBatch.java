@@ -0,0 +1,343 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A program that generates one tag cloud per input file for many files at
+ * once, without prompting.
+ *
+ * The inputs are the regular files of a directory, or the files listed in a
+ * manifest (one path per line, relative to the manifest; blank lines and lines
+ * starting with # are ignored). Files are processed by a fixed pool of worker
+ * threads, so at most two files (one input, one output) per thread are open at
+ * any time. Each thread reuses one {@code MappedWordScanner}, one
+ * {@code WordCountTable}, cleared between files rather than reallocated, and
+ * one {@code HtmlRenderer}. The
+ * total size of the files being counted at the same time is bounded by a
+ * memory budget. The page for {@code name} is written to
+ * {@code <output directory>/name.html}; an input whose file name is that of
+ * an earlier input (such as {@code a/log.txt} and {@code b/log.txt} in a
+ * manifest) is reported as a failure rather than overwrite its page.
+ *
+ * Usage: {@code TagCloudBatch <input directory or manifest>
+ * <output directory> <word count> [threads] [in-flight MB]}
+ */
+public final class TagCloudBatch {
+
+    /**
+     * Default bound on the total size of the files being counted at once.
+     */
+    private static final int DEFAULT_IN_FLIGHT_MB = 512;
+
+    /**
+     * Granularity of the in-flight budget.
+     */
+    private static final int KB = 1024;
+
+    /**
+     * Kilobytes per megabyte.
+     */
+    private static final int KB_PER_MB = 1024;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final double BYTES_PER_MB = 1 << 20;
+
+    /**
+     * Per-thread scanner and count table, reused for every file a thread
+     * processes.
+     */
+    private static final class Worker {
+
+        /**
+         * The thread's scanner.
+         */
+        private final MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+
+        /**
+         * The thread's count table.
+         */
+        private final WordCountTable table = new WordCountTable();
+
+        /**
+         * The thread's page renderer.
+         */
+        private final HtmlRenderer renderer = new HtmlRenderer(
+                Charset.defaultCharset());
+    }
+
+    /**
+     * The output directory.
+     */
+    private final Path outputDir;
+
+    /**
+     * Number of words in each tag cloud.
+     */
+    private final int cloudWordAmt;
+
+    /**
+     * Kilobytes of input that may be counted at the same time.
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * Size of the in-flight budget, in kilobytes.
+     */
+    private final int inFlightKb;
+
+    /**
+     * Worker state of each pool thread.
+     */
+    private final ThreadLocal<Worker> workers = ThreadLocal
+            .withInitial(Worker::new);
+
+    /**
+     * Number of pages written.
+     */
+    private final AtomicInteger done = new AtomicInteger();
+
+    /**
+     * Number of files that could not be processed.
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Number of input bytes counted.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param outputDir
+     *            the output directory
+     * @param cloudWordAmt
+     *            number of words in each tag cloud
+     * @param inFlightMb
+     *            megabytes of input that may be counted at the same time
+     * @requires cloudWordAmt > 0 and inFlightMb > 0
+     */
+    public TagCloudBatch(Path outputDir, int cloudWordAmt, int inFlightMb) {
+        assert cloudWordAmt > 0 : "Violation of: cloudWordAmt > 0";
+        assert inFlightMb > 0 : "Violation of: inFlightMb > 0";
+
+        this.outputDir = outputDir;
+        this.cloudWordAmt = cloudWordAmt;
+        this.inFlightKb = inFlightMb * KB_PER_MB;
+        this.inFlight = new Semaphore(this.inFlightKb);
+    }
+
+    /**
+     * Returns the input files named by {@code source}: the regular files of a
+     * directory, or the files listed in a manifest.
+     *
+     * @param source
+     *            a directory or a manifest file
+     * @return the input files, in name or manifest order
+     * @throws IOException
+     *             if the directory or manifest cannot be read
+     */
+    public static List<Path> inputFiles(Path source) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(source)) {
+                for (Path p : dir) {
+                    if (Files.isRegularFile(p)) {
+                        files.add(p);
+                    }
+                }
+            }
+            Collections.sort(files);
+        } else {
+            Path base = source.toAbsolutePath().getParent();
+            try (BufferedReader manifest = Files.newBufferedReader(source,
+                    Charset.defaultCharset())) {
+                String line = manifest.readLine();
+                while (line != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        files.add(base.resolve(line));
+                    }
+                    line = manifest.readLine();
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Generates the tag clouds of {@code files} on {@code threads} threads and
+     * waits until all are written.
+     *
+     * @param files
+     *            the input files
+     * @param threads
+     *            number of worker threads
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     * @requires threads > 0
+     */
+    public void run(List<Path> files, int threads)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Map<Path, Path> pages = new HashMap<>();
+        for (Path file : files) {
+            Path out = this.outputDir.resolve(file.getFileName() + ".html");
+            Path earlier = pages.putIfAbsent(out, file);
+            if (earlier == null) {
+                pool.execute(() -> this.process(file, out));
+            } else {
+                System.err.println(file + ": " + out + " is the page of "
+                        + earlier + ", no tag cloud generated");
+                this.failed.incrementAndGet();
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts the words of {@code file} and writes its tag cloud to
+     * {@code out}, reporting failures on {@code System.err}.
+     *
+     * @param file
+     *            the input file
+     * @param out
+     *            the output HTML file
+     */
+    private void process(Path file, Path out) {
+        Worker worker = this.workers.get();
+        int permits = 0;
+        try {
+            long size = Files.size(file);
+            int need = (int) Math.min(this.inFlightKb,
+                    Math.max(1, (size + KB - 1) / KB));
+            this.inFlight.acquire(need);
+            permits = need;
+            worker.table.clear();
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+                worker.scanner.scan(channel, 0, channel.size(), worker.table);
+            }
+            this.bytes.addAndGet(size);
+            if (worker.table.size() == 0) {
+                System.err.println(file + ": empty, no tag cloud generated");
+                this.failed.incrementAndGet();
+                return;
+            }
+            TopWords topWords = TopWords.select(worker.table,
+                    this.cloudWordAmt);
+            worker.renderer.write(out, file.getFileName().toString(),
+                    topWords.size(), topWords);
+            this.done.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            /*
+             * Runtime exceptions too (a file truncated while mapped throws
+             * one): the file must be counted, and the thread and its worker
+             * kept
+             */
+            System.err.println(file + ": " + e);
+            this.failed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.inFlight.release(permits);
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input directory or manifest,
+     *            output directory, word count, and optionally the number of
+     *            threads and the in-flight budget in megabytes
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 5) {
+            System.err.println("Usage: TagCloudBatch <input directory or "
+                    + "manifest> <output directory> <word count> [threads] "
+                    + "[in-flight MB]");
+            return;
+        }
+
+        int cloudWordAmt;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int inFlightMb = DEFAULT_IN_FLIGHT_MB;
+        try {
+            cloudWordAmt = Integer.parseInt(args[2]);
+            if (args.length > 3) {
+                threads = Integer.parseInt(args[3]);
+            }
+            if (args.length > 4) {
+                inFlightMb = Integer.parseInt(args[4]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count, threads and in-flight MB "
+                    + "must be integers");
+            return;
+        }
+        if (cloudWordAmt <= 0 || threads <= 0 || inFlightMb <= 0) {
+            System.err.println("ERROR: word count, threads and in-flight MB "
+                    + "must be positive");
+            return;
+        }
+
+        List<Path> files;
+        Path outputDir = Paths.get(args[1]);
+        try {
+            files = inputFiles(Paths.get(args[0]));
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            System.err.println("Error reading inputs: " + e);
+            return;
+        }
+
+        TagCloudBatch batch = new TagCloudBatch(outputDir, cloudWordAmt,
+                inFlightMb);
+        long start = System.nanoTime();
+        try {
+            batch.run(files, threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1)
+                / NANOS_PER_SECOND;
+
+        System.out.printf(
+                "%d files (%d failed), %.1f MB in %.2f s: %.1f files/s, "
+                        + "%.1f MB/s%n",
+                batch.done.get(), batch.failed.get(),
+                batch.bytes.get() / BYTES_PER_MB, seconds,
+                batch.done.get() / seconds,
+                batch.bytes.get() / BYTES_PER_MB / seconds);
+    }
+
+}
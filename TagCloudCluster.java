@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A program that generates one tag cloud of many text files by counting them
+ * in several local worker processes, so no single JVM has to hold (and
+ * garbage collect) the counts of all of them.
+ *
+ * The coordinator spreads the text files over the workers, largest first, so
+ * every worker gets about the same number of bytes. Each worker is a separate
+ * JVM running this class with {@value #WORKER} as its first argument; it
+ * counts its files with the same tokenizer as {@code TagCloudGenerator} and
+ * writes the counts to a {@code WordCountShard} file in the shard directory.
+ * The coordinator then merges all shards and renders the top words.
+ *
+ * Shards are kept, and any argument ending in {@value WordCountShard#SUFFIX}
+ * is used as an already counted input, so earlier results are combined
+ * without tokenizing their files again.
+ *
+ * Usage: {@code TagCloudCluster <output HTML file> <word count> <workers>
+ * <shard directory> <input file or shard>...}
+ */
+public final class TagCloudCluster {
+
+    /**
+     * First argument that makes this program a worker: {@code --worker
+     * <shard file> <input file>...}.
+     */
+    public static final String WORKER = "--worker";
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudCluster() {
+        //no code needed here
+    }
+
+    /**
+     * Counts the words of {@code inputs} and writes them to {@code shard}.
+     *
+     * @param shard
+     *            the shard file to write
+     * @param inputs
+     *            the text files to count
+     * @throws IOException
+     *             if a file cannot be read or the shard cannot be written
+     */
+    public static void countShard(Path shard, List<Path> inputs)
+            throws IOException {
+        MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+        WordCountTable table = new WordCountTable();
+        for (Path input : inputs) {
+            try (FileChannel channel = FileChannel.open(input,
+                    StandardOpenOption.READ)) {
+                scanner.scan(channel, 0, channel.size(), table);
+            }
+        }
+        WordCountShard.write(shard, table, TagCloudGenerator.SEPARATORS);
+    }
+
+    /**
+     * Splits {@code inputs} into at most {@code workers} groups of about the
+     * same total size, giving each file, largest first, to the group with
+     * the fewest bytes so far.
+     *
+     * @param inputs
+     *            the text files
+     * @param workers
+     *            the number of groups
+     * @return the non-empty groups
+     * @throws IOException
+     *             if the size of a file cannot be read
+     * @requires workers > 0
+     */
+    public static List<List<Path>> assign(List<Path> inputs, int workers)
+            throws IOException {
+        assert inputs != null : "Violation of: inputs is not null";
+        assert workers > 0 : "Violation of: workers > 0";
+
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path input : inputs) {
+            sizes.put(input, Files.size(input));
+        }
+        List<Path> bySize = new ArrayList<>(inputs);
+        bySize.sort(Comparator.comparing((Path input) -> sizes.get(input))
+                .reversed());
+
+        int groups = Math.min(workers, inputs.size());
+        List<List<Path>> assignment = new ArrayList<>();
+        long[] load = new long[groups];
+        for (int g = 0; g < groups; g++) {
+            assignment.add(new ArrayList<>());
+        }
+        for (Path input : bySize) {
+            int lightest = 0;
+            for (int g = 1; g < groups; g++) {
+                if (load[g] < load[lightest]) {
+                    lightest = g;
+                }
+            }
+            assignment.get(lightest).add(input);
+            load[lightest] += sizes.get(input);
+        }
+        return assignment;
+    }
+
+    /**
+     * Starts a worker process counting {@code inputs} into {@code shard}. The
+     * worker runs on the same Java installation and class path, with the
+     * same default charset and locale, modules added (such as
+     * {@code jdk.incubator.vector}) and {@code tagcloud.*} system properties,
+     * and shares this process's standard output and error. A run report
+     * ({@value PipelineStage#REPORT_PROPERTY}) is written by each worker to a
+     * file of its own, named after the report and the shard.
+     *
+     * @param shard
+     *            the shard file the worker writes
+     * @param inputs
+     *            the text files the worker counts
+     * @return the worker process
+     * @throws IOException
+     *             if the process cannot be started
+     */
+    private static Process startWorker(Path shard, List<Path> inputs)
+            throws IOException {
+        Locale locale = Locale.getDefault();
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        command.add("-Dfile.encoding=" + Charset.defaultCharset().name());
+        command.add("-Duser.language=" + locale.getLanguage());
+        command.add("-Duser.country=" + locale.getCountry());
+        command.add("-Duser.variant=" + locale.getVariant());
+        /*
+         * The JVM reports every --add-modules option in its = form
+         */
+        for (String option : ManagementFactory.getRuntimeMXBean()
+                .getInputArguments()) {
+            if (option.startsWith("--add-modules=")) {
+                command.add(option);
+            }
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("tagcloud.")) {
+                String value = System.getProperty(name);
+                if (name.equals(PipelineStage.REPORT_PROPERTY)) {
+                    String shardName = shard.getFileName().toString();
+                    value += "." + shardName.substring(0, shardName.length()
+                            - WordCountShard.SUFFIX.length());
+                }
+                command.add("-D" + name + "=" + value);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TagCloudCluster.class.getName());
+        command.add(WORKER);
+        command.add(shard.toString());
+        for (Path input : inputs) {
+            command.add(input.toString());
+        }
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Deletes the shards of an unfinished run, so no empty or partial shard
+     * is left to be mistaken for a result.
+     *
+     * @param shards
+     *            the shard files
+     */
+    private static void deleteAll(List<Path> shards) {
+        for (Path shard : shards) {
+            try {
+                Files.deleteIfExists(shard);
+            } catch (IOException e) {
+                System.err.println("Error deleting " + shard);
+            }
+        }
+    }
+
+    /**
+     * Worker main: counts the files named by {@code args[2..]} into the shard
+     * file {@code args[1]}, exiting with status 1 if that fails.
+     *
+     * @param args
+     *            the command line arguments: {@value #WORKER}, shard file,
+     *            input files
+     */
+    private static void work(String[] args) {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+        try {
+            countShard(Paths.get(args[1]), inputs);
+        } catch (IOException e) {
+            System.err.println("Error counting shard " + args[1] + ": " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: output HTML file, number of
+     *            words in the cloud, number of worker processes, shard
+     *            directory, and the input files or shards
+     */
+    public static void main(String[] args) {
+        if (args.length >= 2 && args[0].equals(WORKER)) {
+            work(args);
+            return;
+        }
+        if (args.length < 5) {
+            System.err.println("Usage: TagCloudCluster <output HTML file> "
+                    + "<word count> <workers> <shard directory> "
+                    + "<input file or shard>...");
+            return;
+        }
+
+        int cloudWordAmt;
+        int workers;
+        try {
+            cloudWordAmt = Integer.parseInt(args[1]);
+            workers = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count and workers must be "
+                    + "integers");
+            return;
+        }
+        if (cloudWordAmt <= 0 || workers <= 0) {
+            System.err.println("ERROR: word count and workers must be "
+                    + "positive");
+            return;
+        }
+        Path shardDirectory = Paths.get(args[3]);
+
+        List<Path> shards = new ArrayList<>();
+        List<Path> texts = new ArrayList<>();
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].endsWith(WordCountShard.SUFFIX)) {
+                shards.add(Paths.get(args[i]));
+            } else {
+                texts.add(Paths.get(args[i]));
+            }
+        }
+
+        /*
+         * Start every worker before waiting for any of them
+         */
+        List<Process> processes = new ArrayList<>();
+        List<Path> newShards = new ArrayList<>();
+        try {
+            Files.createDirectories(shardDirectory);
+            for (List<Path> group : assign(texts, workers)) {
+                Path shard = Files.createTempFile(shardDirectory, "shard-",
+                        WordCountShard.SUFFIX);
+                newShards.add(shard);
+                processes.add(startWorker(shard, group));
+            }
+        } catch (IOException e) {
+            System.err.println("Error starting workers: " + e);
+            processes.forEach(Process::destroy);
+            deleteAll(newShards);
+            return;
+        }
+        boolean failed = false;
+        for (Process process : processes) {
+            try {
+                failed |= process.waitFor() != 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                processes.forEach(Process::destroy);
+                deleteAll(newShards);
+                return;
+            }
+        }
+        if (failed) {
+            System.err.println("ERROR: a worker failed, no tag cloud was "
+                    + "generated");
+            deleteAll(newShards);
+            return;
+        }
+        shards.addAll(newShards);
+
+        TopWords topWords;
+        try {
+            topWords = WordCountShard.top(shards,
+                    TagCloudGenerator.SEPARATORS, cloudWordAmt);
+        } catch (IOException e) {
+            System.err.println("Error merging shards: " + e.getMessage());
+            return;
+        }
+        if (topWords.size() == 0) {
+            System.out.println(
+                    "The input files were empty, so no tag cloud could be generated.");
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+        for (int i = 4; i < args.length; i++) {
+            names.add(args[i]);
+        }
+        try {
+            new HtmlRenderer(Charset.defaultCharset()).write(
+                    Paths.get(args[0]), String.join(", ", names),
+                    cloudWordAmt, topWords);
+        } catch (IOException e) {
+            System.err.println("Error opening output file");
+            return;
+        }
+
+        for (Path shard : newShards) {
+            System.out.println("Wrote " + shard);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A program that compares many related corpora (for example one log file per
+ * service or per day) in one run.
+ *
+ * The corpora are the files of a directory or manifest, as for
+ * {@code TagCloudBatch}. They are all counted into one {@code CorpusMatrix},
+ * so each distinct word is stored once for all of them. Two pages are written
+ * per corpus {@code name}: {@code name.html}, its usual tag cloud, and
+ * {@code name.distinctive.html}, the words that set it apart from the other
+ * corpora, sized by their log-likelihood score instead of their count.
+ *
+ * Usage: {@code TagCloudCompare <input directory or manifest>
+ * <output directory> <word count>}
+ */
+public final class TagCloudCompare {
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final double BYTES_PER_MB = 1 << 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudCompare() {
+        //no code needed here
+    }
+
+    /**
+     * Counts every file of {@code files} into its own column of a new matrix.
+     *
+     * @param files
+     *            the corpora
+     * @return the matrix, with column {@code c} counting {@code files.get(c)}
+     * @throws IOException
+     *             if a file cannot be read
+     * @requires |files| > 0
+     */
+    public static CorpusMatrix count(List<Path> files) throws IOException {
+        assert files != null : "Violation of: files is not null";
+
+        MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+        CorpusMatrix matrix = new CorpusMatrix(files.size());
+        for (int c = 0; c < files.size(); c++) {
+            try (FileChannel channel = FileChannel.open(files.get(c),
+                    StandardOpenOption.READ)) {
+                scanner.scan(channel, 0, channel.size(), matrix.column(c));
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input directory or manifest,
+     *            output directory and word count
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: TagCloudCompare <input directory or "
+                    + "manifest> <output directory> <word count>");
+            return;
+        }
+
+        int cloudWordAmt;
+        try {
+            cloudWordAmt = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count must be an integer");
+            return;
+        }
+        if (cloudWordAmt <= 0) {
+            System.err.println("ERROR: word count must be positive");
+            return;
+        }
+
+        List<Path> files;
+        Path outputDir = Paths.get(args[1]);
+        try {
+            files = TagCloudBatch.inputFiles(Paths.get(args[0]));
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            System.err.println("Error reading inputs: " + e);
+            return;
+        }
+        if (files.isEmpty()) {
+            System.err.println("ERROR: no input files");
+            return;
+        }
+
+        CorpusMatrix matrix;
+        try {
+            matrix = count(files);
+        } catch (IOException e) {
+            System.err.println("Error reading input file: " + e);
+            return;
+        }
+
+        HtmlRenderer renderer = new HtmlRenderer(Charset.defaultCharset());
+        for (int c = 0; c < files.size(); c++) {
+            String name = files.get(c).getFileName().toString();
+            if (matrix.tokens(c) == 0) {
+                System.err.println(name + ": empty, no tag cloud generated");
+                continue;
+            }
+            TopWords top = matrix.top(c, cloudWordAmt);
+            TopWords distinctive = matrix.distinctive(c, cloudWordAmt);
+            try {
+                renderer.write(outputDir.resolve(name + ".html"), name,
+                        top.size(), top);
+                if (distinctive.size() > 0) {
+                    renderer.write(
+                            outputDir.resolve(name + ".distinctive.html"),
+                            name + " (distinctive)", distinctive.size(),
+                            distinctive);
+                }
+            } catch (IOException e) {
+                System.err.println(name + ": " + e);
+            }
+        }
+
+        System.out.printf("%d corpora, %d distinct words, %.1f MB of counts%n",
+                matrix.corpora(), matrix.vocabulary(),
+                matrix.estimatedBytes() / BYTES_PER_MB);
+    }
+
+}
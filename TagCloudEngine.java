@@ -0,0 +1,591 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Reusable tag cloud pipeline for programs that embed the generator instead
+ * of running it: built once from a {@link Config}, then shared by any number
+ * of threads, each turning documents into tag clouds.
+ *
+ * The pipeline has three pluggable stages, each created from the
+ * configuration by a factory: a {@link Tokenizer} ({@code WordTokenizer} by
+ * default), a {@code WordCounter} ({@code WordCountTable} by default) and a
+ * {@link Renderer} ({@code HtmlRenderer} by default), optionally with a
+ * {@code WordStemmer} between the tokenizer and the counter. Every thread
+ * gets its own stages the first time it uses the engine, together with a
+ * character buffer for the document, and keeps them: between documents the
+ * counter is cleared and the buffer overwritten, nothing is reallocated.
+ * Once the buffers have grown to the size of the documents, processing one
+ * allocates little more than the strings of its distinct words and the
+ * selected top words. The engine itself is immutable.
+ */
+public final class TagCloudEngine {
+
+    /**
+     * Initial size of each thread's document buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 12;
+
+    /**
+     * The tokenizer stage: splits characters into words.
+     */
+    public interface Tokenizer {
+        /**
+         * Scans {@code text[start, end)} and reports every complete word to
+         * {@code sink}, as {@code WordTokenizer.tokenize} does.
+         *
+         * @param text
+         *            the characters to scan; may be modified
+         * @param start
+         *            index of the first character to scan
+         * @param end
+         *            index just past the last character to scan
+         * @param endOfInput
+         *            whether {@code text[end]} is the end of the input
+         * @param sink
+         *            receiver of the words found
+         * @return the index of the first character that was not consumed
+         */
+        int tokenize(char[] text, int start, int end, boolean endOfInput,
+                WordTokenizer.Sink sink);
+    }
+
+    /**
+     * The renderer stage: writes the tag cloud of the selected words.
+     */
+    public interface Renderer {
+        /**
+         * Writes the tag cloud of {@code words} to {@code out}, as
+         * {@code HtmlRenderer.render} does.
+         *
+         * @param out
+         *            the output channel
+         * @param inputFileName
+         *            the name of the document, as shown in the cloud
+         * @param cloudWordAmt
+         *            the amount of words to be included in the tag cloud
+         * @param words
+         *            the words of the tag cloud
+         * @throws IOException
+         *             if the channel cannot be written
+         */
+        void render(WritableByteChannel out, String inputFileName,
+                int cloudWordAmt, TopWords words) throws IOException;
+    }
+
+    /**
+     * Immutable settings of an engine. Every {@code with} method returns a
+     * new configuration that differs from this one in one setting.
+     */
+    public static final class Config {
+
+        /**
+         * The characters that separate words.
+         */
+        private String separators = TagCloudGenerator.SEPARATORS;
+
+        /**
+         * Whether words are case folded.
+         */
+        private boolean folding = true;
+
+        /**
+         * Whether words are reduced to their stems before being counted.
+         */
+        private boolean stemming;
+
+        /**
+         * Font size of the least frequent words.
+         */
+        private int minFont = HtmlRenderer.MIN_FONT;
+
+        /**
+         * Font size of the most frequent word.
+         */
+        private int maxFont = HtmlRenderer.MAX_FONT;
+
+        /**
+         * Number of words in each tag cloud.
+         */
+        private int words;
+
+        /**
+         * Charset of the output.
+         */
+        private Charset charset = Charset.defaultCharset();
+
+        /**
+         * Factory of the tokenizer stage.
+         */
+        private Function<Config, ? extends Tokenizer> tokenizers =
+                c -> new WordTokenizer(c.separators, c.folding)::tokenize;
+
+        /**
+         * Factory of the counter stage.
+         */
+        private Function<Config, ? extends WordCounter> counters =
+                c -> new WordCountTable();
+
+        /**
+         * Factory of the renderer stage.
+         */
+        private Function<Config, ? extends Renderer> renderers =
+                c -> new HtmlRenderer(c.charset, c.minFont,
+                        c.maxFont)::render;
+
+        /**
+         * Constructor for the defaults: the separators of
+         * {@code TagCloudGenerator}, case folding, the fonts of the
+         * stylesheet, and HTML pages in the default charset.
+         *
+         * @param words
+         *            number of words in each tag cloud
+         * @requires words > 0
+         */
+        public Config(int words) {
+            assert words > 0 : "Violation of: words > 0";
+
+            this.words = words;
+        }
+
+        /**
+         * Returns a copy of this configuration.
+         *
+         * @return the copy
+         */
+        private Config copy() {
+            Config c = new Config(this.words);
+            c.separators = this.separators;
+            c.folding = this.folding;
+            c.stemming = this.stemming;
+            c.minFont = this.minFont;
+            c.maxFont = this.maxFont;
+            c.charset = this.charset;
+            c.tokenizers = this.tokenizers;
+            c.counters = this.counters;
+            c.renderers = this.renderers;
+            return c;
+        }
+
+        /**
+         * Returns the characters that separate words.
+         *
+         * @return the separator characters
+         */
+        public String separators() {
+            return this.separators;
+        }
+
+        /**
+         * Reports whether words are case folded.
+         *
+         * @return true iff words are case folded
+         */
+        public boolean folding() {
+            return this.folding;
+        }
+
+        /**
+         * Reports whether words are reduced to their stems.
+         *
+         * @return true iff words are stemmed
+         */
+        public boolean stemming() {
+            return this.stemming;
+        }
+
+        /**
+         * Returns the font size of the least frequent words.
+         *
+         * @return the smallest font size
+         */
+        public int minFont() {
+            return this.minFont;
+        }
+
+        /**
+         * Returns the font size of the most frequent word.
+         *
+         * @return the largest font size
+         */
+        public int maxFont() {
+            return this.maxFont;
+        }
+
+        /**
+         * Returns the number of words in each tag cloud.
+         *
+         * @return the number of words
+         */
+        public int words() {
+            return this.words;
+        }
+
+        /**
+         * Returns the charset of the output.
+         *
+         * @return the output charset
+         */
+        public Charset charset() {
+            return this.charset;
+        }
+
+        /**
+         * Returns this configuration with other separator characters.
+         *
+         * @param separatorString
+         *            the characters that separate words
+         * @return the new configuration
+         */
+        public Config withSeparators(String separatorString) {
+            assert separatorString != null : "Violation of: separatorString is not null";
+
+            Config c = this.copy();
+            c.separators = separatorString;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with case folding turned on or off.
+         *
+         * @param fold
+         *            whether words are case folded
+         * @return the new configuration
+         */
+        public Config withFolding(boolean fold) {
+            Config c = this.copy();
+            c.folding = fold;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with stemming turned on or off. Each
+         * thread's stemmer keeps its cache of stems from one document to the
+         * next.
+         *
+         * @param stem
+         *            whether words are reduced to their stems
+         * @return the new configuration
+         */
+        public Config withStemming(boolean stem) {
+            Config c = this.copy();
+            c.stemming = stem;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with another font range, within the
+         * classes of the stylesheet.
+         *
+         * @param min
+         *            font size of the least frequent words
+         * @param max
+         *            font size of the most frequent word
+         * @return the new configuration
+         * @requires HtmlRenderer.MIN_FONT <= min <= max <=
+         *           HtmlRenderer.MAX_FONT
+         */
+        public Config withFonts(int min, int max) {
+            assert HtmlRenderer.MIN_FONT <= min && min <= max
+                    && max <= HtmlRenderer.MAX_FONT : "Violation of: MIN_FONT <= min <= max <= MAX_FONT";
+
+            Config c = this.copy();
+            c.minFont = min;
+            c.maxFont = max;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with another number of words per cloud.
+         *
+         * @param k
+         *            number of words in each tag cloud
+         * @return the new configuration
+         * @requires k > 0
+         */
+        public Config withWords(int k) {
+            assert k > 0 : "Violation of: k > 0";
+
+            Config c = this.copy();
+            c.words = k;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with another output charset.
+         *
+         * @param cs
+         *            charset of the output
+         * @return the new configuration
+         */
+        public Config withCharset(Charset cs) {
+            assert cs != null : "Violation of: cs is not null";
+
+            Config c = this.copy();
+            c.charset = cs;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with another tokenizer stage. The
+         * factory is called once per thread.
+         *
+         * @param factory
+         *            creates a tokenizer for this configuration
+         * @return the new configuration
+         */
+        public Config withTokenizer(
+                Function<Config, ? extends Tokenizer> factory) {
+            assert factory != null : "Violation of: factory is not null";
+
+            Config c = this.copy();
+            c.tokenizers = factory;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with another counter stage, for example
+         * {@code c -> new WordTrie()}. The factory is called once per thread.
+         *
+         * @param factory
+         *            creates an empty counter for this configuration
+         * @return the new configuration
+         */
+        public Config withCounter(
+                Function<Config, ? extends WordCounter> factory) {
+            assert factory != null : "Violation of: factory is not null";
+
+            Config c = this.copy();
+            c.counters = factory;
+            return c;
+        }
+
+        /**
+         * Returns this configuration with another renderer stage. The factory
+         * is called once per thread.
+         *
+         * @param factory
+         *            creates a renderer for this configuration
+         * @return the new configuration
+         */
+        public Config withRenderer(
+                Function<Config, ? extends Renderer> factory) {
+            assert factory != null : "Violation of: factory is not null";
+
+            Config c = this.copy();
+            c.renderers = factory;
+            return c;
+        }
+    }
+
+    /**
+     * Per-thread stages and document buffer, reused for every document a
+     * thread processes.
+     */
+    private static final class Worker {
+
+        /**
+         * The thread's tokenizer.
+         */
+        private final Tokenizer tokenizer;
+
+        /**
+         * The thread's counter.
+         */
+        private final WordCounter counter;
+
+        /**
+         * The thread's renderer.
+         */
+        private final Renderer renderer;
+
+        /**
+         * Receiver of the tokenizer's words: the counter, or a stemmer in
+         * front of it.
+         */
+        private final WordTokenizer.Sink sink;
+
+        /**
+         * The document being processed.
+         */
+        private char[] text = new char[BUFFER_SIZE];
+
+        /**
+         * Constructor.
+         *
+         * @param config
+         *            the configuration the stages are created from
+         */
+        Worker(Config config) {
+            this.tokenizer = config.tokenizers.apply(config);
+            this.counter = config.counters.apply(config);
+            this.renderer = config.renderers.apply(config);
+            if (config.stemming) {
+                this.sink = new WordStemmer(this.counter);
+            } else {
+                this.sink = this.counter;
+            }
+        }
+
+        /**
+         * Makes room for {@code length} characters in {@code text}, keeping
+         * the characters already there.
+         *
+         * @param length
+         *            the number of characters needed
+         */
+        void reserve(int length) {
+            if (length > this.text.length) {
+                this.text = Arrays.copyOf(this.text,
+                        Math.max(length, this.text.length * 2));
+            }
+        }
+
+        /**
+         * Counts the words of the first {@code length} characters of
+         * {@code text} and selects the top {@code k}.
+         *
+         * @param length
+         *            the length of the document
+         * @param k
+         *            the number of words to select
+         * @return the top {@code k} words, in alphabetical order
+         */
+        TopWords count(int length, int k) {
+            PipelineStage stage = PipelineStage.start("engineCount");
+            this.counter.clear();
+            this.tokenizer.tokenize(this.text, 0, length, true, this.sink);
+            stage.end(length, this.counter.totalCount(), this.counter.size(),
+                    stage.recording() ? this.counter.estimatedBytes() : 0);
+            return this.counter.top(k);
+        }
+    }
+
+    /**
+     * The configuration.
+     */
+    private final Config config;
+
+    /**
+     * Stages of each thread using this engine.
+     */
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * Constructor.
+     *
+     * @param config
+     *            the configuration
+     */
+    public TagCloudEngine(Config config) {
+        assert config != null : "Violation of: config is not null";
+
+        this.config = config;
+        this.workers = ThreadLocal.withInitial(() -> new Worker(this.config));
+    }
+
+    /**
+     * Returns the configuration of this engine.
+     *
+     * @return the configuration
+     */
+    public Config config() {
+        return this.config;
+    }
+
+    /**
+     * Counts the words of {@code document} and selects the most frequent.
+     *
+     * @param document
+     *            the text
+     * @return the configured number of most frequent words (all of them if
+     *         there are fewer), in alphabetical order
+     */
+    public TopWords top(CharSequence document) {
+        assert document != null : "Violation of: document is not null";
+
+        Worker worker = this.workers.get();
+        int length = document.length();
+        worker.reserve(length);
+        char[] text = worker.text;
+        for (int i = 0; i < length; i++) {
+            text[i] = document.charAt(i);
+        }
+        return worker.count(length, this.config.words);
+    }
+
+    /**
+     * Reads {@code document} to the end, counts its words and selects the
+     * most frequent. The whole document is held in the thread's buffer.
+     *
+     * @param document
+     *            the input
+     * @return the configured number of most frequent words (all of them if
+     *         there are fewer), in alphabetical order
+     * @throws IOException
+     *             if reading {@code document} fails
+     * @updates document
+     * @ensures document.content = <>
+     */
+    public TopWords top(Reader document) throws IOException {
+        assert document != null : "Violation of: document is not null";
+
+        Worker worker = this.workers.get();
+        int length = 0;
+        int n = document.read(worker.text, 0, worker.text.length);
+        while (n != -1) {
+            length += n;
+            if (length == worker.text.length) {
+                worker.reserve(length + 1);
+            }
+            n = document.read(worker.text, length,
+                    worker.text.length - length);
+        }
+        return worker.count(length, this.config.words);
+    }
+
+    /**
+     * Writes the tag cloud of {@code document} to {@code out}.
+     *
+     * @param document
+     *            the text
+     * @param name
+     *            the name of the document, as shown in the cloud
+     * @param out
+     *            the output channel
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    public void render(CharSequence document, String name,
+            WritableByteChannel out) throws IOException {
+        TopWords words = this.top(document);
+        this.workers.get().renderer.render(out, name, this.config.words,
+                words);
+    }
+
+    /**
+     * Reads {@code document} to the end and writes its tag cloud to
+     * {@code out}.
+     *
+     * @param document
+     *            the input
+     * @param name
+     *            the name of the document, as shown in the cloud
+     * @param out
+     *            the output channel
+     * @throws IOException
+     *             if reading {@code document} or writing the channel fails
+     * @updates document
+     * @ensures document.content = <>
+     */
+    public void render(Reader document, String name, WritableByteChannel out)
+            throws IOException {
+        TopWords words = this.top(document);
+        this.workers.get().renderer.render(out, name, this.config.words,
+                words);
+    }
+
+}
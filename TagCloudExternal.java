@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A program that generates the exact tag cloud of a text file whose
+ * vocabulary may not fit in memory, using a {@code SpillingWordCounter}.
+ *
+ * Counts are kept within a memory budget given in megabytes; whatever does not
+ * fit is spilled to run files in a temporary directory (the system default
+ * unless one is given) and merged one partition at a time. The page is the
+ * same as {@code TagCloudGenerator} writes for the same file and word count.
+ *
+ * Usage: {@code TagCloudExternal <input file> <output HTML file> <word count>
+ * <memory budget in MB> [temporary directory]}
+ */
+public final class TagCloudExternal {
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final long BYTES_PER_MB = 1L << 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudExternal() {
+        //no code needed here
+    }
+
+    /**
+     * Counts the words of {@code input} into {@code counter}.
+     *
+     * @param input
+     *            the input file
+     * @param counter
+     *            the spilling counter
+     * @throws IOException
+     *             if the file cannot be read or a run file cannot be written
+     * @updates counter
+     */
+    public static void countWords(Path input, SpillingWordCounter counter)
+            throws IOException {
+        MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+        try (FileChannel channel = FileChannel.open(input,
+                StandardOpenOption.READ)) {
+            scanner.scan(channel, 0, channel.size(), counter);
+        } catch (SpillingWordCounter.SpillException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input file, output file, number
+     *            of words in the cloud, memory budget in megabytes, and
+     *            optionally the directory for the run files
+     */
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Usage: TagCloudExternal <input file> "
+                    + "<output HTML file> <word count> "
+                    + "<memory budget in MB> [temporary directory]");
+            return;
+        }
+
+        int cloudWordAmt;
+        long budget;
+        try {
+            cloudWordAmt = Integer.parseInt(args[2]);
+            budget = Long.parseLong(args[3]) * BYTES_PER_MB;
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count and memory budget must be "
+                    + "integers");
+            return;
+        }
+        if (cloudWordAmt <= 0 || budget <= 0) {
+            System.err.println("ERROR: word count and memory budget must be "
+                    + "positive");
+            return;
+        }
+        Path directory = Paths.get(args.length == 5 ? args[4]
+                : System.getProperty("java.io.tmpdir"));
+
+        try (SpillingWordCounter counter = new SpillingWordCounter(budget,
+                directory)) {
+            try {
+                countWords(Paths.get(args[0]), counter);
+            } catch (IOException e) {
+                System.err.println("Error reading input file");
+                return;
+            }
+            if (counter.totalCount() == 0) {
+                System.out.println(
+                        "The input file was empty, so no tag cloud could be generated.");
+                return;
+            }
+
+            TopWords topWords;
+            try {
+                topWords = counter.top(cloudWordAmt);
+            } catch (IOException e) {
+                System.err.println("Error merging run files");
+                return;
+            }
+            try {
+                new HtmlRenderer(Charset.defaultCharset()).write(
+                        Paths.get(args[1]), args[0], cloudWordAmt, topWords);
+            } catch (IOException e) {
+                System.err.println("Error opening output file");
+                return;
+            }
+
+            System.out.println(counter.totalCount() + " words, "
+                    + counter.distinctWords() + " distinct; "
+                    + counter.spills() + " spills, "
+                    + counter.spilledBytes() + " bytes of runs");
+        } catch (IOException e) {
+            System.err.println("Error deleting run files");
+        }
+    }
+
+}
@@ -0,0 +1,507 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A program that follows a growing text file (or standard input) and keeps a
+ * tag cloud of it up to date, like {@code tail -f}.
+ *
+ * Only newly appended bytes are tokenized; their words are added to a
+ * {@code WordCountTable} whose top words are maintained incrementally by an
+ * {@code IncrementalTopWords}. The output HTML file is re-rendered by an
+ * {@code HtmlRenderer} at most once per interval, or as
+ * soon as a given number of words has been counted since the last render, so
+ * a render costs O(k log k) no matter how large the file or vocabulary is.
+ * Each page is written to a temporary file and moved over the output file, so
+ * readers never see a half-written page.
+ *
+ * A file is read one complete line at a time; a partial last line is counted
+ * once its line terminator has been appended. If the file shrinks (it was
+ * truncated) or is replaced by another file (it was rotated, which is noticed
+ * by its file key, such as its inode), counting starts over from its
+ * beginning. A stream
+ * is read on a thread of its own, so pages are rendered on time even while
+ * no input arrives.
+ *
+ * With {@code -Dtagcloud.halfLife=<seconds>} the cloud shows what is frequent
+ * now rather than since the start: words are counted by a
+ * {@code DecayingWordCounter}, whose scores halve every half-life, and the page
+ * is re-rendered on every interval even when nothing new was counted, as the
+ * scores keep fading.
+ *
+ * Usage: {@code TagCloudFollower <input file or -> <output HTML file>
+ * <word count> [interval seconds] [change threshold]}
+ */
+public final class TagCloudFollower {
+
+    /**
+     * Default number of seconds between renders.
+     */
+    private static final int DEFAULT_INTERVAL = 5;
+
+    /**
+     * Milliseconds to wait between checks for growth of the input file.
+     */
+    private static final long POLL_MILLIS = 200;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * Size of the blocks read from a stream.
+     */
+    private static final int BLOCK_SIZE = 1 << 13;
+
+    /**
+     * Number of blocks read ahead of the tokenizer.
+     */
+    private static final int BLOCKS_AHEAD = 16;
+
+    /**
+     * Reader of the blocks a daemon thread reads from another reader, so the
+     * follower can wait for input with a timeout and render in the meantime.
+     */
+    private static final class PumpedReader extends Reader {
+
+        /**
+         * Block marking the end of the input.
+         */
+        private static final char[] END = new char[0];
+
+        /**
+         * Blocks read but not taken yet.
+         */
+        private final BlockingQueue<char[]> blocks = new ArrayBlockingQueue<>(
+                BLOCKS_AHEAD);
+
+        /**
+         * The error that ended the input, or null.
+         */
+        private volatile IOException failure;
+
+        /**
+         * The block being read, or null if none was taken.
+         */
+        private char[] block;
+
+        /**
+         * Index of the next character of {@code block}.
+         */
+        private int next;
+
+        /**
+         * Constructor; starts reading {@code source}.
+         *
+         * @param source
+         *            the reader to read from
+         */
+        PumpedReader(Reader source) {
+            Thread pump = new Thread(() -> {
+                char[] buffer = new char[BLOCK_SIZE];
+                try {
+                    try {
+                        int n = source.read(buffer);
+                        while (n >= 0) {
+                            if (n > 0) {
+                                this.blocks.put(Arrays.copyOf(buffer, n));
+                            }
+                            n = source.read(buffer);
+                        }
+                    } catch (IOException e) {
+                        this.failure = e;
+                    }
+                    this.blocks.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "tagcloud-input");
+            pump.setDaemon(true);
+            pump.start();
+        }
+
+        /**
+         * Waits up to {@code nanos} nanoseconds for input (or its end).
+         *
+         * @param nanos
+         *            the longest time to wait
+         * @return true iff the next read will not block
+         * @throws InterruptedException
+         *             if the thread is interrupted while waiting
+         */
+        boolean await(long nanos) throws InterruptedException {
+            if (this.block == null) {
+                this.block = this.blocks.poll(nanos, TimeUnit.NANOSECONDS);
+                this.next = 0;
+            }
+            return this.block != null;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            try {
+                this.await(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (this.block == END) {
+                if (this.failure != null) {
+                    throw this.failure;
+                }
+                return -1;
+            }
+            int n = Math.min(len, this.block.length - this.next);
+            System.arraycopy(this.block, this.next, cbuf, off, n);
+            this.next += n;
+            if (this.next == this.block.length) {
+                this.block = null;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            //the daemon thread ends with the input or the program
+        }
+    }
+
+    /**
+     * Name of the input, as shown in the page title.
+     */
+    private final String inputName;
+
+    /**
+     * The output HTML file.
+     */
+    private final Path output;
+
+    /**
+     * Number of words in the tag cloud.
+     */
+    private final int cloudWordAmt;
+
+    /**
+     * Minimum time between renders, in nanoseconds.
+     */
+    private final long intervalNanos;
+
+    /**
+     * Number of counted words that forces a render; 0 to render on the
+     * interval only.
+     */
+    private final long changeThreshold;
+
+    /**
+     * Counts of every word seen so far, or null when counting with decay.
+     */
+    private final WordCountTable table;
+
+    /**
+     * The current top words of {@code table}, or null when counting with
+     * decay.
+     */
+    private final IncrementalTopWords topWords;
+
+    /**
+     * The decayed counts and their top words, or null when counting totals.
+     */
+    private final DecayingWordCounter decaying;
+
+    /**
+     * Sink counting each word into {@code table} and {@code topWords}.
+     */
+    private final WordTokenizer.Sink sink;
+
+    /**
+     * Renderer of the pages.
+     */
+    private final HtmlRenderer renderer = new HtmlRenderer(
+            Charset.defaultCharset());
+
+    /**
+     * Number of words counted since the last render.
+     */
+    private long changes;
+
+    /**
+     * {@code System.nanoTime()} of the last render.
+     */
+    private long lastRender;
+
+    /**
+     * Constructor.
+     *
+     * @param inputName
+     *            name of the input, as shown in the page title
+     * @param output
+     *            the output HTML file
+     * @param cloudWordAmt
+     *            number of words in the tag cloud
+     * @param intervalMillis
+     *            minimum time between renders, in milliseconds
+     * @param changeThreshold
+     *            number of counted words that forces a render, or 0
+     * @param halfLifeSeconds
+     *            half-life of the counts in seconds, or 0 to count totals
+     * @requires cloudWordAmt > 0 and halfLifeSeconds >= 0
+     */
+    public TagCloudFollower(String inputName, Path output, int cloudWordAmt,
+            long intervalMillis, long changeThreshold,
+            double halfLifeSeconds) {
+        assert cloudWordAmt > 0 : "Violation of: cloudWordAmt > 0";
+        assert halfLifeSeconds >= 0 : "Violation of: halfLifeSeconds >= 0";
+
+        this.inputName = inputName;
+        this.output = output;
+        this.cloudWordAmt = cloudWordAmt;
+        this.intervalNanos = intervalMillis * NANOS_PER_MILLI;
+        this.changeThreshold = changeThreshold;
+        this.lastRender = System.nanoTime();
+        if (halfLifeSeconds > 0) {
+            this.table = null;
+            this.topWords = null;
+            this.decaying = new DecayingWordCounter(halfLifeSeconds,
+                    cloudWordAmt, this.lastRender);
+            this.sink = (text, offset, length) -> {
+                /*
+                 * Time each word as it arrives: a read may have blocked for
+                 * long since the previous one
+                 */
+                this.tick();
+                this.decaying.word(text, offset, length);
+                this.changes++;
+            };
+        } else {
+            this.table = new WordCountTable();
+            this.topWords = new IncrementalTopWords(this.table, cloudWordAmt);
+            this.decaying = null;
+            this.sink = (text, offset, length) -> {
+                this.topWords.counted(this.table.add(text, offset, length, 1));
+                this.changes++;
+            };
+        }
+    }
+
+    /**
+     * Moves the clock of the decayed counts to the current time.
+     */
+    private void tick() {
+        if (this.decaying != null) {
+            this.decaying.advanceTo(System.nanoTime());
+        }
+    }
+
+    /**
+     * Forgets every word counted so far.
+     */
+    private void clear() {
+        if (this.decaying != null) {
+            this.decaying.clear();
+        } else {
+            this.table.clear();
+            this.topWords.clear();
+        }
+        this.changes++;
+    }
+
+    /**
+     * Follows {@code input} until the thread is interrupted.
+     *
+     * @param input
+     *            the file to follow
+     * @throws IOException
+     *             if the file cannot be read or the output cannot be written
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for new data
+     */
+    public void followFile(Path input)
+            throws IOException, InterruptedException {
+        MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+        long processed = 0;
+        Object fileKey = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            /*
+             * Reopen the file on every poll, so a rotated file is noticed
+             * even if the new one has already grown past the old offset
+             */
+            try (FileChannel channel = FileChannel.open(input,
+                    StandardOpenOption.READ)) {
+                Object key = Files.readAttributes(input,
+                        BasicFileAttributes.class).fileKey();
+                long size = channel.size();
+                if (size < processed || !Objects.equals(key, fileKey)) {
+                    if (processed > 0) {
+                        this.clear();
+                    }
+                    processed = 0;
+                    fileKey = key;
+                }
+                long end = ParallelWordCounter.lastLineStart(channel,
+                        processed, size);
+                if (end > processed) {
+                    scanner.scan(channel, processed, end, this.sink);
+                    processed = end;
+                }
+            }
+            this.renderIfDue();
+            Thread.sleep(POLL_MILLIS);
+        }
+        throw new InterruptedException();
+    }
+
+    /**
+     * Follows {@code in} until its end, then renders a final page. The input
+     * is read on another thread, so that pages due (decayed ones, or ones of
+     * words counted before the input went quiet) are rendered while a read
+     * blocks.
+     *
+     * @param in
+     *            the input to follow
+     * @throws IOException
+     *             if the input cannot be read or the output cannot be written
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for input
+     */
+    public void followStream(Reader in)
+            throws IOException, InterruptedException {
+        WordTokenizer tokenizer = new WordTokenizer(
+                TagCloudGenerator.SEPARATORS);
+        PumpedReader pumped = new PumpedReader(in);
+        boolean more = true;
+        while (more) {
+            long untilDue = this.intervalNanos
+                    - (System.nanoTime() - this.lastRender);
+            if (pumped.await(
+                    Math.max(untilDue, POLL_MILLIS * NANOS_PER_MILLI))) {
+                more = tokenizer.tokenizeNext(pumped, this.sink);
+            }
+            this.renderIfDue();
+        }
+        this.render();
+    }
+
+    /**
+     * Renders the page if words were counted (or the counts decay) and either
+     * the interval has passed or the change threshold has been reached.
+     *
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private void renderIfDue() throws IOException {
+        if ((this.changes > 0 || this.decaying != null) && (System.nanoTime()
+                - this.lastRender >= this.intervalNanos
+                || (this.changeThreshold > 0
+                        && this.changes >= this.changeThreshold))) {
+            this.render();
+        }
+    }
+
+    /**
+     * Writes the current tag cloud to a temporary file and moves it over the
+     * output file.
+     *
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private void render() throws IOException {
+        Path temp = this.output.resolveSibling(
+                this.output.getFileName() + ".tmp");
+        TopWords top;
+        if (this.decaying != null) {
+            this.tick();
+            top = this.decaying.top();
+        } else {
+            top = this.topWords.result();
+        }
+        this.renderer.write(temp, this.inputName, this.cloudWordAmt, top);
+        try {
+            Files.move(temp, this.output, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, this.output, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.changes = 0;
+        this.lastRender = System.nanoTime();
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input file (or - for standard
+     *            input), output HTML file, word count, and optionally the
+     *            render interval in seconds and the change threshold
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 5) {
+            System.err.println("Usage: TagCloudFollower <input file or -> "
+                    + "<output HTML file> <word count> [interval seconds] "
+                    + "[change threshold]");
+            return;
+        }
+
+        int cloudWordAmt;
+        long interval = DEFAULT_INTERVAL;
+        long threshold = 0;
+        try {
+            cloudWordAmt = Integer.parseInt(args[2]);
+            if (args.length > 3) {
+                interval = Long.parseLong(args[3]);
+            }
+            if (args.length > 4) {
+                threshold = Long.parseLong(args[4]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count, interval and threshold "
+                    + "must be integers");
+            return;
+        }
+        if (cloudWordAmt <= 0 || interval < 0 || threshold < 0) {
+            System.err.println("ERROR: word count must be positive, interval "
+                    + "and threshold must not be negative");
+            return;
+        }
+
+        long halfLife = Long.getLong(DecayingWordCounter.HALF_LIFE_PROPERTY, 0);
+        if (halfLife < 0) {
+            System.err.println("ERROR: half-life must not be negative");
+            return;
+        }
+
+        final long millisPerSecond = 1000;
+        TagCloudFollower follower = new TagCloudFollower(args[0],
+                Paths.get(args[1]), cloudWordAmt, interval * millisPerSecond,
+                threshold, halfLife);
+        try {
+            if (args[0].equals("-")) {
+                follower.followStream(new InputStreamReader(System.in));
+            } else {
+                follower.followFile(Paths.get(args[0]));
+            }
+        } catch (IOException e) {
+            System.err.println("Error following input: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
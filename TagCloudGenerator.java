@@ -1,10 +1,11 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -66,6 +67,11 @@ public final class TagCloudGenerator {
         }
     }
 
+    /**
+     * The characters that separate words in the input files.
+     */
+    public static final String SEPARATORS = " \t\n\r,\"*-.!?[];'`~:/()&=|{}@#$%^_+<>\\";
+
     /**
      * Private members.
      */
@@ -110,7 +116,7 @@ public final class TagCloudGenerator {
          * "Top [cloudWordAmt] words in [inputFileName]"
          */
         html.println("<html><head><title>Top " + cloudWordAmt + " Words in "
-                + inputFileName + "</title>");
+                + HtmlRenderer.escape(inputFileName) + "</title>");
 
         /*
          * Print the CSS link tags necessary for the tag cloud
@@ -127,7 +133,7 @@ public final class TagCloudGenerator {
          * the input file
          */
         html.println("<body><h2>Top " + cloudWordAmt + " words in "
-                + inputFileName + "</h2><hr>");
+                + HtmlRenderer.escape(inputFileName) + "</h2><hr>");
 
     }
 
@@ -198,84 +204,193 @@ public final class TagCloudGenerator {
             BufferedReader file, Set<Character> separators) {
 
         /*
-         * Create return Map that will hold words and word counts
+         * Count the words in a hash table and only sort them once, when the
+         * returned Map is built
          */
-        SortedMap<String, Integer> words = new TreeMap<>();
+        PipelineStage stage = PipelineStage.start("parseWordsInFile");
+        WordTokenizer tokenizer = new WordTokenizer(separators);
+        WordCountTable words = new WordCountTable();
+        countWords(file, tokenizer, words);
+        SortedMap<String, Integer> counts = words.toSortedMap();
+        stage.end(tokenizer.charsRead(), words.totalCount(), words.size(),
+                stage.recording() ? words.estimatedBytes() : 0);
+
+        return counts;
+    }
+
+    /**
+     * Reads the entire input file and returns a {@code WordCountTable} of every
+     * word present in the file and their respective occurrence counts, using
+     * the same definition of "word" as {@code parseWordsInFile}. Unlike
+     * {@code parseWordsInFile}, the words are left unsorted.
+     *
+     * @param file
+     *            the input stream for reading the input file
+     * @param tokenizer
+     *            the tokenizer that splits the file into case folded words
+     * @updates file
+     *
+     * @return a {@code WordCountTable} of each word present in the file and the
+     *         corresponding count of times each one occurs
+     *
+     * @requires file.ready and tokenizer /= null
+     *
+     * @ensures file.content = <> and countWordsInFile = [word -> word count
+     *          table from input file]
+     */
+    public static WordCountTable countWordsInFile(Reader file,
+            WordTokenizer tokenizer) {
+        assert file != null : "Violation of: file is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+
+        PipelineStage stage = PipelineStage.start("countWordsInFile");
+        long charsBefore = tokenizer.charsRead();
+        WordCountTable words = new WordCountTable();
+        countWords(file, tokenizer, words);
+        stage.end(tokenizer.charsRead() - charsBefore, words.totalCount(),
+                words.size(), stage.recording() ? words.estimatedBytes() : 0);
+
+        return words;
+    }
+
+    /**
+     * Reads the entire input file and returns a {@code WordCountTable} of the
+     * Porter stem of every word present in the file (see
+     * {@code WordStemmer}) and their respective occurrence counts, so that
+     * "Run", "Runs" and "Running" are counted together as "Run".
+     *
+     * @param file
+     *            the input stream for reading the input file
+     * @param tokenizer
+     *            the tokenizer that splits the file into case folded words
+     * @updates file
+     *
+     * @return a {@code WordCountTable} of each stem present in the file and the
+     *         corresponding count of times each one occurs
+     *
+     * @requires file.ready and tokenizer /= null
+     *
+     * @ensures file.content = <> and countStemsInFile = [stem -> stem count
+     *          table from input file]
+     */
+    public static WordCountTable countStemsInFile(Reader file,
+            WordTokenizer tokenizer) {
+        assert file != null : "Violation of: file is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+
+        PipelineStage stage = PipelineStage.start("countStemsInFile");
+        long charsBefore = tokenizer.charsRead();
+        WordCountTable stems = new WordCountTable();
+        countWords(file, tokenizer, new WordStemmer(stems));
+        stage.end(tokenizer.charsRead() - charsBefore, stems.totalCount(),
+                stems.size(), stage.recording() ? stems.estimatedBytes() : 0);
+
+        return stems;
+    }
+
+    /**
+     * Reads the entire input file and returns a {@code WordTrie} of every word
+     * present in the file and their respective occurrence counts, using the
+     * same definition of "word" as {@code parseWordsInFile}. The trie keeps
+     * the words in alphabetical order, so {@code WordTrie.top} selects the
+     * words for {@code outputBody} without sorting.
+     *
+     * @param file
+     *            the input stream for reading the input file
+     * @param tokenizer
+     *            the tokenizer that splits the file into case folded words
+     * @updates file
+     *
+     * @return a {@code WordTrie} of each word present in the file and the
+     *         corresponding count of times each one occurs
+     *
+     * @requires file.ready and tokenizer /= null
+     *
+     * @ensures file.content = <> and countWordsInTrie = [word -> word count
+     *          trie from input file]
+     */
+    public static WordTrie countWordsInTrie(Reader file,
+            WordTokenizer tokenizer) {
+        assert file != null : "Violation of: file is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+
+        PipelineStage stage = PipelineStage.start("countWordsInTrie");
+        long charsBefore = tokenizer.charsRead();
+        WordTrie words = new WordTrie();
+        countWords(file, tokenizer, words);
+        stage.end(tokenizer.charsRead() - charsBefore, words.totalCount(),
+                words.size(), stage.recording() ? words.estimatedBytes() : 0);
 
+        return words;
+    }
+
+    /**
+     * Reads the entire input file and returns an {@code NGramCounter} of every
+     * phrase of {@code n} consecutive words in the file and their respective
+     * occurrence counts, using the same definition of "word" as
+     * {@code parseWordsInFile}. Words are counted under {@code int} ids and
+     * phrases under packed {@code long} keys, so no {@code String} is created
+     * per phrase.
+     *
+     * @param file
+     *            the input stream for reading the input file
+     * @param tokenizer
+     *            the tokenizer that splits the file into case folded words
+     * @param n
+     *            the number of words per phrase
+     * @updates file
+     *
+     * @return an {@code NGramCounter} of each phrase present in the file and
+     *         the corresponding count of times each one occurs
+     *
+     * @requires file.ready and tokenizer /= null and n >= 2
+     *
+     * @ensures file.content = <> and countNGramsInFile = [phrase -> phrase
+     *          count table from input file]
+     */
+    public static NGramCounter countNGramsInFile(Reader file,
+            WordTokenizer tokenizer, int n) {
+        assert file != null : "Violation of: file is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+        assert n >= 2 : "Violation of: n >= 2";
+
+        PipelineStage stage = PipelineStage.start("countNGramsInFile");
+        long charsBefore = tokenizer.charsRead();
+        NGramCounter phrases = new NGramCounter(n);
+        countWords(file, tokenizer, phrases);
+        stage.end(tokenizer.charsRead() - charsBefore,
+                phrases.words().totalCount(), phrases.size(),
+                stage.recording() ? phrases.estimatedBytes() : 0);
+
+        return phrases;
+    }
+
+    /**
+     * Counts the words of {@code file} into {@code words}, for
+     * {@code parseWordsInFile}, {@code countWordsInFile},
+     * {@code countStemsInFile}, {@code countWordsInTrie} and
+     * {@code countNGramsInFile}.
+     *
+     * @param file
+     *            the input stream for reading the input file
+     * @param tokenizer
+     *            the tokenizer that splits the file into case folded words
+     * @param words
+     *            the counter the words are added to
+     * @updates file, words
+     */
+    private static void countWords(Reader file, WordTokenizer tokenizer,
+            WordTokenizer.Sink words) {
         /*
-         * Repeatedly read individual lines from input file until end of
-         * filestream has been reached
+         * Scan the whole file through the table-driven tokenizer, which reports
+         * each case folded word as a range of its read buffer; the counter only
+         * creates a String for words it has not seen before
          */
         try {
-            String s = file.readLine();
-            while (s != null) {
-
-                int pos = 0;
-                /*
-                 * Starting at index 0 of line, repeatedly parse line until the
-                 * end of the line has been reached
-                 */
-                while (pos < s.length()) {
-                    /*
-                     * Call nextWordOrSeparator() to find the next word or
-                     * separator string in line
-                     */
-                    String str = nextWordOrSeparator(s, pos, separators);
-                    /*
-                     * Check if the string returned by nextWordOrSeparator is
-                     * not a separator string
-                     */
-                    if (!separators.contains(str.charAt(0))) {
-                        /*
-                         * If str is not a separator string, then it is a word
-                         * and should be in the words Map. First, convert str to
-                         * a proper noun so it looks pretty in the tag cloud
-                         */
-                        str = str.toUpperCase();
-                        char ch = str.charAt(0);
-                        str = ch + str.substring(1).toLowerCase();
-                        /*
-                         * Check if the Map contains the current word stored in
-                         * str
-                         */
-                        if (!words.containsKey(str)) {
-                            /*
-                             * If words does not contain the current word stored
-                             * in str, then add str to the Map, with 1 as its
-                             * initial count value
-                             */
-
-                            words.put(str, 1);
-
-                        } else {
-                            /*
-                             * If words does contain the current word stored in
-                             * str, then add 1 to its count value
-                             */
-
-                            Integer value = words.remove(str);
-                            words.put(str, value + 1);
-
-                        }
-                    }
-                    /*
-                     * The next index checked in line will be the one
-                     * immediately after the end of the current word/separator
-                     * string
-                     */
-                    pos += str.length();
-                }
-
-                /*
-                 * Read next line from file
-                 */
-                s = file.readLine();
-            }
+            tokenizer.tokenize(file, words);
         } catch (IOException e) {
             System.err.println("Error reading file in ParseWords");
         }
-
-        return words;
     }
 
     /**
@@ -318,54 +433,22 @@ public final class TagCloudGenerator {
         assert position < text.length() : "Violation of: position < |text|";
 
         /*
-         * Initialize return String that will contain the next word or separator
-         * substring found in text
+         * Find the end index of the word or separator substring that starts at
+         * position, then copy the substring out of text once
          */
-        String substring = "";
-        /*
-         * Check if the character at the given position index is in the
-         * separator set
-         */
-        if (separators.contains(text.charAt(position))) {
+        boolean inSeparators = separators.contains(text.charAt(position));
+        int end = position + 1;
+        while (end < text.length()
+                && separators.contains(text.charAt(end)) == inSeparators) {
             /*
-             * If the character at the given position is in separators, then it
-             * is considered a "separator" character and is not part of a word.
+             * Keep scanning while the characters stay on the same side (in or
+             * not in separators) as the character at position. Once a
+             * character on the other side is found, the maximal length word or
+             * separator string starting at position has been found.
              */
-            for (int i = position; i < text.length()
-                    && separators.contains(text.charAt(i)); i++) {
-                /*
-                 * Iterate through the rest of the characters in text until
-                 * either the end of the String is reached or until a character
-                 * NOT in separators is found, each time adding the subsequent
-                 * character to the return substring. Once a character is found
-                 * that is not in separators, the loop breaks and the maximal
-                 * length string of separators starting at position has been
-                 * found.
-                 */
-                substring = text.substring(position, i + 1);
-            }
-
-        } else {
-            /*
-             * If the character at the given position is NOT in separators, then
-             * it must be an alphabetical letter character and therefore part of
-             * a word.
-             */
-            for (int i = position; i < text.length()
-                    && !separators.contains(text.charAt(i)); i++) {
-                /*
-                 * Iterate through the rest of the characters in text until
-                 * either the end of the String is reached or until a character
-                 * IN separators is found, each time adding the subsequent
-                 * character to the return substring. Once a character is found
-                 * that IS in separators, the loop breaks and the complete
-                 * "word"--maximal length string of non-separator
-                 * characters--starting at position has been found.
-                 */
-                substring = text.substring(position, i + 1);
-            }
-
+            end++;
         }
+        String substring = text.substring(position, end);
 
         return substring;
 
@@ -387,6 +470,8 @@ public final class TagCloudGenerator {
 
         assert map != null : "Violation of map is not null";
 
+        PipelineStage stage = PipelineStage.start("numericalSort");
+
         //comparator declaration/initialization for sorting values >=
         Comparator<TagCloudGenerator.Pair> ci = new PairGT();
 
@@ -405,6 +490,7 @@ public final class TagCloudGenerator {
         //sort the List based on values, greatest to least
         Collections.sort(entryList, ci);
 
+        stage.end(0, 0, entryList.size(), 0);
         return entryList;
     }
 
@@ -436,6 +522,8 @@ public final class TagCloudGenerator {
         assert sortedCounts != null : "Violation of map not null";
         assert n > 0 : "Violation of number of words > 0";
 
+        PipelineStage stage = PipelineStage.start("alphabeticalSort");
+
         /*
          * remove the first n elements from the list and add them to a new
          * SortedMap so that keys are sorted in lexicographic order
@@ -446,6 +534,7 @@ public final class TagCloudGenerator {
             newMap.put(entry.key, entry.value);
         }
 
+        stage.end(0, 0, newMap.size(), 0);
         return newMap;
     }
 
@@ -466,7 +555,35 @@ public final class TagCloudGenerator {
 
             outputBody(SortedMap<String, Integer> outputWords, PrintWriter out,
                     int maxWordCount) {
+        outputBody(outputWords, Collections.<String, Integer> emptyMap(), out,
+                maxWordCount);
+    }
+
+    /**
+     * Writes the body of the html file to the given output file, for counts
+     * that may be overestimated. The title of every word with an error bound
+     * in {@code errorBounds} shows that bound next to its count.
+     *
+     * @param outputWords
+     *            the alphabetically sorted Map of the words to be output
+     * @param errorBounds
+     *            the most each word's count may exceed its true count; words
+     *            not in this Map have exact counts
+     * @param out
+     *            the output file
+     * @param maxWordCount
+     *            the highest count value present in the SortedMap, used to
+     *            compute the proportional font of the output words
+     * @updates out
+     * @requires out is open and maxWordCount > 0
+     */
+    public static void outputBody(SortedMap<String, Integer> outputWords,
+            Map<String, Integer> errorBounds, PrintWriter out,
+            int maxWordCount) {
         assert outputWords != null : "Violation of map not null";
+        assert errorBounds != null : "Violation of map not null";
+
+        PipelineStage stage = PipelineStage.start("outputBody");
 
         final int minFont = 11;
         final int maxFont = 48;
@@ -489,12 +606,19 @@ public final class TagCloudGenerator {
             int wordCount = pair.getValue();
 
             //get font size proportional to word count
-            int fontSize = minFont
-                    + ((maxFont - minFont) * wordCount) / maxWordCount;
+            int fontSize = (int) (minFont
+                    + ((maxFont - minFont) * (long) wordCount) / maxWordCount);
+
+            //show the error bound of approximate counts in the title
+            String title = "count:" + wordCount;
+            Integer error = errorBounds.get(word);
+            if (error != null && error > 0) {
+                title += " error:" + error;
+            }
 
             //output html
             out.println("<span style=\"cursor:default\" class=\"f" + fontSize
-                    + "\" title=\"count:" + wordCount + "\">" + word
+                    + "\" title=\"" + title + "\">" + HtmlRenderer.escape(word)
                     + "</span>");
 
         }
@@ -503,6 +627,35 @@ public final class TagCloudGenerator {
         out.println("</p>");
         out.println("</div>");
 
+        stage.end(0, 0, outputWords.size(), 0);
+    }
+
+    /**
+     * Writes a complete tag cloud page for {@code words} to the output HTML
+     * file: the opening tags from {@code outputHeader}, the body from
+     * {@code outputBody} and the closing tags.
+     *
+     * @param html
+     *            the output stream for writing to the output file
+     * @param inputFileName
+     *            the name of the input file given by the user
+     * @param cloudWordAmt
+     *            the amount of words to be included in the tag cloud
+     * @param words
+     *            the words of the tag cloud, in alphabetical order
+     * @updates html
+     *
+     * @requires html.is_open and inputFileName /= null
+     * @ensures html.content = [the complete HTML page of the tag cloud]
+     */
+    public static void outputTagCloud(PrintWriter html, String inputFileName,
+            int cloudWordAmt, TopWords words) {
+        assert words != null : "Violation of: words is not null";
+
+        outputHeader(html, inputFileName, cloudWordAmt);
+        outputBody(words.toSortedMap(), html, Math.max(words.maxCount(), 1));
+        html.println("</body>");
+        html.println("</html>");
     }
 
     /**
@@ -519,12 +672,13 @@ public final class TagCloudGenerator {
         BufferedReader in = new BufferedReader(
                 new InputStreamReader(System.in));
 
-        final String separatorString = " \t\n\r,\"*-.!?[];'`~:/()&=|{}@#$%^_+<>\\";
+        final String separatorString = SEPARATORS;
 
         /*
-         * Generate Set containing all the characters in separatorString
+         * Generate the tokenizer whose lookup table holds all the characters in
+         * separatorString
          */
-        Set<Character> separatorSet = generateSeparatorSet(separatorString);
+        WordTokenizer tokenizer = new WordTokenizer(separatorString);
 
         /*
          * Prompt user to enter name of input file
@@ -550,14 +704,39 @@ public final class TagCloudGenerator {
         }
 
         /*
-         * Parse the input file to generate a Map containing words and counts
-         * from the file
+         * Parse the input file to generate a table containing words and counts
+         * from the file. If the file's charset lets it be split at line
+         * boundaries, its parts are counted in parallel on all cores. With
+         * -Dtagcloud.counter=trie the words are counted in a trie instead,
+         * which keeps them in alphabetical order, with -Dtagcloud.ngram=n
+         * (n >= 2) phrases of n consecutive words are counted instead of
+         * single words, and with -Dtagcloud.stem=true the Porter stems of the
+         * words are counted instead.
          */
-        SortedMap<String, Integer> wordCounts = parseWordsInFile(file,
-                separatorSet);
+        WordCounter wordCounts;
+        int ngram = Integer.getInteger(NGramCounter.NGRAM_PROPERTY, 1);
+        if (ngram >= 2) {
+            wordCounts = countNGramsInFile(file, tokenizer, ngram);
+        } else if (Boolean.getBoolean(WordStemmer.STEM_PROPERTY)) {
+            wordCounts = countStemsInFile(file, tokenizer);
+        } else if ("trie"
+                .equals(System.getProperty(WordCounter.COUNTER_PROPERTY))) {
+            wordCounts = countWordsInTrie(file, tokenizer);
+        } else if (ParallelWordCounter
+                .isSplittable(Charset.defaultCharset())) {
+            try {
+                wordCounts = new ParallelWordCounter(separatorString)
+                        .count(Paths.get(inputFile));
+            } catch (IOException e) {
+                System.err.println("Error reading file in ParseWords");
+                wordCounts = new WordCountTable();
+            }
+        } else {
+            wordCounts = countWordsInFile(file, tokenizer);
+        }
 
         /*
-         * Check if the newly returned map is empty before running the rest of
+         * Check if the newly returned table is empty before running the rest of
          * the program, because since the user must input a positive integer for
          * the number of words in the tag cloud, a tag cloud cannot be generated
          * for a file with 0 words.
@@ -566,8 +745,8 @@ public final class TagCloudGenerator {
 
             /*
              * Count the amount of unique words in the file by returning the
-             * amount of pairs in the Map, so that user input can be checked for
-             * validity
+             * amount of pairs in the table, so that user input can be checked
+             * for validity
              */
             int uniqueWordsAmt = wordCounts.size();
 
@@ -620,50 +799,45 @@ public final class TagCloudGenerator {
              */
             System.out.println("Enter the name of an output HTML file: ");
 
-            /*
-             * Open output stream to write to the entered filename
-             */
-            PrintWriter html;
+            String outputFile;
             try {
-                html = new PrintWriter(
-                        new BufferedWriter(new FileWriter(in.readLine())));
+                outputFile = in.readLine();
             } catch (IOException e) {
-                System.err.println("Error opening output file");
+                System.err.println("Error reading keyboard input");
                 return;
             }
             /*
-             * Get a List of the Map entries sorted by values in decreasing
-             * order
-             */
-            List<Pair> sortedCounts = numericalSort(wordCounts);
-            /*
-             * Get the highest word count from the List (to pass to outputBody)
-             */
-            Integer maxWordCount = sortedCounts.get(0).value;
-
-            SortedMap<String, Integer> outputWords = alphabeticalSort(
-                    sortedCounts, amountToInt);
-            /*
-             * Output the HTML header and body to the output file
-             */
-            outputHeader(html, inputFile, amountToInt);
-            outputBody(outputWords, html, maxWordCount);
-
-            /*
-             * Output closing HTML tags to the output file
+             * Select the amountToInt most frequent words in one pass over the
+             * counts, without sorting the whole vocabulary; they come back in
+             * alphabetical order together with the highest word count (to
+             * pass to outputBody)
              */
-            html.println("</body>");
-            html.println("</html>");
-
+            TopWords topWords = wordCounts.top(amountToInt);
             /*
-             * Close output file stream
+             * Output the HTML header, body and closing tags to the output file,
+             * rendered straight into bytes; an output file ending in .svg or
+             * .json gets the words laid out on a canvas instead
              */
-
-            html.close();
+            try {
+                if (outputFile.endsWith(".svg")) {
+                    CloudLayout.of(topWords).writeSvg(Paths.get(outputFile),
+                            inputFile);
+                } else if (outputFile.endsWith(".json")) {
+                    CloudLayout.of(topWords).writeJson(Paths.get(outputFile),
+                            inputFile);
+                } else {
+                    new HtmlRenderer(Charset.defaultCharset()).write(
+                            Paths.get(outputFile), inputFile, amountToInt,
+                            topWords);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing output file");
+                return;
+            }
 
         } else {
             /*
-             * if wordCounts Map was empty, output error message
+             * if wordCounts table was empty, output error message
              */
             System.out.println(
                     "The input file was empty, so no tag cloud could be generated.");
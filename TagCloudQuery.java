@@ -0,0 +1,152 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A program that counts a text file once and then answers any number of
+ * queries about its words from standard input, writing a tag cloud page for
+ * each, so trying another cloud size does not mean reading the file again.
+ *
+ * The counts are kept in a {@code WordQueryIndex}. Each line of input is one
+ * query:
+ * <ul>
+ * <li>{@code top <N> <output HTML file>}: the N most frequent words</li>
+ * <li>{@code min <count> <output HTML file>}: the words occurring at least
+ * count times</li>
+ * <li>{@code prefix <prefix> <output HTML file>}: the words starting with
+ * prefix (case is ignored)</li>
+ * <li>{@code quit}, or the end of the input, ends the session</li>
+ * </ul>
+ *
+ * Usage: {@code TagCloudQuery <input file>}
+ */
+public final class TagCloudQuery {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudQuery() {
+        //no code needed here
+    }
+
+    /**
+     * Counts the words of {@code input} and indexes them.
+     *
+     * @param input
+     *            the input file
+     * @return the index of the file's word counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static WordQueryIndex index(Path input) throws IOException {
+        MappedWordScanner scanner = new MappedWordScanner(
+                new WordTokenizer(TagCloudGenerator.SEPARATORS),
+                Charset.defaultCharset());
+        WordCountTable table = new WordCountTable();
+        try (FileChannel channel = FileChannel.open(input,
+                StandardOpenOption.READ)) {
+            scanner.scan(channel, 0, channel.size(), table);
+        }
+        return new WordQueryIndex(table);
+    }
+
+    /**
+     * Answers one query, writing its page.
+     *
+     * @param index
+     *            the word counts
+     * @param inputFileName
+     *            the name of the input file, as shown in the page
+     * @param query
+     *            the words of the query line
+     * @param renderer
+     *            the page renderer
+     * @return a message describing the outcome
+     */
+    private static String answer(WordQueryIndex index, String inputFileName,
+            String[] query, HtmlRenderer renderer) {
+        if (query.length != 3) {
+            return "ERROR: expected top <N>, min <count> or prefix <prefix>, "
+                    + "followed by the output HTML file";
+        }
+        TopWords words;
+        try {
+            switch (query[0]) {
+                case "top":
+                    int n = Integer.parseInt(query[1]);
+                    if (n <= 0) {
+                        return "ERROR: N must be positive";
+                    }
+                    words = index.top(n);
+                    break;
+                case "min":
+                    words = index.atLeast(Integer.parseInt(query[1]));
+                    break;
+                case "prefix":
+                    words = index.withPrefix(WordTokenizer.foldCase(query[1]));
+                    break;
+                default:
+                    return "ERROR: unknown query " + query[0];
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR: " + query[1] + " is not an integer";
+        }
+        if (words.size() == 0) {
+            return "No words match, no tag cloud generated";
+        }
+        try {
+            renderer.write(Paths.get(query[2]), inputFileName, words.size(),
+                    words);
+        } catch (IOException e) {
+            return "Error writing output file: " + e.getMessage();
+        }
+        return words.size() + " words written to " + query[2];
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: TagCloudQuery <input file>");
+            return;
+        }
+
+        WordQueryIndex index;
+        try {
+            index = index(Paths.get(args[0]));
+        } catch (IOException e) {
+            System.err.println("Error reading input file");
+            return;
+        }
+        System.out.println(index.totalCount() + " words, " + index.size()
+                + " distinct. Queries: top <N> <file>, min <count> <file>, "
+                + "prefix <prefix> <file>, quit");
+
+        HtmlRenderer renderer = new HtmlRenderer(Charset.defaultCharset());
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in));
+        try {
+            String line = in.readLine();
+            while (line != null && !line.trim().equals("quit")) {
+                String query = line.trim();
+                if (!query.isEmpty()) {
+                    System.out.println(answer(index, args[0],
+                            query.split("\\s+"), renderer));
+                }
+                line = in.readLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading keyboard input");
+        }
+    }
+
+}
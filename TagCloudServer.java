@@ -0,0 +1,330 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A program that serves tag clouds over HTTP, so a page can be requested
+ * without starting a JVM and re-reading the input every time.
+ *
+ * {@code GET /cloud?file=<path>&n=<N>} returns the tag cloud of the top N
+ * words of {@code <path>}, a file under the root directory given on the
+ * command line. Both the word counts of a file, as an immutable
+ * {@code WordQueryIndex} that every request thread reads without locking,
+ * and the rendered pages are kept in {@code LruCache}s bounded by a memory
+ * budget; a page for a new N only takes the first N words of the index.
+ * Entries are keyed by the file's real path, size and modification time, so
+ * a file that changes is counted again; concurrent requests for the same
+ * file share one count.
+ *
+ * Usage: {@code TagCloudServer <root directory> [port] [cache MB]
+ * [threads]}
+ */
+public final class TagCloudServer {
+
+    /**
+     * Default port.
+     */
+    private static final int DEFAULT_PORT = 8080;
+
+    /**
+     * Default memory budget of the caches, in megabytes.
+     */
+    private static final int DEFAULT_CACHE_MB = 256;
+
+    /**
+     * Fraction (in quarters) of the budget given to count indexes; rendered
+     * pages get the rest.
+     */
+    private static final int TABLE_QUARTERS = 3;
+
+    /**
+     * HTTP status: OK.
+     */
+    private static final int OK = 200;
+
+    /**
+     * HTTP status: bad request.
+     */
+    private static final int BAD_REQUEST = 400;
+
+    /**
+     * HTTP status: not found.
+     */
+    private static final int NOT_FOUND = 404;
+
+    /**
+     * HTTP status: method not allowed.
+     */
+    private static final int BAD_METHOD = 405;
+
+    /**
+     * HTTP status: internal server error.
+     */
+    private static final int SERVER_ERROR = 500;
+
+    /**
+     * Real path of the directory files are served from.
+     */
+    private final Path root;
+
+    /**
+     * Counter used for every file.
+     */
+    private final ParallelWordCounter counter;
+
+    /**
+     * Word counts of recently requested files.
+     */
+    private final LruCache<String, WordQueryIndex> indexes;
+
+    /**
+     * Recently rendered pages.
+     */
+    private final LruCache<String, byte[]> pages;
+
+    /**
+     * Page renderer of each request thread.
+     */
+    private final ThreadLocal<HtmlRenderer> renderers = ThreadLocal
+            .withInitial(() -> new HtmlRenderer(StandardCharsets.UTF_8));
+
+    /**
+     * Constructor.
+     *
+     * @param root
+     *            the directory files are served from
+     * @param cacheBytes
+     *            memory budget of the caches, in bytes
+     * @throws IOException
+     *             if {@code root} does not exist
+     * @requires cacheBytes > 0
+     */
+    public TagCloudServer(Path root, long cacheBytes) throws IOException {
+        assert cacheBytes > 0 : "Violation of: cacheBytes > 0";
+
+        final int quarters = 4;
+        this.root = root.toRealPath();
+        this.counter = new ParallelWordCounter(TagCloudGenerator.SEPARATORS);
+        long indexBytes = cacheBytes / quarters * TABLE_QUARTERS;
+        this.indexes = new LruCache<>(indexBytes,
+                WordQueryIndex::estimatedBytes);
+        this.pages = new LruCache<>(cacheBytes - indexBytes,
+                page -> page.length);
+    }
+
+    /**
+     * Returns the tag cloud page of the top {@code n} words of
+     * {@code fileName}, counting and rendering it if it is not cached.
+     *
+     * @param fileName
+     *            path of the input file, relative to the root directory
+     * @param n
+     *            number of words in the tag cloud
+     * @return the page, encoded in UTF-8, or null if there is no such file
+     *         under the root directory or {@code fileName} is not a valid
+     *         path
+     * @throws Exception
+     *             if the file cannot be read
+     * @requires n > 0
+     */
+    public byte[] page(String fileName, int n) throws Exception {
+        Path file;
+        BasicFileAttributes attrs;
+        try {
+            file = this.root.resolve(fileName).toRealPath();
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException | InvalidPathException e) {
+            return null;
+        }
+        if (!file.startsWith(this.root) || !attrs.isRegularFile()) {
+            return null;
+        }
+
+        String key = file + "|" + attrs.size() + "|"
+                + attrs.lastModifiedTime().toMillis();
+        return this.pages.get(key + "|" + n, () -> {
+            WordQueryIndex index = this.indexes.get(key,
+                    () -> new WordQueryIndex(this.counter.count(file)));
+            TopWords topWords = index.top(n);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            this.renderers.get().render(Channels.newChannel(bytes), fileName,
+                    n, topWords);
+            return bytes.toByteArray();
+        });
+    }
+
+    /**
+     * Handles one request to {@code /cloud}.
+     *
+     * @param exchange
+     *            the request and its response
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, BAD_METHOD, "Only GET is supported");
+                return;
+            }
+            Map<String, String> query = parseQuery(
+                    exchange.getRequestURI().getRawQuery());
+            String fileName = query.get("file");
+            int n;
+            try {
+                n = Integer.parseInt(query.getOrDefault("n", ""));
+            } catch (NumberFormatException e) {
+                n = 0;
+            }
+            if (fileName == null || n <= 0) {
+                send(exchange, BAD_REQUEST,
+                        "Usage: /cloud?file=<path>&n=<positive word count>");
+                return;
+            }
+
+            byte[] page;
+            try {
+                page = this.page(fileName, n);
+            } catch (Exception e) {
+                /*
+                 * The details (exception, server paths) are for the log, not
+                 * the client
+                 */
+                System.err.println("Error serving " + fileName + ": " + e);
+                send(exchange, SERVER_ERROR, "Error reading file");
+                return;
+            }
+            if (page == null) {
+                send(exchange, NOT_FOUND, "No such file: " + fileName);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(OK, page.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(page);
+            }
+        }
+    }
+
+    /**
+     * Sends a plain text response.
+     *
+     * @param exchange
+     *            the request and its response
+     * @param status
+     *            the HTTP status code
+     * @param message
+     *            the response body
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status,
+            String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Decodes the parameters of a URL query string.
+     *
+     * @param rawQuery
+     *            the query, still URL-encoded, or null
+     * @return a map from each parameter name to its (last) value
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq > 0) {
+                    params.put(
+                            URLDecoder.decode(param.substring(0, eq),
+                                    StandardCharsets.UTF_8),
+                            URLDecoder.decode(param.substring(eq + 1),
+                                    StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: root directory, and optionally
+     *            the port, the cache budget in megabytes and the number of
+     *            request threads
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: TagCloudServer <root directory> [port] "
+                    + "[cache MB] [threads]");
+            return;
+        }
+
+        int port = DEFAULT_PORT;
+        int cacheMb = DEFAULT_CACHE_MB;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (args.length > 1) {
+                port = Integer.parseInt(args[1]);
+            }
+            if (args.length > 2) {
+                cacheMb = Integer.parseInt(args[2]);
+            }
+            if (args.length > 3) {
+                threads = Integer.parseInt(args[3]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: port, cache MB and threads must be "
+                    + "integers");
+            return;
+        }
+        if (port < 0 || cacheMb <= 0 || threads <= 0) {
+            System.err.println("ERROR: cache MB and threads must be positive");
+            return;
+        }
+
+        final long bytesPerMb = 1 << 20;
+        HttpServer server;
+        try {
+            TagCloudServer clouds = new TagCloudServer(Paths.get(args[0]),
+                    cacheMb * bytesPerMb);
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/cloud", clouds::handle);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        server.setExecutor(pool);
+        server.start();
+        System.out.println("Serving tag clouds of " + args[0] + " on port "
+                + server.getAddress().getPort());
+    }
+
+}
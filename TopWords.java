@@ -0,0 +1,338 @@
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The {@code k} most frequent words of a count table, in alphabetical order,
+ * as rendered by {@code TagCloudGenerator.outputBody}.
+ *
+ * Words are ranked by decreasing count, and words with equal counts by
+ * increasing alphabetical order, which is the order
+ * {@code numericalSort}/{@code alphabeticalSort} pick them in. Selection
+ * streams over the counts once with a size-{@code k} min-heap kept in plain
+ * arrays, so it takes O(V log k) time and O(k) extra memory for a vocabulary
+ * of V words.
+ */
+public final class TopWords {
+
+    /**
+     * Bounded min-heap that keeps the best {@code k} (word, count) pairs
+     * offered to it. The root is the worst pair kept, so a new pair only has
+     * to be compared with the root.
+     */
+    public static final class Selector {
+
+        /**
+         * Maximum number of pairs kept.
+         */
+        private final int k;
+
+        /**
+         * Heap-ordered words.
+         */
+        private final String[] heapWords;
+
+        /**
+         * Heap-ordered counts, parallel to {@code heapWords}.
+         */
+        private final int[] heapCounts;
+
+        /**
+         * Number of pairs in the heap.
+         */
+        private int size;
+
+        /**
+         * Constructor.
+         *
+         * @param k
+         *            the number of words to select
+         * @requires k > 0
+         */
+        public Selector(int k) {
+            assert k > 0 : "Violation of: k > 0";
+
+            this.k = k;
+            this.heapWords = new String[k];
+            this.heapCounts = new int[k];
+        }
+
+        /**
+         * Offers a word and its count to the selector.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            the count of the word
+         * @updates this
+         * @requires [word has not been offered before]
+         */
+        public void offer(String word, int count) {
+            assert word != null : "Violation of: word is not null";
+
+            if (this.size < this.k) {
+                this.heapWords[this.size] = word;
+                this.heapCounts[this.size] = count;
+                this.siftUp(this.size);
+                this.size++;
+            } else if (count > this.heapCounts[0]
+                    || (count == this.heapCounts[0]
+                            && word.compareTo(this.heapWords[0]) < 0)) {
+                this.heapWords[0] = word;
+                this.heapCounts[0] = count;
+                this.siftDown(0);
+            }
+        }
+
+        /**
+         * Returns the smallest count a word must beat to be kept once the
+         * selector is full, or 0 while it is not.
+         *
+         * @return the count of the worst pair kept
+         */
+        public int threshold() {
+            int min = 0;
+            if (this.size == this.k) {
+                min = this.heapCounts[0];
+            }
+            return min;
+        }
+
+        /**
+         * Reports whether pair {@code i} ranks below pair {@code j}.
+         *
+         * @param i
+         *            heap index of the first pair
+         * @param j
+         *            heap index of the second pair
+         * @return true iff pair {@code i} is worse than pair {@code j}
+         */
+        private boolean worse(int i, int j) {
+            int ci = this.heapCounts[i];
+            int cj = this.heapCounts[j];
+            return ci < cj || (ci == cj
+                    && this.heapWords[i].compareTo(this.heapWords[j]) > 0);
+        }
+
+        /**
+         * Swaps heap entries {@code i} and {@code j}.
+         *
+         * @param i
+         *            heap index of the first pair
+         * @param j
+         *            heap index of the second pair
+         */
+        private void swap(int i, int j) {
+            String w = this.heapWords[i];
+            this.heapWords[i] = this.heapWords[j];
+            this.heapWords[j] = w;
+            int c = this.heapCounts[i];
+            this.heapCounts[i] = this.heapCounts[j];
+            this.heapCounts[j] = c;
+        }
+
+        /**
+         * Restores the heap property from entry {@code i} towards the root.
+         *
+         * @param i
+         *            heap index of the entry to move up
+         */
+        private void siftUp(int i) {
+            int child = i;
+            while (child > 0) {
+                int parent = (child - 1) / 2;
+                if (!this.worse(child, parent)) {
+                    return;
+                }
+                this.swap(child, parent);
+                child = parent;
+            }
+        }
+
+        /**
+         * Restores the heap property from entry {@code i} towards the leaves.
+         *
+         * @param i
+         *            heap index of the entry to move down
+         */
+        private void siftDown(int i) {
+            int parent = i;
+            int child = 2 * parent + 1;
+            while (child < this.size) {
+                if (child + 1 < this.size && this.worse(child + 1, child)) {
+                    child++;
+                }
+                if (!this.worse(child, parent)) {
+                    return;
+                }
+                this.swap(child, parent);
+                parent = child;
+                child = 2 * parent + 1;
+            }
+        }
+
+        /**
+         * Returns the pairs kept so far, in alphabetical order. The selector is
+         * not changed.
+         *
+         * @return the selected words
+         */
+        public TopWords result() {
+            String[] words = new String[this.size];
+            int[] counts = new int[this.size];
+            System.arraycopy(this.heapWords, 0, words, 0, this.size);
+            System.arraycopy(this.heapCounts, 0, counts, 0, this.size);
+            sortAlphabetically(words, counts);
+            return new TopWords(words, counts);
+        }
+    }
+
+    /**
+     * Selected words, in alphabetical order.
+     */
+    private final String[] words;
+
+    /**
+     * Counts of the selected words, parallel to {@code words}.
+     */
+    private final int[] counts;
+
+    /**
+     * Highest count among the selected words.
+     */
+    private final int maxCount;
+
+    /**
+     * Constructor.
+     *
+     * @param words
+     *            the selected words, in alphabetical order
+     * @param counts
+     *            the counts of the selected words
+     */
+    TopWords(String[] words, int[] counts) {
+        this.words = words;
+        this.counts = counts;
+        int max = 0;
+        for (int c : counts) {
+            max = Math.max(max, c);
+        }
+        this.maxCount = max;
+    }
+
+    /**
+     * Selects the {@code k} most frequent words of {@code table}.
+     *
+     * @param table
+     *            the word counts
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words (all of them if there are fewer)
+     * @requires k > 0
+     */
+    public static TopWords select(WordCountTable table, int k) {
+        assert table != null : "Violation of: table is not null";
+        assert k > 0 : "Violation of: k > 0";
+
+        PipelineStage stage = PipelineStage.start("selectTopWords");
+        Selector selector = new Selector(
+                Math.min(k, Math.max(table.size(), 1)));
+        for (int id = 0; id < table.size(); id++) {
+            int count = table.count(id);
+            /*
+             * Cheap rejection on the count alone, before touching the word
+             */
+            if (count >= selector.threshold()) {
+                selector.offer(table.word(id), count);
+            }
+        }
+        TopWords top = selector.result();
+        stage.end(0, 0, table.size(), 0);
+        return top;
+    }
+
+    /**
+     * Sorts {@code words} alphabetically, moving the matching counts along
+     * with them.
+     *
+     * @param words
+     *            the words to sort
+     * @param counts
+     *            the counts parallel to {@code words}
+     * @updates words, counts
+     */
+    private static void sortAlphabetically(String[] words, int[] counts) {
+        Integer[] order = new Integer[words.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> words[a].compareTo(words[b]));
+        String[] sortedWords = new String[order.length];
+        int[] sortedCounts = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedWords[i] = words[order[i]];
+            sortedCounts[i] = counts[order[i]];
+        }
+        System.arraycopy(sortedWords, 0, words, 0, order.length);
+        System.arraycopy(sortedCounts, 0, counts, 0, order.length);
+    }
+
+    /**
+     * Returns the number of selected words.
+     *
+     * @return the number of selected words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the {@code i}-th selected word in alphabetical order.
+     *
+     * @param i
+     *            the position of the word
+     * @return the word
+     * @requires 0 <= i < size()
+     */
+    public String word(int i) {
+        return this.words[i];
+    }
+
+    /**
+     * Returns the count of the {@code i}-th selected word.
+     *
+     * @param i
+     *            the position of the word
+     * @return the count of the word
+     * @requires 0 <= i < size()
+     */
+    public int count(int i) {
+        return this.counts[i];
+    }
+
+    /**
+     * Returns the highest count among the selected words, which is also the
+     * highest count in the whole table. This is the {@code maxWordCount} that
+     * {@code outputBody} scales font sizes by.
+     *
+     * @return the highest count, or 0 if nothing was selected
+     */
+    public int maxCount() {
+        return this.maxCount;
+    }
+
+    /**
+     * Returns the selected words and counts as a {@code SortedMap}, in the
+     * form {@code alphabeticalSort} returns them.
+     *
+     * @return a new map from each selected word to its count
+     */
+    public SortedMap<String, Integer> toSortedMap() {
+        SortedMap<String, Integer> map = new TreeMap<>();
+        for (int i = 0; i < this.words.length; i++) {
+            map.put(this.words[i], this.counts[i]);
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,234 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD scanner of ASCII text for {@code MappedWordScanner}, using the
+ * incubating Vector API ({@code jdk.incubator.vector}); it is only loaded when
+ * that module is present, so the JVM must be started with
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * Each step loads {@link #LANES} bytes (32 or 64, whatever the CPU prefers)
+ * and classifies all of them at once: a byte {@code b} is a separator iff
+ * {@code low[b & 0xF] & high[b >> 4]} is not zero, two table lookups done
+ * with lane shuffles. The classification becomes a bit mask in a
+ * {@code long}, in which words are runs of one bits; their starts and ends
+ * are found with bit operations. Every ASCII letter is turned to lower case
+ * in the vector registers, and each word's bytes are copied out once, with
+ * its first letter turned back to upper case.
+ *
+ * {@code VectorMask.toLong} is not an intrinsic before JDK 18, so the mask is
+ * packed into bits arithmetically instead: with one 0 or 1 byte per lane,
+ * multiplying each 8-byte group by {@code 0x0102040810204080} gathers its 8
+ * flags into the top byte, and the top bytes of all groups are shifted into
+ * place and OR-ed together.
+ *
+ * A step with a non-ASCII byte stops the scan, and the scalar code of
+ * {@code MappedWordScanner} takes over from the last word boundary, so the
+ * words found are exactly those of the scalar path.
+ */
+final class VectorWordScanner implements MappedWordScanner.AsciiScanner {
+
+    /**
+     * Vector shape used: the widest the CPU prefers.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /**
+     * Number of bytes classified per step.
+     */
+    static final int LANES = SPECIES.length();
+
+    /**
+     * Fewest lanes worth vectorizing for.
+     */
+    static final int MIN_LANES = 32;
+
+    /**
+     * Number of values of a nibble.
+     */
+    private static final int NIBBLES = 16;
+
+    /**
+     * Bits per nibble.
+     */
+    private static final int NIBBLE_BITS = 4;
+
+    /**
+     * The same shape, as 8-byte lanes.
+     */
+    private static final VectorSpecies<Long> LONGS = SPECIES
+            .withLanes(long.class);
+
+    /**
+     * Multiplier gathering the low bits of 8 bytes into the top byte.
+     */
+    private static final long GATHER = 0x0102040810204080L;
+
+    /**
+     * Shift that brings the top byte of a long down to the bottom.
+     */
+    private static final int TOP_BYTE = Long.SIZE - Byte.SIZE;
+
+    /**
+     * Lane {@code k} is {@code 8 * k}: where the flags of the {@code k}th
+     * 8-byte group go in the mask.
+     */
+    private static final LongVector GROUP_SHIFTS = LongVector.zero(LONGS)
+            .addIndex(Byte.SIZE);
+
+    /**
+     * Distance between an ASCII lower case letter and its upper case form.
+     */
+    private static final byte CASE_OFFSET = 'a' - 'A';
+
+    /**
+     * Lane {@code j} has bit {@code h} set iff character
+     * {@code h * 16 + (j & 0xF)} is a separator.
+     */
+    private final ByteVector lowTable;
+
+    /**
+     * Lane {@code j} is {@code 1 << (j & 7)}: the bit of high nibble
+     * {@code j} in {@code lowTable}.
+     */
+    private final ByteVector highBits;
+
+    /**
+     * Case folded bytes of the current step.
+     */
+    private final byte[] folded = new byte[LANES];
+
+    /**
+     * Reusable buffer for the current word.
+     */
+    private char[] word = new char[2 * LANES];
+
+    /**
+     * Constructor.
+     *
+     * @param asciiSeparator
+     *            {@code asciiSeparator[b]} is true iff ASCII byte {@code b}
+     *            separates words
+     * @requires |asciiSeparator| = 128
+     */
+    VectorWordScanner(boolean[] asciiSeparator) {
+        assert asciiSeparator != null : "Violation of: asciiSeparator is not null";
+
+        byte[] low = new byte[LANES];
+        byte[] high = new byte[LANES];
+        for (int j = 0; j < LANES; j++) {
+            int lowNibble = j % NIBBLES;
+            for (int h = 0; h < Byte.SIZE; h++) {
+                if (asciiSeparator[h * NIBBLES + lowNibble]) {
+                    low[j] |= (byte) (1 << h);
+                }
+            }
+            high[j] = (byte) (1 << (j % Byte.SIZE));
+        }
+        this.lowTable = ByteVector.fromArray(SPECIES, low, 0);
+        this.highBits = ByteVector.fromArray(SPECIES, high, 0);
+    }
+
+    /**
+     * Reports whether this JVM can run the scanner fast: the preferred
+     * vector shape has at least {@value #MIN_LANES} byte lanes.
+     *
+     * @return true iff the vector path is worth using
+     */
+    static boolean supported() {
+        return LANES >= MIN_LANES;
+    }
+
+    @Override
+    public int scan(ByteBuffer buffer, int from, int limit,
+            WordTokenizer.Sink sink) {
+        int i = from;
+        int n = 0;
+        boolean inWord = false;
+        int wordStart = from;
+        while (limit - i >= LANES) {
+            ByteVector v = ByteVector.fromByteBuffer(SPECIES, buffer, i,
+                    ByteOrder.nativeOrder());
+            if (v.compare(VectorOperators.LT, (byte) 0).anyTrue()) {
+                break;
+            }
+
+            /*
+             * Classify: lanes whose two nibble lookups share no bit are
+             * word characters; pack one flag per lane into wordBits
+             */
+            ByteVector hits = v.and((byte) (NIBBLES - 1))
+                    .selectFrom(this.lowTable)
+                    .and(v.lanewise(VectorOperators.LSHR, NIBBLE_BITS)
+                            .selectFrom(this.highBits));
+            long wordBits = ByteVector.zero(SPECIES)
+                    .blend((byte) 1,
+                            hits.compare(VectorOperators.EQ, (byte) 0))
+                    .reinterpretAsLongs().mul(GATHER)
+                    .lanewise(VectorOperators.LSHR, TOP_BYTE)
+                    .lanewise(VectorOperators.LSHL, GROUP_SHIFTS)
+                    .reduceLanes(VectorOperators.OR);
+
+            /*
+             * Fold every upper case letter to lower case
+             */
+            v.add(CASE_OFFSET, v.compare(VectorOperators.GE, (byte) 'A')
+                    .and(v.compare(VectorOperators.LE, (byte) 'Z')))
+                    .intoArray(this.folded, 0);
+
+            /*
+             * Walk the runs of word and separator lanes
+             */
+            int pos = 0;
+            while (pos < LANES) {
+                if (inWord) {
+                    int end = pos + Long
+                            .numberOfTrailingZeros(~(wordBits >>> pos));
+                    end = Math.min(end, LANES);
+                    int length = end - pos;
+                    if (n + length > this.word.length) {
+                        this.word = Arrays.copyOf(this.word,
+                                Math.max(n + length, 2 * this.word.length));
+                    }
+                    for (int k = pos; k < end; k++) {
+                        this.word[n] = (char) this.folded[k];
+                        n++;
+                    }
+                    if (end < LANES) {
+                        sink.word(this.word, 0, n);
+                        n = 0;
+                        inWord = false;
+                    }
+                    pos = end;
+                } else {
+                    long rest = wordBits >>> pos;
+                    if (rest == 0) {
+                        break;
+                    }
+                    pos += Long.numberOfTrailingZeros(rest);
+                    inWord = true;
+                    wordStart = i + pos;
+                    /*
+                     * The first letter of a word is upper case
+                     */
+                    byte first = this.folded[pos];
+                    if (first >= 'a' && first <= 'z') {
+                        this.folded[pos] = (byte) (first - CASE_OFFSET);
+                    }
+                }
+            }
+            i += LANES;
+        }
+        /*
+         * A word not finished here is scanned again by the scalar code
+         */
+        return inWord ? wordStart : i;
+    }
+
+}
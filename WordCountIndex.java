@@ -0,0 +1,513 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk index of the word counts of a file's prefix, so a file that only
+ * grows is tokenized once: later runs load the counts of the prefix and
+ * tokenize only the bytes appended since.
+ *
+ * An index file holds, with integers big-endian and "varint" meaning an
+ * unsigned LEB128 integer:
+ * <ol>
+ * <li>the magic number {@code TCIX} and the format version (4 bytes each);</li>
+ * <li>the length of the counted prefix (8 bytes) and its CRC-32C (4
+ * bytes);</li>
+ * <li>the charset name, default locale and separator string the counts were
+ * made with, each as a varint length followed by its UTF-16 units
+ * (varints);</li>
+ * <li>the number of words (varint), then each word as a varint length
+ * followed by its UTF-16 units (varints), then its count (varint);</li>
+ * <li>the CRC-32C of everything before it (4 bytes).</li>
+ * </ol>
+ * The prefix always ends at a line boundary, so no word spans its end. The
+ * index is memory-mapped to load it, and is used only if it is intact, was
+ * made with the same settings, and the CRC-32C of the file's first bytes
+ * still matches; otherwise the whole file is counted and the index rewritten.
+ * Checking the prefix is one checksum pass over it, far cheaper than
+ * tokenizing it again. Words are stored as UTF-16 units rather than UTF-8,
+ * which cannot encode an unpaired surrogate, so loaded counts are always
+ * those a rescan would give.
+ *
+ * Only charsets in which a line boundary can be found byte by byte (see
+ * {@code ParallelWordCounter.isSplittable}) are indexed; files in any other
+ * charset are simply counted.
+ *
+ * Usage: {@code WordCountIndex <input file> <output HTML file> <word count>
+ * [index file]}
+ */
+public final class WordCountIndex {
+
+    /**
+     * File name suffix of the default index file.
+     */
+    public static final String SUFFIX = ".tcidx";
+
+    /**
+     * First bytes of an index file: "TCIX".
+     */
+    private static final int MAGIC = 0x54434958;
+
+    /**
+     * Version of the index format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Number of bytes checksummed per mapping.
+     */
+    private static final int CHECKSUM_WINDOW = 64 << 20;
+
+    /**
+     * Number of value bits in each byte of a varint.
+     */
+    private static final int VARINT_BITS = 7;
+
+    /**
+     * The value bits of a varint byte.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Flag marking a varint byte that is followed by another.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Largest shift of the last byte of a 32-bit varint.
+     */
+    private static final int VARINT_MAX_SHIFT = 28;
+
+    /**
+     * The counts of a prefix, as loaded from an index file.
+     */
+    private static final class Snapshot {
+
+        /**
+         * Counts of the words of the prefix.
+         */
+        private final WordCountTable table;
+
+        /**
+         * Length of the prefix.
+         */
+        private final long prefix;
+
+        /**
+         * CRC-32C of the prefix.
+         */
+        private final int checksum;
+
+        /**
+         * Constructor.
+         *
+         * @param table
+         *            counts of the words of the prefix
+         * @param prefix
+         *            length of the prefix
+         * @param checksum
+         *            CRC-32C of the prefix
+         */
+        private Snapshot(WordCountTable table, long prefix, int checksum) {
+            this.table = table;
+            this.prefix = prefix;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * The index file.
+     */
+    private final Path indexFile;
+
+    /**
+     * Settings the counts depend on: charset name, default locale and
+     * separator string.
+     */
+    private final String[] settings;
+
+    /**
+     * Whether the input's charset allows indexing.
+     */
+    private final boolean incremental;
+
+    /**
+     * Scanner used for the input.
+     */
+    private final MappedWordScanner scanner;
+
+    /**
+     * Buffer for the UTF-16 units of a word being loaded.
+     */
+    private char[] units = new char[64];
+
+    /**
+     * Number of input bytes whose counts came from the index in the last
+     * {@link #count}.
+     */
+    private long reused;
+
+    /**
+     * Constructor.
+     *
+     * @param indexFile
+     *            the index file; it need not exist yet
+     * @param separatorString
+     *            the characters that separate words
+     * @param charset
+     *            charset of the input file
+     */
+    public WordCountIndex(Path indexFile, String separatorString,
+            Charset charset) {
+        assert indexFile != null : "Violation of: indexFile is not null";
+        assert separatorString != null : "Violation of: separatorString is not null";
+        assert charset != null : "Violation of: charset is not null";
+
+        this.indexFile = indexFile;
+        this.settings = new String[] { charset.name(),
+                Locale.getDefault().toLanguageTag(), separatorString };
+        this.incremental = ParallelWordCounter.isSplittable(charset);
+        this.scanner = new MappedWordScanner(new WordTokenizer(separatorString),
+                charset);
+    }
+
+    /**
+     * Counts the words of {@code input}, reusing the counts stored in the
+     * index for its unchanged prefix, and updates the index to cover all
+     * complete lines of {@code input}.
+     *
+     * @param input
+     *            the input file
+     * @return the counts of every word of {@code input}
+     * @throws IOException
+     *             if the input cannot be read or the index cannot be written
+     */
+    public WordCountTable count(Path input) throws IOException {
+        assert input != null : "Violation of: input is not null";
+
+        try (FileChannel channel = FileChannel.open(input,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            WordCountTable table = null;
+            long prefix = 0;
+            long end = 0;
+            CRC32C checksum = new CRC32C();
+            if (this.incremental) {
+                Snapshot snapshot = this.load();
+                if (snapshot != null && snapshot.prefix <= size) {
+                    checksum(channel, 0, snapshot.prefix, checksum);
+                    if ((int) checksum.getValue() == snapshot.checksum) {
+                        table = snapshot.table;
+                        prefix = snapshot.prefix;
+                    } else {
+                        checksum.reset();
+                    }
+                }
+                boolean stale = table == null;
+                if (stale) {
+                    table = new WordCountTable();
+                }
+                /*
+                 * Count and index the new complete lines; a partial last line
+                 * is counted below but left out of the index
+                 */
+                end = ParallelWordCounter.lastLineStart(channel, prefix, size);
+                if (end > prefix || stale) {
+                    this.scanner.scan(channel, prefix, end, table);
+                    checksum(channel, prefix, end, checksum);
+                    this.save(table, end, (int) checksum.getValue());
+                }
+            } else {
+                table = new WordCountTable();
+            }
+            this.scanner.scan(channel, end, size, table);
+            this.reused = prefix;
+            return table;
+        }
+    }
+
+    /**
+     * Returns the number of input bytes whose counts were loaded from the
+     * index by the last call to {@link #count}.
+     *
+     * @return the length of the reused prefix
+     */
+    public long reusedBytes() {
+        return this.reused;
+    }
+
+    /**
+     * Adds the bytes of {@code [from, to)} of {@code channel} to
+     * {@code checksum}.
+     *
+     * @param channel
+     *            the input file
+     * @param from
+     *            first position to checksum
+     * @param to
+     *            position just past the last one to checksum
+     * @param checksum
+     *            the checksum to update
+     * @throws IOException
+     *             if the file cannot be read
+     * @updates checksum
+     */
+    private static void checksum(FileChannel channel, long from, long to,
+            CRC32C checksum) throws IOException {
+        long pos = from;
+        while (pos < to) {
+            long n = Math.min(CHECKSUM_WINDOW, to - pos);
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, n));
+            pos += n;
+        }
+    }
+
+    /**
+     * Loads the index file.
+     *
+     * @return the counts it holds, or null if it does not exist, is damaged,
+     *         or was made with other settings
+     * @throws IOException
+     *             if the index file cannot be read
+     */
+    private Snapshot load() throws IOException {
+        try (FileChannel channel = FileChannel.open(this.indexFile,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Integer.BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int bodyEnd = (int) size - Integer.BYTES;
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate().limit(bodyEnd));
+            if ((int) crc.getValue() != buffer.getInt(bodyEnd)) {
+                return null;
+            }
+            buffer.limit(bodyEnd);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long prefix = buffer.getLong();
+            int checksum = buffer.getInt();
+            for (String setting : this.settings) {
+                if (!setting.equals(this.readString(buffer))) {
+                    return null;
+                }
+            }
+            int n = readVarint(buffer);
+            WordCountTable table = new WordCountTable(
+                    Math.min(n, buffer.remaining() / 2));
+            for (int i = 0; i < n; i++) {
+                String word = this.readString(buffer);
+                table.add(word, readVarint(buffer));
+            }
+            return new Snapshot(table, prefix, checksum);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index file for a prefix, replacing the old one atomically.
+     *
+     * @param table
+     *            counts of the words of the prefix
+     * @param prefix
+     *            length of the prefix
+     * @param checksum
+     *            CRC-32C of the prefix
+     * @throws IOException
+     *             if the index cannot be written
+     */
+    private void save(WordCountTable table, long prefix, int checksum)
+            throws IOException {
+        Path temp = this.indexFile
+                .resolveSibling(this.indexFile.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new CheckedOutputStream(
+                        Files.newOutputStream(temp), crc)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(prefix);
+            out.writeInt(checksum);
+            for (String setting : this.settings) {
+                writeString(out, setting);
+            }
+            writeVarint(out, table.size());
+            for (int id = 0; id < table.size(); id++) {
+                writeString(out, table.word(id));
+                writeVarint(out, table.count(id));
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+        }
+        try {
+            Files.move(temp, this.indexFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, this.indexFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return the value read
+     */
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > VARINT_MAX_SHIFT) {
+                throw new IllegalArgumentException("varint too long");
+            }
+            b = buffer.get();
+            value |= (b & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        } while ((b & VARINT_MORE) != 0);
+        return value;
+    }
+
+    /**
+     * Writes {@code value} as a varint.
+     *
+     * @param out
+     *            the stream to write to
+     * @param value
+     *            the value to write
+     * @throws IOException
+     *             if the stream cannot be written
+     * @requires value >= 0
+     */
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        int v = value;
+        while ((v & ~VARINT_MASK) != 0) {
+            out.writeByte((v & VARINT_MASK) | VARINT_MORE);
+            v >>>= VARINT_BITS;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Reads a string written by {@code writeString}.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @return the string read
+     */
+    private String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        /*
+         * Every unit takes at least one byte
+         */
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (length > this.units.length) {
+            this.units = new char[Math.max(length, this.units.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            int unit = readVarint(buffer);
+            if (unit > Character.MAX_VALUE) {
+                throw new IllegalArgumentException("invalid UTF-16 unit");
+            }
+            this.units[i] = (char) unit;
+        }
+        return new String(this.units, 0, length);
+    }
+
+    /**
+     * Writes {@code s}, as its length and its UTF-16 units, as varints.
+     *
+     * @param out
+     *            the stream to write to
+     * @param s
+     *            the string to write
+     * @throws IOException
+     *             if the stream cannot be written
+     */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        writeVarint(out, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            writeVarint(out, s.charAt(i));
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: input file, output HTML file,
+     *            word count, and optionally the index file (by default the
+     *            input file name followed by {@value #SUFFIX})
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: WordCountIndex <input file> "
+                    + "<output HTML file> <word count> [index file]");
+            return;
+        }
+
+        int cloudWordAmt;
+        try {
+            cloudWordAmt = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: word count must be an integer");
+            return;
+        }
+        if (cloudWordAmt <= 0) {
+            System.err.println("ERROR: word count must be positive");
+            return;
+        }
+
+        Path input = Paths.get(args[0]);
+        Path indexFile;
+        if (args.length > 3) {
+            indexFile = Paths.get(args[3]);
+        } else {
+            indexFile = input.resolveSibling(input.getFileName() + SUFFIX);
+        }
+        WordCountIndex index = new WordCountIndex(indexFile,
+                TagCloudGenerator.SEPARATORS, Charset.defaultCharset());
+        try {
+            long size = Files.size(input);
+            WordCountTable table = index.count(input);
+            System.out.println("Reused " + index.reusedBytes() + " bytes "
+                    + "from the index, tokenized "
+                    + (size - index.reusedBytes()) + " bytes");
+            new HtmlRenderer(Charset.defaultCharset()).write(
+                    Paths.get(args[1]), args[0], cloudWordAmt,
+                    TopWords.select(table, cloudWordAmt));
+        } catch (IOException e) {
+            System.err.println("Error counting words: " + e);
+        }
+    }
+
+}
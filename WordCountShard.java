@@ -0,0 +1,516 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Shard file holding the word counts of some input, sorted by word, so any
+ * number of shards can be merged in one sequential pass without tokenizing
+ * the input again.
+ *
+ * A shard file holds, with integers big-endian and "varint" meaning an
+ * unsigned LEB128 integer:
+ * <ol>
+ * <li>the magic number {@code TCSH} and the format version (4 bytes each);</li>
+ * <li>the default locale and separator string the counts were made with,
+ * each as a varint length followed by its UTF-16 units (varints);</li>
+ * <li>the number of words (varint), then the words in {@code String} order,
+ * each as the number of leading units it shares with the previous word
+ * (varint), the rest of the word as a varint length followed by its UTF-16
+ * units (varints), and its count (varint);</li>
+ * <li>the CRC-32C of everything before it (4 bytes).</li>
+ * </ol>
+ * Words are stored as UTF-16 units rather than UTF-8 so that every word
+ * reads back exactly as it was counted, including words holding an unpaired
+ * surrogate, which UTF-8 cannot encode.
+ *
+ * Since the words are sorted, shards are merged like sorted runs: a
+ * {@link Cursor} reads each one front to back, and the smallest current word
+ * of all cursors is the next word of the merge.
+ */
+public final class WordCountShard {
+
+    /**
+     * File name suffix of shard files.
+     */
+    public static final String SUFFIX = ".tcshard";
+
+    /**
+     * First bytes of a shard file: "TCSH".
+     */
+    private static final int MAGIC = 0x54435348;
+
+    /**
+     * Version of the shard format.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Number of value bits in each byte of a varint.
+     */
+    private static final int VARINT_BITS = 7;
+
+    /**
+     * The value bits of a varint byte.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Flag marking a varint byte that is followed by another.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Largest shift of the last byte of a 32-bit varint.
+     */
+    private static final int VARINT_MAX_SHIFT = 28;
+
+    /**
+     * Sequential reader of the (word, count) pairs of one shard file.
+     */
+    public static final class Cursor implements Closeable {
+
+        /**
+         * The shard file.
+         */
+        private final Path file;
+
+        /**
+         * Checksum of everything read so far.
+         */
+        private final CRC32C crc = new CRC32C();
+
+        /**
+         * The file contents.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Number of pairs not read yet.
+         */
+        private int remaining;
+
+        /**
+         * Whether the trailing checksum has been checked.
+         */
+        private boolean checked;
+
+        /**
+         * The current word, or null before the first pair.
+         */
+        private String word;
+
+        /**
+         * Count of the current word.
+         */
+        private int count;
+
+        /**
+         * Opens {@code file} and checks its header.
+         *
+         * @param file
+         *            the shard file
+         * @param separatorString
+         *            the separators the counts must have been made with
+         * @throws IOException
+         *             if the file cannot be read, is not a shard, or was
+         *             made with other settings
+         */
+        public Cursor(Path file, String separatorString) throws IOException {
+            assert file != null : "Violation of: file is not null";
+            assert separatorString != null : "Violation of: separatorString is not null";
+
+            this.file = file;
+            /*
+             * The checksum goes outside the buffer, so it only covers bytes
+             * actually consumed, not the buffer's read-ahead
+             */
+            this.in = new DataInputStream(new CheckedInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)),
+                    this.crc));
+            boolean opened = false;
+            try {
+                if (this.in.readInt() != MAGIC
+                        || this.in.readInt() != VERSION) {
+                    throw new IOException(file + " is not a shard file");
+                }
+                for (String setting : settings(separatorString)) {
+                    if (!setting.equals(readString(this.in))) {
+                        throw new IOException(
+                                file + " was made with other settings");
+                    }
+                }
+                this.remaining = readVarint(this.in);
+                opened = true;
+            } finally {
+                if (!opened) {
+                    this.in.close();
+                }
+            }
+        }
+
+        /**
+         * Moves to the next (word, count) pair.
+         *
+         * @return false if there was no pair left
+         * @throws IOException
+         *             if the file cannot be read or is damaged
+         * @updates this
+         */
+        public boolean next() throws IOException {
+            if (this.remaining == 0) {
+                if (!this.checked) {
+                    long expected = this.crc.getValue();
+                    if (this.in.readInt() != (int) expected
+                            || this.in.read() >= 0) {
+                        throw new IOException(this.file + " is damaged");
+                    }
+                    this.checked = true;
+                }
+                return false;
+            }
+            int shared = readVarint(this.in);
+            String rest = readString(this.in);
+            if (this.word == null) {
+                this.word = rest;
+            } else if (shared <= this.word.length()) {
+                this.word = this.word.substring(0, shared) + rest;
+            } else {
+                throw new IOException(this.file + " is damaged");
+            }
+            this.count = readVarint(this.in);
+            this.remaining--;
+            return true;
+        }
+
+        /**
+         * Returns the number of pairs not read yet.
+         *
+         * @return the number of pairs after the current one
+         */
+        public int remaining() {
+            return this.remaining;
+        }
+
+        /**
+         * Returns the current word.
+         *
+         * @return the word of the current pair
+         * @requires [next() returned true]
+         */
+        public String word() {
+            return this.word;
+        }
+
+        /**
+         * Returns the count of the current word.
+         *
+         * @return the count of the current pair
+         * @requires [next() returned true]
+         */
+        public int count() {
+            return this.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private WordCountShard() {
+        //no code needed here
+    }
+
+    /**
+     * Returns the settings a shard records: the default locale, which case
+     * folding depends on, and the separators.
+     *
+     * @param separatorString
+     *            the separators
+     * @return the settings, in file order
+     */
+    private static String[] settings(String separatorString) {
+        return new String[] { Locale.getDefault().toLanguageTag(),
+                separatorString };
+    }
+
+    /**
+     * Writes the counts of {@code table} to the shard file {@code file},
+     * replacing it atomically if it exists.
+     *
+     * @param file
+     *            the shard file
+     * @param table
+     *            the counts
+     * @param separatorString
+     *            the separators the counts were made with
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(Path file, WordCountTable table,
+            String separatorString) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert table != null : "Violation of: table is not null";
+        assert separatorString != null : "Violation of: separatorString is not null";
+
+        PipelineStage stage = PipelineStage.start("writeShard");
+        Integer[] order = new Integer[table.size()];
+        for (int id = 0; id < order.length; id++) {
+            order[id] = id;
+        }
+        Arrays.sort(order, (a, b) -> table.word(a).compareTo(table.word(b)));
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new CheckedOutputStream(
+                        Files.newOutputStream(temp), crc)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String setting : settings(separatorString)) {
+                writeString(out, setting);
+            }
+            writeVarint(out, order.length);
+            String previous = "";
+            for (int id : order) {
+                String word = table.word(id);
+                int shared = sharedPrefix(previous, word);
+                writeVarint(out, shared);
+                writeString(out, word, shared);
+                writeVarint(out, table.count(id));
+                previous = word;
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        stage.end(0, table.totalCount(), table.size(),
+                stage.recording() ? table.estimatedBytes() : 0);
+    }
+
+    /**
+     * Returns the number of leading characters {@code a} and {@code b}
+     * share.
+     *
+     * @param a
+     *            the first word
+     * @param b
+     *            the second word
+     * @return the length of their common prefix
+     */
+    private static int sharedPrefix(String a, String b) {
+        int limit = Math.min(a.length(), b.length());
+        int shared = 0;
+        while (shared < limit && a.charAt(shared) == b.charAt(shared)) {
+            shared++;
+        }
+        return shared;
+    }
+
+    /**
+     * Merges the shard files {@code shards} and selects the {@code k} most
+     * frequent words of all of them together. Each shard is read once,
+     * sequentially; only one word per shard is in memory at a time.
+     *
+     * @param shards
+     *            the shard files
+     * @param separatorString
+     *            the separators the shards must have been made with
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words (all of them if there are fewer), in
+     *         alphabetical order
+     * @throws IOException
+     *             if a shard cannot be read, is damaged or was made with
+     *             other settings
+     * @requires k > 0
+     */
+    public static TopWords top(List<Path> shards, String separatorString,
+            int k) throws IOException {
+        assert shards != null : "Violation of: shards is not null";
+        assert k > 0 : "Violation of: k > 0";
+
+        PipelineStage stage = PipelineStage.start("mergeShards");
+        TopWords.Selector selector;
+        List<Cursor> cursors = new ArrayList<>();
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(
+                Math.max(shards.size(), 1),
+                (a, b) -> a.word().compareTo(b.word()));
+        long tokens = 0;
+        long distinct = 0;
+        try {
+            long pairs = 0;
+            for (Path shard : shards) {
+                Cursor cursor = new Cursor(shard, separatorString);
+                cursors.add(cursor);
+                pairs += cursor.remaining();
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            /*
+             * The merge has no more distinct words than the shards have pairs
+             */
+            selector = new TopWords.Selector(
+                    (int) Math.min(k, Math.max(pairs, 1)));
+            while (!queue.isEmpty()) {
+                /*
+                 * Sum the counts of the smallest word over every shard that
+                 * has it; those shards are all at the head of the queue
+                 */
+                String word = queue.peek().word();
+                int count = 0;
+                while (!queue.isEmpty() && queue.peek().word().equals(word)) {
+                    Cursor cursor = queue.poll();
+                    count += cursor.count();
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                tokens += count;
+                distinct++;
+                if (count >= selector.threshold()) {
+                    selector.offer(word, count);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        stage.end(0, tokens, distinct, 0);
+        return selector.result();
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @param in
+     *            the stream to read from
+     * @return the value read
+     * @throws IOException
+     *             if the stream cannot be read or the varint is too long
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > VARINT_MAX_SHIFT) {
+                throw new IOException("varint too long");
+            }
+            b = in.readUnsignedByte();
+            value |= (b & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        } while ((b & VARINT_MORE) != 0);
+        return value;
+    }
+
+    /**
+     * Writes {@code value} as a varint.
+     *
+     * @param out
+     *            the stream to write to
+     * @param value
+     *            the value to write
+     * @throws IOException
+     *             if the stream cannot be written
+     * @requires value >= 0
+     */
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        int v = value;
+        while ((v & ~VARINT_MASK) != 0) {
+            out.writeByte((v & VARINT_MASK) | VARINT_MORE);
+            v >>>= VARINT_BITS;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Reads a string written by {@code writeString}.
+     *
+     * @param in
+     *            the stream to read from
+     * @return the string read
+     * @throws IOException
+     *             if the stream cannot be read or holds a unit beyond
+     *             {@code Character.MAX_VALUE}
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        /*
+         * Not presized: a damaged length must not allocate a huge buffer
+         */
+        StringBuilder units = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            int unit = readVarint(in);
+            if (unit > Character.MAX_VALUE) {
+                throw new IOException("Invalid UTF-16 unit " + unit);
+            }
+            units.append((char) unit);
+        }
+        return units.toString();
+    }
+
+    /**
+     * Writes {@code s}, as its length and its UTF-16 units, as varints.
+     *
+     * @param out
+     *            the stream to write to
+     * @param s
+     *            the string to write
+     * @throws IOException
+     *             if the stream cannot be written
+     */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        writeString(out, s, 0);
+    }
+
+    /**
+     * Writes {@code s[from, |s|)}, as its length and its UTF-16 units, as
+     * varints.
+     *
+     * @param out
+     *            the stream to write to
+     * @param s
+     *            the string holding the characters to write
+     * @param from
+     *            index of the first character to write
+     * @throws IOException
+     *             if the stream cannot be written
+     * @requires 0 <= from <= |s|
+     */
+    private static void writeString(DataOutputStream out, String s, int from)
+            throws IOException {
+        writeVarint(out, s.length() - from);
+        for (int i = from; i < s.length(); i++) {
+            writeVarint(out, s.charAt(i));
+        }
+    }
+
+}
@@ -0,0 +1,428 @@
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Open-addressing hash table from words to {@code int} occurrence counts,
+ * used in place of a {@code TreeMap<String, Integer>} while counting.
+ *
+ * Words are looked up directly from (buffer, offset, length) slices, so a
+ * {@code String} is only created the first time a word is seen. Every distinct
+ * word gets a stable id (0, 1, 2, ... in order of first appearance); words,
+ * their hash codes and counts live in parallel arrays indexed by id, and the
+ * probe table only stores ids. Growing the table therefore re-places ids from
+ * the saved hash codes without touching any word characters.
+ *
+ * Nothing is sorted while counting; {@link #toSortedMap()} sorts once, when
+ * output is produced.
+ */
+public final class WordCountTable implements WordCounter {
+
+    /**
+     * Default number of distinct words the table is sized for.
+     */
+    private static final int DEFAULT_EXPECTED = 1024;
+
+    /**
+     * Multiplier used to spread hash codes over the probe table.
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /**
+     * Probe table: {@code slots[i]} is 1 + the id stored in slot {@code i}, or
+     * 0 if the slot is empty. Its length is a power of two and at least twice
+     * {@code size}.
+     */
+    private int[] slots;
+
+    /**
+     * Distinct words, indexed by id.
+     */
+    private String[] words;
+
+    /**
+     * {@code String.hashCode} of each word, indexed by id.
+     */
+    private int[] hashes;
+
+    /**
+     * Occurrence count of each word, indexed by id.
+     */
+    private int[] counts;
+
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+
+    /**
+     * Sum of all counts.
+     */
+    private long total;
+
+    /**
+     * No-argument constructor.
+     */
+    public WordCountTable() {
+        this(DEFAULT_EXPECTED);
+    }
+
+    /**
+     * Constructor for a table expected to hold about {@code expected} distinct
+     * words before it has to grow.
+     *
+     * @param expected
+     *            the expected number of distinct words
+     * @requires expected >= 0
+     */
+    public WordCountTable(int expected) {
+        assert expected >= 0 : "Violation of: expected >= 0";
+
+        int capacity = Math.max(expected, 2);
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+    /**
+     * Returns the probe table index where the search for {@code hash} starts.
+     *
+     * @param hash
+     *            the {@code String.hashCode} of a word
+     * @param mask
+     *            the probe table length minus one
+     * @return the first slot to probe
+     */
+    private static int home(int hash, int mask) {
+        int h = hash * SPREAD;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns {@code String.hashCode} of {@code text[offset, offset + length)}
+     * without creating the {@code String}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @return the hash code the word would have as a {@code String}
+     */
+    public static int hash(char[] text, int offset, int length) {
+        int h = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            h = 31 * h + text[i];
+        }
+        return h;
+    }
+
+    /**
+     * Reports whether {@code word} has the same characters as the given slice.
+     *
+     * @param word
+     *            the stored word
+     * @param text
+     *            the buffer holding the slice
+     * @param offset
+     *            index of the first character of the slice
+     * @param length
+     *            number of characters in the slice
+     * @return true iff {@code word} equals the slice
+     */
+    static boolean matches(String word, char[] text, int offset,
+            int length) {
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != text[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        this.add(text, offset, length, 1);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the word
+     * {@code text[offset, offset + length)}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @param count
+     *            number of occurrences to add
+     * @return the id of the word
+     * @updates this
+     * @requires count >= 0
+     */
+    public int add(char[] text, int offset, int length, int count) {
+        assert text != null : "Violation of: text is not null";
+        assert count >= 0 : "Violation of: count >= 0";
+
+        int hash = hash(text, offset, length);
+        int mask = this.slots.length - 1;
+        int i = home(hash, mask);
+        int slot = this.slots[i];
+        while (slot != 0) {
+            int id = slot - 1;
+            if (this.hashes[id] == hash
+                    && matches(this.words[id], text, offset, length)) {
+                this.counts[id] += count;
+                this.total += count;
+                return id;
+            }
+            i = (i + 1) & mask;
+            slot = this.slots[i];
+        }
+        return this.insert(i, new String(text, offset, length), hash, count);
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            number of occurrences to add
+     * @return the id of the word
+     * @updates this
+     * @requires count >= 0
+     */
+    public int add(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+        assert count >= 0 : "Violation of: count >= 0";
+
+        int hash = word.hashCode();
+        int mask = this.slots.length - 1;
+        int i = home(hash, mask);
+        int slot = this.slots[i];
+        while (slot != 0) {
+            int id = slot - 1;
+            if (this.hashes[id] == hash && this.words[id].equals(word)) {
+                this.counts[id] += count;
+                this.total += count;
+                return id;
+            }
+            i = (i + 1) & mask;
+            slot = this.slots[i];
+        }
+        return this.insert(i, word, hash, count);
+    }
+
+    /**
+     * Stores a new word in the empty probe slot {@code i}, growing the table
+     * afterwards if it became too full.
+     *
+     * @param i
+     *            an empty probe slot at the end of the word's probe sequence
+     * @param word
+     *            the new word
+     * @param hash
+     *            {@code word.hashCode()}
+     * @param count
+     *            initial count of the word
+     * @return the id given to the word
+     * @updates this
+     */
+    private int insert(int i, String word, int hash, int count) {
+        int id = this.size;
+        if (id == this.words.length) {
+            this.growEntries();
+        }
+        this.words[id] = word;
+        this.hashes[id] = hash;
+        this.counts[id] = count;
+        this.slots[i] = id + 1;
+        this.size++;
+        this.total += count;
+        if (this.size * 2 > this.slots.length) {
+            this.growSlots();
+        }
+        return id;
+    }
+
+    /**
+     * Doubles the capacity of the per-id arrays.
+     *
+     * @updates this
+     */
+    private void growEntries() {
+        int capacity = this.words.length * 2;
+        String[] newWords = new String[capacity];
+        int[] newHashes = new int[capacity];
+        int[] newCounts = new int[capacity];
+        System.arraycopy(this.words, 0, newWords, 0, this.size);
+        System.arraycopy(this.hashes, 0, newHashes, 0, this.size);
+        System.arraycopy(this.counts, 0, newCounts, 0, this.size);
+        this.words = newWords;
+        this.hashes = newHashes;
+        this.counts = newCounts;
+    }
+
+    /**
+     * Doubles the probe table and re-places every id using its saved hash
+     * code.
+     *
+     * @updates this
+     */
+    private void growSlots() {
+        int[] newSlots = new int[this.slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int i = home(this.hashes[id], mask);
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = id + 1;
+        }
+        this.slots = newSlots;
+    }
+
+    /**
+     * Returns the id of {@code word}, or -1 if it has not been counted.
+     *
+     * @param word
+     *            the word to look up
+     * @return the id of {@code word}, or -1
+     */
+    public int indexOf(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        int hash = word.hashCode();
+        int mask = this.slots.length - 1;
+        int i = home(hash, mask);
+        int slot = this.slots[i];
+        while (slot != 0) {
+            int id = slot - 1;
+            if (this.hashes[id] == hash && this.words[id].equals(word)) {
+                return id;
+            }
+            i = (i + 1) & mask;
+            slot = this.slots[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Adds every word and count of {@code other} to this table.
+     *
+     * @param other
+     *            the table to merge in
+     * @updates this
+     */
+    public void addAll(WordCountTable other) {
+        assert other != null : "Violation of: other is not null";
+
+        for (int id = 0; id < other.size; id++) {
+            this.add(other.words[id], other.counts[id]);
+        }
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the total number of occurrences counted.
+     *
+     * @return the sum of all counts
+     */
+    public long totalCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns the word with the given id.
+     *
+     * @param id
+     *            the id of the word
+     * @return the word
+     * @requires 0 <= id < size()
+     */
+    public String word(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size()";
+
+        return this.words[id];
+    }
+
+    /**
+     * Returns the count of the word with the given id.
+     *
+     * @param id
+     *            the id of the word
+     * @return the count of the word
+     * @requires 0 <= id < size()
+     */
+    public int count(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < size()";
+
+        return this.counts[id];
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this table, counting the
+     * words themselves and every array.
+     *
+     * @return the estimated size of this table in bytes
+     */
+    public long estimatedBytes() {
+        final int stringOverhead = 40;
+        final int perEntry = 8 + Integer.BYTES + Integer.BYTES;
+        long bytes = (long) this.slots.length * Integer.BYTES
+                + (long) this.words.length * perEntry;
+        for (int id = 0; id < this.size; id++) {
+            bytes += stringOverhead + 2L * this.words[id].length();
+        }
+        return bytes;
+    }
+
+    @Override
+    public TopWords top(int k) {
+        return TopWords.select(this, k);
+    }
+
+    /**
+     * Removes every word, keeping the allocated arrays for reuse.
+     *
+     * @clears this
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.slots, 0);
+        Arrays.fill(this.words, 0, this.size, null);
+        this.size = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Returns the words and counts of this table as a {@code SortedMap}. This
+     * is the only place where the words are sorted.
+     *
+     * @return a new map from each word to its count
+     */
+    public SortedMap<String, Integer> toSortedMap() {
+        SortedMap<String, Integer> map = new TreeMap<>();
+        for (int id = 0; id < this.size; id++) {
+            map.put(this.words[id], this.counts[id]);
+        }
+        return map;
+    }
+
+}
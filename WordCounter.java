@@ -0,0 +1,57 @@
+/**
+ * A structure that counts the case folded words a {@code WordTokenizer}
+ * reports and hands back the most frequent of them for a tag cloud.
+ *
+ * {@code WordCountTable} (hashing) and {@code WordTrie} (a character trie)
+ * are the two implementations; which one {@code TagCloudGenerator} uses is
+ * chosen with the system property {@value #COUNTER_PROPERTY}.
+ */
+public interface WordCounter extends WordTokenizer.Sink {
+
+    /**
+     * System property choosing the counter: {@code "table"} (the default) or
+     * {@code "trie"}.
+     */
+    String COUNTER_PROPERTY = "tagcloud.counter";
+
+    /**
+     * Returns the number of distinct words counted.
+     *
+     * @return the number of distinct words
+     */
+    int size();
+
+    /**
+     * Returns the sum of all counts.
+     *
+     * @return the number of words counted
+     */
+    long totalCount();
+
+    /**
+     * Returns an estimate of the heap memory used by this counter.
+     *
+     * @return the estimated size of this counter in bytes
+     */
+    long estimatedBytes();
+
+    /**
+     * Selects the {@code k} most frequent words, ranked by decreasing count
+     * and then by increasing alphabetical order.
+     *
+     * @param k
+     *            the number of words to select
+     * @return the top {@code k} words (all of them if there are fewer), in
+     *         alphabetical order
+     * @requires k > 0
+     */
+    TopWords top(int k);
+
+    /**
+     * Removes every word, keeping the allocated arrays for reuse.
+     *
+     * @clears this
+     */
+    void clear();
+
+}
@@ -0,0 +1,204 @@
+import java.util.Arrays;
+
+/**
+ * Immutable index of the word counts of one input, built once and then
+ * queried any number of times, so different cloud sizes or filters do not
+ * mean counting the file again.
+ *
+ * The words are kept in two orders: alphabetically, with their counts in a
+ * parallel array, and by decreasing count (ties alphabetically) as positions
+ * into the first. "Top n" is then the first n positions of the count order,
+ * "count at least c" a prefix of it found by binary search, and "starts with
+ * p" a range of the alphabetical order found by binary search; each takes
+ * O(log V + r log r) time for a result of r words out of V. Nothing is
+ * changed after construction and every field is final, so any number of
+ * threads may query one index at the same time without locking.
+ */
+public final class WordQueryIndex {
+
+    /**
+     * The words, in alphabetical order.
+     */
+    private final String[] words;
+
+    /**
+     * {@code counts[i]} is the count of {@code words[i]}.
+     */
+    private final int[] counts;
+
+    /**
+     * Positions in {@code words}, by decreasing count and then alphabetically.
+     */
+    private final int[] byCount;
+
+    /**
+     * Sum of all counts.
+     */
+    private final long total;
+
+    /**
+     * Constructor.
+     *
+     * @param table
+     *            the word counts to index
+     */
+    public WordQueryIndex(WordCountTable table) {
+        assert table != null : "Violation of: table is not null";
+
+        PipelineStage stage = PipelineStage.start("buildQueryIndex");
+        int size = table.size();
+        this.words = new String[size];
+        for (int id = 0; id < size; id++) {
+            this.words[id] = table.word(id);
+        }
+        Arrays.sort(this.words);
+        this.counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.counts[i] = table.count(table.indexOf(this.words[i]));
+        }
+
+        /*
+         * Sort (count, position) pairs packed into longs: the high half is
+         * the bitwise complement of the count, so larger counts come first
+         */
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = LongCountTable.pack(~this.counts[i], i);
+        }
+        Arrays.sort(keys);
+        this.byCount = new int[size];
+        for (int r = 0; r < size; r++) {
+            this.byCount[r] = LongCountTable.low(keys[r]);
+        }
+        this.total = table.totalCount();
+        stage.end(0, 0, size, stage.recording() ? this.estimatedBytes() : 0);
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the sum of all counts.
+     *
+     * @return the number of words counted
+     */
+    public long totalCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by this index, counting the
+     * words themselves and every array.
+     *
+     * @return the estimated size of this index in bytes
+     */
+    public long estimatedBytes() {
+        final int stringOverhead = 40;
+        final int perWord = 8 + Integer.BYTES + Integer.BYTES;
+        long bytes = (long) this.words.length * perWord;
+        for (String word : this.words) {
+            bytes += stringOverhead + 2L * word.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the words at the given positions, as {@code TopWords} in
+     * alphabetical order.
+     *
+     * @param positions
+     *            positions in {@code words}; reordered
+     * @return the words and their counts
+     */
+    private TopWords result(int[] positions) {
+        Arrays.sort(positions);
+        String[] w = new String[positions.length];
+        int[] c = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            w[i] = this.words[positions[i]];
+            c[i] = this.counts[positions[i]];
+        }
+        return new TopWords(w, c);
+    }
+
+    /**
+     * Returns the {@code n} most frequent words, ties broken alphabetically,
+     * as {@code TopWords.select} would select them.
+     *
+     * @param n
+     *            the number of words
+     * @return the top {@code n} words (all of them if there are fewer), in
+     *         alphabetical order
+     * @requires n > 0
+     */
+    public TopWords top(int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        return this.result(Arrays.copyOf(this.byCount,
+                Math.min(n, this.byCount.length)));
+    }
+
+    /**
+     * Returns every word whose count is at least {@code c}.
+     *
+     * @param c
+     *            the smallest count
+     * @return the words counted at least {@code c} times, in alphabetical
+     *         order
+     */
+    public TopWords atLeast(int c) {
+        /*
+         * Counts decrease along byCount: find the first one below c
+         */
+        int lo = 0;
+        int hi = this.byCount.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.counts[this.byCount[mid]] >= c) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return this.result(Arrays.copyOf(this.byCount, lo));
+    }
+
+    /**
+     * Returns every word that starts with {@code prefix}.
+     *
+     * @param prefix
+     *            the prefix, case folded as the words are
+     * @return the words starting with {@code prefix}, in alphabetical order
+     */
+    public TopWords withPrefix(String prefix) {
+        assert prefix != null : "Violation of: prefix is not null";
+
+        /*
+         * The words with the prefix are the range of the alphabetical order
+         * that starts at the first word not less than the prefix
+         */
+        int lo = 0;
+        int hi = this.words.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.words[mid].compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int end = lo;
+        while (end < this.words.length && this.words[end].startsWith(prefix)) {
+            end++;
+        }
+        return new TopWords(Arrays.copyOfRange(this.words, lo, end),
+                Arrays.copyOfRange(this.counts, lo, end));
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Stage between a {@code WordTokenizer} and a counter that reduces every
+ * word to its Porter stem before passing it on, so "Running", "Runs" and
+ * "Run" are counted as one word, "Run".
+ *
+ * Stemming only applies to words of ASCII letters; any other word is passed
+ * on as it is. A stem keeps the case of the characters it shares with the
+ * word, so the case folded "Happiness" becomes "Happi".
+ *
+ * The stem of each word is memoized in a bounded cache keyed on the word as
+ * the tokenizer reports it. The cache is set-associative: a word can only be
+ * stored in one of the {@value #WAYS} entries of the set its hash selects,
+ * and a miss evicts the least recently used of them. Word frequencies in
+ * natural language follow Zipf's law, so the frequent words stay cached and
+ * nearly every word is passed on by a hash, a comparison and a copy of a
+ * cached stem: no stemming and no allocation. A stemmer keeps the cache and
+ * a scratch buffer, so a single instance must not be used by more than one
+ * thread at a time.
+ */
+public final class WordStemmer implements WordTokenizer.Sink {
+
+    /**
+     * System property that, set to {@code true}, makes
+     * {@code TagCloudGenerator} count stems instead of words.
+     */
+    public static final String STEM_PROPERTY = "tagcloud.stem";
+
+    /**
+     * Default number of words cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1 << 14;
+
+    /**
+     * Number of entries per set of the cache.
+     */
+    private static final int WAYS = 4;
+
+    /**
+     * Multiplier mixing word hashes into set numbers.
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /**
+     * Distance between an ASCII lower case letter and its upper case form.
+     */
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    /**
+     * Initial size of the scratch buffer.
+     */
+    private static final int SCRATCH_SIZE = 64;
+
+    /**
+     * Receiver of the stems.
+     */
+    private final WordTokenizer.Sink target;
+
+    /**
+     * The stemming algorithm.
+     */
+    private final PorterStemmer porter = new PorterStemmer();
+
+    /**
+     * Cached words; the entries of set {@code s} are
+     * {@code [s * WAYS, (s + 1) * WAYS)}, the empty ones last.
+     */
+    private final String[] words;
+
+    /**
+     * {@code hashes[e]} is the {@code String.hashCode} of {@code words[e]}.
+     */
+    private final int[] hashes;
+
+    /**
+     * {@code stems[e]} is the stem of {@code words[e]}.
+     */
+    private final char[][] stems;
+
+    /**
+     * {@code used[e]} is the value of {@code clock} when entry {@code e} was
+     * last used.
+     */
+    private final long[] used;
+
+    /**
+     * Number of sets minus one.
+     */
+    private final int setMask;
+
+    /**
+     * Number of cache lookups so far.
+     */
+    private long clock;
+
+    /**
+     * Number of lookups that had to stem the word.
+     */
+    private long misses;
+
+    /**
+     * Lower case copy of the word being stemmed.
+     */
+    private char[] scratch = new char[SCRATCH_SIZE];
+
+    /**
+     * Constructor with the default cache size.
+     *
+     * @param target
+     *            receiver of the stems
+     */
+    public WordStemmer(WordTokenizer.Sink target) {
+        this(target, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     *            receiver of the stems
+     * @param cacheSize
+     *            the most words cached, rounded down to a power of 2
+     * @requires cacheSize >= 4
+     */
+    public WordStemmer(WordTokenizer.Sink target, int cacheSize) {
+        assert target != null : "Violation of: target is not null";
+        assert cacheSize >= WAYS : "Violation of: cacheSize >= 4";
+
+        this.target = target;
+        int sets = Integer.highestOneBit(cacheSize / WAYS);
+        this.setMask = sets - 1;
+        this.words = new String[sets * WAYS];
+        this.hashes = new int[sets * WAYS];
+        this.stems = new char[sets * WAYS][];
+        this.used = new long[sets * WAYS];
+    }
+
+    /**
+     * Returns the number of words stemmed or found in the cache so far.
+     *
+     * @return the number of words passed on
+     */
+    public long lookups() {
+        return this.clock;
+    }
+
+    /**
+     * Returns the number of words that were not in the cache and had to be
+     * stemmed.
+     *
+     * @return the number of cache misses
+     */
+    public long misses() {
+        return this.misses;
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        int hash = WordCountTable.hash(text, offset, length);
+        int h = hash * SPREAD;
+        int first = ((h ^ (h >>> 16)) & this.setMask) * WAYS;
+        int victim = first;
+        this.clock++;
+        for (int e = first; e < first + WAYS; e++) {
+            String word = this.words[e];
+            if (word == null) {
+                victim = e;
+                break;
+            }
+            if (this.hashes[e] == hash
+                    && WordCountTable.matches(word, text, offset, length)) {
+                this.used[e] = this.clock;
+                char[] stem = this.stems[e];
+                this.target.word(stem, 0, stem.length);
+                return;
+            }
+            if (this.used[e] < this.used[victim]) {
+                victim = e;
+            }
+        }
+
+        this.misses++;
+        char[] stem = this.stem(text, offset, length);
+        this.words[victim] = new String(text, offset, length);
+        this.hashes[victim] = hash;
+        this.stems[victim] = stem;
+        this.used[victim] = this.clock;
+        this.target.word(stem, 0, stem.length);
+    }
+
+    /**
+     * Returns the stem of {@code text[offset, offset + length)}: its Porter
+     * stem, in the case of the word, if it consists of ASCII letters, or the
+     * word itself otherwise.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @return a new array holding the stem
+     */
+    private char[] stem(char[] text, int offset, int length) {
+        if (length > this.scratch.length) {
+            this.scratch = new char[Math.max(length, this.scratch.length * 2)];
+        }
+        char[] lower = this.scratch;
+        for (int i = 0; i < length; i++) {
+            char c = text[offset + i];
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + CASE_OFFSET);
+            } else if (c < 'a' || c > 'z') {
+                char[] word = new char[length];
+                System.arraycopy(text, offset, word, 0, length);
+                return word;
+            }
+            lower[i] = c;
+        }
+
+        int n = this.porter.stem(lower, length);
+        char[] stem = new char[n];
+        for (int i = 0; i < n; i++) {
+            char c = text[offset + i];
+            if (c == lower[i] || c + CASE_OFFSET == lower[i]) {
+                stem[i] = c;
+            } else {
+                stem[i] = lower[i];
+            }
+        }
+        return stem;
+    }
+
+}
@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Allocation-free tokenizer that splits character buffers into "words" exactly
+ * the way {@code TagCloudGenerator.parseWordsInFile} does, without creating a
+ * {@code String} per scanned character.
+ *
+ * Separator membership is answered by a precomputed lookup table built once
+ * from the separator characters, so no {@code Character} boxing happens while
+ * scanning. Words are reported to a {@link Sink} as (buffer, offset, length)
+ * ranges, already case folded in place ("hELLO" becomes "Hello") unless the
+ * tokenizer was created not to fold.
+ *
+ * Line terminators ({@code '\n'} and {@code '\r'}) always end a word, because
+ * the original line-by-line reader never lets a word span two lines. Like that
+ * reader, when case folding changes the length of a word (for example "ß"
+ * becomes "Ss"), scanning resumes at the word start plus the folded length,
+ * but never past the end of the line.
+ *
+ * A tokenizer keeps a reusable read buffer, so a single instance must not be
+ * used by more than one thread at a time.
+ */
+public final class WordTokenizer {
+
+    /**
+     * Receiver for the words found by a {@code WordTokenizer}.
+     */
+    public interface Sink {
+        /**
+         * Called once for every word found, in input order. The characters in
+         * {@code text[offset, offset + length)} are only valid for the duration
+         * of the call.
+         *
+         * @param text
+         *            the buffer holding the case folded word
+         * @param offset
+         *            index of the first character of the word
+         * @param length
+         *            number of characters in the word
+         */
+        void word(char[] text, int offset, int length);
+    }
+
+    /**
+     * Initial size of the read buffer used by {@link #tokenize(Reader, Sink)}.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Size of the lookup table; covers all of ASCII even for separator sets
+     * that only contain low characters.
+     */
+    private static final int MIN_TABLE_SIZE = 128;
+
+    /**
+     * Largest ASCII character.
+     */
+    private static final char MAX_ASCII = 0x7F;
+
+    /**
+     * Distance between an ASCII lower case letter and its upper case form.
+     */
+    private static final int CASE_OFFSET = 'a' - 'A';
+
+    /**
+     * Separator lookup table: {@code separatorTable[c]} is true iff {@code c}
+     * is a separator. Characters beyond the table are never separators.
+     */
+    private final boolean[] separatorTable;
+
+    /**
+     * Whether words are case folded at all.
+     */
+    private final boolean folding;
+
+    /**
+     * Whether ASCII words can be folded in place; false when words are not
+     * folded, and for locales whose case mappings differ from plain ASCII
+     * (Turkish and Azeri dotless i).
+     */
+    private final boolean asciiFolding;
+
+    /**
+     * Reusable read buffer for {@link #tokenize(Reader, Sink)}.
+     */
+    private char[] buffer;
+
+    /**
+     * Reusable buffer for words whose folded form is produced by the
+     * {@code String} case mapping fallback.
+     */
+    private char[] scratch;
+
+    /**
+     * Number of characters at the start of {@code buffer} that belong to a
+     * word not finished by the last read.
+     */
+    private int carry;
+
+    /**
+     * Characters still to be skipped at the start of the next call to
+     * {@link #tokenize(char[], int, int, boolean, Sink)}, left over from a
+     * word whose folded form was longer than the word.
+     */
+    private int pendingSkip;
+
+    /**
+     * Number of characters read by {@link #tokenizeNext(Reader, Sink)}.
+     */
+    private long charsRead;
+
+    /**
+     * Constructor from a string of separator characters, as in
+     * {@code TagCloudGenerator.main}.
+     *
+     * @param separatorString
+     *            the characters that separate words
+     */
+    public WordTokenizer(String separatorString) {
+        this(separatorString, true);
+    }
+
+    /**
+     * Constructor from a string of separator characters, optionally reporting
+     * words exactly as they appear instead of case folded.
+     *
+     * @param separatorString
+     *            the characters that separate words
+     * @param folding
+     *            whether words are case folded
+     */
+    public WordTokenizer(String separatorString, boolean folding) {
+        assert separatorString != null : "Violation of: separatorString is not null";
+
+        char max = MAX_ASCII;
+        for (int i = 0; i < separatorString.length(); i++) {
+            max = (char) Math.max(max, separatorString.charAt(i));
+        }
+        this.separatorTable = new boolean[Math.max(MIN_TABLE_SIZE, max + 1)];
+        for (int i = 0; i < separatorString.length(); i++) {
+            this.separatorTable[separatorString.charAt(i)] = true;
+        }
+        this.separatorTable['\n'] = true;
+        this.separatorTable['\r'] = true;
+        this.folding = folding;
+        this.asciiFolding = folding && foldsAsciiPlainly(Locale.getDefault());
+        this.buffer = new char[BUFFER_SIZE];
+        this.scratch = new char[MIN_TABLE_SIZE];
+    }
+
+    /**
+     * Constructor from a separator set, as returned by
+     * {@code TagCloudGenerator.generateSeparatorSet}.
+     *
+     * @param separators
+     *            the set of separator characters
+     */
+    public WordTokenizer(Set<Character> separators) {
+        this(separatorString(separators));
+    }
+
+    /**
+     * Returns the characters of {@code separators} as a {@code String}.
+     *
+     * @param separators
+     *            the set of separator characters
+     * @return a string containing every character of {@code separators}
+     */
+    private static String separatorString(Set<Character> separators) {
+        assert separators != null : "Violation of: separators is not null";
+
+        StringBuilder sb = new StringBuilder(separators.size());
+        for (Character c : separators) {
+            sb.append(c.charValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reports whether ASCII letters have their plain ASCII case mappings in
+     * {@code locale}.
+     *
+     * @param locale
+     *            the locale used by {@code String.toUpperCase/toLowerCase}
+     * @return true iff ASCII words can be folded without the String fallback
+     */
+    private static boolean foldsAsciiPlainly(Locale locale) {
+        String language = locale.getLanguage();
+        return !language.equals("tr") && !language.equals("az");
+    }
+
+    /**
+     * Folds the case of {@code word} the way {@code parseWordsInFile} always
+     * has: upper case the whole word, then lower case everything after the
+     * first character.
+     *
+     * @param word
+     *            the word to fold
+     * @return the folded word
+     * @requires |word| > 0
+     */
+    public static String foldCase(String word) {
+        assert word != null : "Violation of: word is not null";
+        assert word.length() > 0 : "Violation of: |word| > 0";
+
+        String upper = word.toUpperCase();
+        char ch = upper.charAt(0);
+        return ch + upper.substring(1).toLowerCase();
+    }
+
+    /**
+     * Reports whether ASCII words are folded by plain ASCII case mapping, in
+     * which case their folded form has the same length as the word. This is
+     * false for a tokenizer that does not fold words at all.
+     *
+     * @return true iff ASCII words can be folded without the String fallback
+     */
+    public boolean foldsAsciiInPlace() {
+        return this.asciiFolding;
+    }
+
+    /**
+     * Returns the number of characters this tokenizer has read from
+     * {@code Reader}s.
+     *
+     * @return the number of characters read so far
+     */
+    public long charsRead() {
+        return this.charsRead;
+    }
+
+    /**
+     * Reports whether {@code c} separates words.
+     *
+     * @param c
+     *            the character to classify
+     * @return true iff {@code c} is a separator (or a line terminator)
+     */
+    public boolean isSeparator(char c) {
+        return c < this.separatorTable.length && this.separatorTable[c];
+    }
+
+    /**
+     * Scans {@code text[start, end)} and reports every complete word to
+     * {@code sink}. If {@code endOfInput} is false, a word that runs up to
+     * {@code end} may continue in data that has not been read yet, so it is
+     * not reported; its start index is returned instead.
+     *
+     * @param text
+     *            the characters to scan; words are folded in place
+     * @param start
+     *            index of the first character to scan
+     * @param end
+     *            index just past the last character to scan
+     * @param endOfInput
+     *            whether {@code text[end]} is the end of the input
+     * @param sink
+     *            receiver of the words found
+     * @return the index of the first character that was not consumed:
+     *         {@code end}, or the start of an unfinished trailing word
+     * @updates text
+     * @requires 0 <= start <= end <= |text|
+     */
+    public int tokenize(char[] text, int start, int end, boolean endOfInput,
+            Sink sink) {
+        assert text != null : "Violation of: text is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert 0 <= start && start <= end
+                && end <= text.length : "Violation of: 0 <= start <= end <= |text|";
+
+        int i = this.skip(text, start, end, endOfInput);
+        while (i < end) {
+            if (this.isSeparator(text[i])) {
+                i++;
+            } else {
+                int wordStart = i;
+                i++;
+                while (i < end && !this.isSeparator(text[i])) {
+                    i++;
+                }
+                if (i == end && !endOfInput) {
+                    return wordStart;
+                }
+                int resume = wordStart
+                        + this.emitWord(text, wordStart, i - wordStart, sink);
+                if (resume < i) {
+                    i = resume;
+                } else if (resume > i) {
+                    this.pendingSkip = resume - i;
+                    i = this.skip(text, i, end, endOfInput);
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Skips up to {@code pendingSkip} characters of {@code text[start, end)},
+     * stopping early at a line terminator.
+     *
+     * @param text
+     *            the characters being scanned
+     * @param start
+     *            index of the first character to skip
+     * @param end
+     *            index just past the last character that may be skipped
+     * @param endOfInput
+     *            whether {@code text[end]} is the end of the input
+     * @return the index of the first character not skipped
+     * @updates this.pendingSkip
+     */
+    private int skip(char[] text, int start, int end, boolean endOfInput) {
+        int i = start;
+        while (this.pendingSkip > 0 && i < end && text[i] != '\n'
+                && text[i] != '\r') {
+            i++;
+            this.pendingSkip--;
+        }
+        if (i < end || endOfInput) {
+            this.pendingSkip = 0;
+        }
+        return i;
+    }
+
+    /**
+     * Reads {@code in} to the end and reports every word in it to
+     * {@code sink}. Words may span reads; they are carried over in the
+     * tokenizer's buffer, which grows for words longer than it.
+     *
+     * @param in
+     *            the input to tokenize
+     * @param sink
+     *            receiver of the words found
+     * @throws IOException
+     *             if reading {@code in} fails
+     * @updates in
+     * @ensures in.content = <>
+     */
+    public void tokenize(Reader in, Sink sink) throws IOException {
+        assert in != null : "Violation of: in is not null";
+        assert sink != null : "Violation of: sink is not null";
+
+        while (this.tokenizeNext(in, sink)) {
+            /*
+             * Keep reading blocks until the end of the input
+             */
+        }
+    }
+
+    /**
+     * Reads one block from {@code in} and reports the words it completes to
+     * {@code sink}. A word running up to the end of the block is carried over
+     * to the next call; at the end of the input it is reported and the
+     * tokenizer is ready for a new input. This lets a caller interleave
+     * tokenizing with other work, for example while following a growing
+     * input.
+     *
+     * @param in
+     *            the input to tokenize
+     * @param sink
+     *            receiver of the words found
+     * @return false iff the end of {@code in} has been reached
+     * @throws IOException
+     *             if reading {@code in} fails
+     * @updates in, this
+     */
+    public boolean tokenizeNext(Reader in, Sink sink) throws IOException {
+        assert in != null : "Violation of: in is not null";
+        assert sink != null : "Violation of: sink is not null";
+
+        if (this.carry == this.buffer.length) {
+            char[] grown = new char[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, grown, 0, this.carry);
+            this.buffer = grown;
+        }
+        int n = in.read(this.buffer, this.carry,
+                this.buffer.length - this.carry);
+        if (n == -1) {
+            this.tokenize(this.buffer, 0, this.carry, true, sink);
+            this.carry = 0;
+            return false;
+        }
+        this.charsRead += n;
+        int limit = this.carry + n;
+        int consumed = this.tokenize(this.buffer, 0, limit, false, sink);
+        this.carry = limit - consumed;
+        System.arraycopy(this.buffer, consumed, this.buffer, 0, this.carry);
+        return true;
+    }
+
+    /**
+     * Case folds the word {@code text[offset, offset + length)} and reports it
+     * to {@code sink}. ASCII words are folded in place; any other word goes
+     * through {@link #foldCase(String)} into a scratch buffer, because its
+     * folded form may have a different length. A tokenizer that does not fold
+     * reports the word as it is.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @param sink
+     *            receiver of the folded word
+     * @return the length of the folded word
+     * @updates text
+     * @requires length > 0
+     */
+    public int emitWord(char[] text, int offset, int length, Sink sink) {
+        assert length > 0 : "Violation of: length > 0";
+
+        if (!this.folding || (this.asciiFolding
+                && this.foldAscii(text, offset, length))) {
+            sink.word(text, offset, length);
+            return length;
+        } else {
+            String folded = foldCase(new String(text, offset, length));
+            int n = folded.length();
+            if (n > this.scratch.length) {
+                this.scratch = new char[Math.max(n, this.scratch.length * 2)];
+            }
+            folded.getChars(0, n, this.scratch, 0);
+            sink.word(this.scratch, 0, n);
+            return n;
+        }
+    }
+
+    /**
+     * Folds an ASCII word in place. Stops at the first non-ASCII character;
+     * the characters folded before it stay folded, which does not change the
+     * result of the {@code String} fallback.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @return true iff the whole word was ASCII and has been folded
+     * @updates text
+     */
+    private boolean foldAscii(char[] text, int offset, int length) {
+        char c = text[offset];
+        if (c > MAX_ASCII) {
+            return false;
+        }
+        if (c >= 'a' && c <= 'z') {
+            text[offset] = (char) (c - CASE_OFFSET);
+        }
+        int end = offset + length;
+        for (int i = offset + 1; i < end; i++) {
+            c = text[i];
+            if (c > MAX_ASCII) {
+                return false;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                text[i] = (char) (c + CASE_OFFSET);
+            }
+        }
+        return true;
+    }
+
+}
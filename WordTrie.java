@@ -0,0 +1,426 @@
+import java.util.Arrays;
+
+/**
+ * Character trie from words to {@code int} occurrence counts, an alternative
+ * to {@code WordCountTable} that keeps the vocabulary in alphabetical order.
+ *
+ * Every node stands for one prefix and is stored as an index into parallel
+ * arrays: its last character, its first child, its next sibling and the
+ * count of the word ending there. Siblings are kept sorted by character, so
+ * words sharing a prefix ("count", "counts", "counted") store it once, no
+ * {@code String} is kept per word, and an in-order walk visits the words in
+ * {@code String.compareTo} order. The children of the root, which are
+ * searched for every word, are also indexed directly by character when they
+ * are ASCII.
+ *
+ * {@link #top(int)} therefore needs no sort: one pass over the counts finds
+ * the smallest count in the top {@code k}, and one in-order walk emits the
+ * selected words already in the alphabetical order {@code outputBody}
+ * consumes.
+ */
+public final class WordTrie implements WordCounter {
+
+    /**
+     * Index of the root node, which stands for the empty prefix. Since the
+     * root is nobody's child or sibling, it also marks "no node" in
+     * {@code firstChild} and {@code nextSibling}.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * Characters below this have a direct entry in {@code rootIndex}.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Default number of nodes the trie is sized for.
+     */
+    private static final int DEFAULT_NODES = 1024;
+
+    /**
+     * Last character of the prefix of each node.
+     */
+    private char[] labels;
+
+    /**
+     * First (smallest) child of each node, or {@code ROOT} if none.
+     */
+    private int[] firstChild;
+
+    /**
+     * Next larger sibling of each node, or {@code ROOT} if none.
+     */
+    private int[] nextSibling;
+
+    /**
+     * Count of the word ending at each node, 0 if the prefix is not a word.
+     */
+    private int[] counts;
+
+    /**
+     * Child of the root for each ASCII character, or {@code ROOT} if none.
+     */
+    private final int[] rootIndex = new int[ASCII];
+
+    /**
+     * Number of nodes, the root included.
+     */
+    private int nodes;
+
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+
+    /**
+     * Sum of all counts.
+     */
+    private long total;
+
+    /**
+     * Length of the longest word.
+     */
+    private int maxLength;
+
+    /**
+     * No-argument constructor.
+     */
+    public WordTrie() {
+        this(DEFAULT_NODES);
+    }
+
+    /**
+     * Constructor for a trie expected to hold about {@code expected} nodes
+     * (distinct prefixes) before it has to grow.
+     *
+     * @param expected
+     *            the expected number of nodes
+     * @requires expected >= 0
+     */
+    public WordTrie(int expected) {
+        assert expected >= 0 : "Violation of: expected >= 0";
+
+        int capacity = Math.max(expected, 2);
+        this.labels = new char[capacity];
+        this.firstChild = new int[capacity];
+        this.nextSibling = new int[capacity];
+        this.counts = new int[capacity];
+        this.nodes = 1;
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        this.add(text, offset, length, 1);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the word
+     * {@code text[offset, offset + length)}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @param count
+     *            the number of occurrences to add
+     * @updates this
+     * @requires length > 0 and count > 0
+     */
+    public void add(char[] text, int offset, int length, int count) {
+        assert text != null : "Violation of: text is not null";
+        assert length > 0 : "Violation of: length > 0";
+        assert count > 0 : "Violation of: count > 0";
+
+        char first = text[offset];
+        int node;
+        if (first < ASCII) {
+            node = this.rootIndex[first];
+            if (node == ROOT) {
+                node = this.child(ROOT, first);
+                this.rootIndex[first] = node;
+            }
+        } else {
+            node = this.child(ROOT, first);
+        }
+        int end = offset + length;
+        for (int i = offset + 1; i < end; i++) {
+            node = this.child(node, text[i]);
+        }
+        if (this.counts[node] == 0) {
+            this.size++;
+            this.maxLength = Math.max(this.maxLength, length);
+        }
+        this.counts[node] += count;
+        this.total += count;
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the number of occurrences to add
+     * @updates this
+     * @requires |word| > 0 and count > 0
+     */
+    public void add(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+
+        this.add(word.toCharArray(), 0, word.length(), count);
+    }
+
+    /**
+     * Returns the child of {@code parent} labelled {@code c}, inserting it in
+     * sibling order if it does not exist yet.
+     *
+     * @param parent
+     *            the parent node
+     * @param c
+     *            the label of the child
+     * @return the child node
+     * @updates this
+     */
+    private int child(int parent, char c) {
+        int previous = ROOT;
+        int node = this.firstChild[parent];
+        while (node != ROOT && this.labels[node] < c) {
+            previous = node;
+            node = this.nextSibling[node];
+        }
+        if (node != ROOT && this.labels[node] == c) {
+            return node;
+        }
+
+        if (this.nodes == this.labels.length) {
+            this.grow();
+        }
+        int added = this.nodes;
+        this.nodes++;
+        this.labels[added] = c;
+        this.nextSibling[added] = node;
+        if (previous == ROOT) {
+            this.firstChild[parent] = added;
+        } else {
+            this.nextSibling[previous] = added;
+        }
+        return added;
+    }
+
+    /**
+     * Doubles the capacity of the node arrays.
+     */
+    private void grow() {
+        int capacity = this.labels.length * 2;
+        this.labels = Arrays.copyOf(this.labels, capacity);
+        this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+        this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+        this.counts = Arrays.copyOf(this.counts, capacity);
+    }
+
+    /**
+     * Returns the count of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return the number of occurrences of {@code word}, 0 if it was never
+     *         added
+     */
+    public int count(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        int node = ROOT;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            node = this.firstChild[node];
+            while (node != ROOT && this.labels[node] < c) {
+                node = this.nextSibling[node];
+            }
+            if (node == ROOT || this.labels[node] != c) {
+                return 0;
+            }
+        }
+        return this.counts[node];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public long totalCount() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of nodes, the root included.
+     *
+     * @return the number of distinct prefixes plus one
+     */
+    public int nodeCount() {
+        return this.nodes;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        final int perNode = Character.BYTES + Integer.BYTES + Integer.BYTES
+                + Integer.BYTES;
+        return (long) this.labels.length * perNode
+                + (long) ASCII * Integer.BYTES;
+    }
+
+    /**
+     * Removes every word, keeping the allocated arrays for reuse.
+     *
+     * @clears this
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.firstChild, 0, this.nodes, ROOT);
+        Arrays.fill(this.counts, 0, this.nodes, 0);
+        Arrays.fill(this.rootIndex, ROOT);
+        this.nodes = 1;
+        this.size = 0;
+        this.total = 0;
+        this.maxLength = 0;
+    }
+
+    @Override
+    public TopWords top(int k) {
+        assert k > 0 : "Violation of: k > 0";
+
+        PipelineStage stage = PipelineStage.start("trieTopWords");
+
+        /*
+         * Pass 1: keep the k largest counts in a min-heap. Its root is the
+         * smallest count selected; every larger count is in the heap, so the
+         * words tied at the root count that still fit are k minus those
+         */
+        int[] heap = new int[Math.min(k, Math.max(this.size, 1))];
+        int heapSize = 0;
+        for (int node = 1; node < this.nodes; node++) {
+            int count = this.counts[node];
+            if (count == 0) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = count;
+                siftUp(heap, heapSize);
+                heapSize++;
+            } else if (count > heap[0]) {
+                heap[0] = count;
+                siftDown(heap, heapSize, 0);
+            }
+        }
+        int threshold = heapSize < heap.length || heapSize == 0 ? 1 : heap[0];
+        int ties = heapSize;
+        for (int i = 0; i < heapSize; i++) {
+            if (heap[i] > threshold) {
+                ties--;
+            }
+        }
+
+        /*
+         * Pass 2: walk the trie in order, so words come out alphabetically;
+         * ties at the threshold are taken first come, first served, which is
+         * the alphabetical tie break of numericalSort/alphabeticalSort
+         */
+        String[] words = new String[heapSize];
+        int[] wordCounts = new int[heapSize];
+        int selected = 0;
+        char[] path = new char[Math.max(this.maxLength, 1)];
+        int[] parents = new int[path.length];
+        int depth = 0;
+        int node = this.firstChild[ROOT];
+        while (node != ROOT && selected < heapSize) {
+            path[depth] = this.labels[node];
+            int count = this.counts[node];
+            if (count > threshold || (count == threshold && ties > 0)) {
+                if (count == threshold) {
+                    ties--;
+                }
+                words[selected] = new String(path, 0, depth + 1);
+                wordCounts[selected] = count;
+                selected++;
+            }
+            if (this.firstChild[node] != ROOT) {
+                parents[depth] = node;
+                depth++;
+                node = this.firstChild[node];
+            } else {
+                /*
+                 * Leaf: move on to the next sibling of the deepest ancestor
+                 * (or of the node itself) that has one
+                 */
+                while (this.nextSibling[node] == ROOT && depth > 0) {
+                    depth--;
+                    node = parents[depth];
+                }
+                node = this.nextSibling[node];
+            }
+        }
+
+        TopWords top = new TopWords(words, wordCounts);
+        stage.end(0, 0, this.size,
+                stage.recording() ? this.estimatedBytes() : 0);
+        return top;
+    }
+
+    /**
+     * Restores the min-heap property of {@code heap} from entry {@code i}
+     * towards the root.
+     *
+     * @param heap
+     *            the heap
+     * @param i
+     *            index of the entry to move up
+     * @updates heap
+     */
+    private static void siftUp(int[] heap, int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (heap[child] >= heap[parent]) {
+                return;
+            }
+            int c = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = c;
+            child = parent;
+        }
+    }
+
+    /**
+     * Restores the min-heap property of {@code heap[0, size)} from entry
+     * {@code i} towards the leaves.
+     *
+     * @param heap
+     *            the heap
+     * @param size
+     *            number of entries in the heap
+     * @param i
+     *            index of the entry to move down
+     * @updates heap
+     */
+    private static void siftDown(int[] heap, int size, int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < size) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= heap[parent]) {
+                return;
+            }
+            int c = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = c;
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package tagcloud.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of concurrent ingest: the corpus, cut into message-sized
+ * fragments, is pushed into one {@code ConcurrentWordCounter} by
+ * {@code producers} threads, each taking every {@code producers}-th
+ * fragment, and the cloud is selected once they have all flushed. MB/s
+ * against {@code producers} shows how ingest scales with the number of
+ * cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentBenchmarks {
+
+    /**
+     * Approximate length of one fragment, in characters.
+     */
+    private static final int FRAGMENT_LENGTH = 200;
+
+    /**
+     * Number of producer threads.
+     */
+    @Param({ "1", "2", "4", "8" })
+    public int producers;
+
+    /**
+     * The corpus cut into fragments at word boundaries.
+     */
+    private String[] fragments;
+
+    /**
+     * The producer threads.
+     */
+    private ExecutorService pool;
+
+    /**
+     * Cuts the corpus into fragments and starts the producers.
+     *
+     * @param corpus
+     *            the corpus
+     */
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) {
+        List<String> cut = new ArrayList<>();
+        String text = corpus.text;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf(' ',
+                    Math.min(start + FRAGMENT_LENGTH, text.length()));
+            if (end < 0) {
+                end = text.length();
+            }
+            cut.add(text.substring(start, end));
+            start = end;
+        }
+        this.fragments = cut.toArray(new String[0]);
+        this.pool = Executors.newFixedThreadPool(this.producers);
+    }
+
+    /**
+     * Stops the producers.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Ingests the corpus on {@code producers} threads and selects the cloud.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @return the {@code TopWords} of the cloud
+     * @throws Throwable
+     *             if a producer fails
+     */
+    @Benchmark
+    public Object ingest(Corpus corpus, Throughput throughput)
+            throws Throwable {
+        Object counter = TagCloud.newConcurrentCounter(TagCloud.SEPARATORS);
+        String[] cut = this.fragments;
+        int step = this.producers;
+        List<Future<Void>> running = new ArrayList<>(step);
+        for (int p = 0; p < step; p++) {
+            int first = p;
+            Callable<Void> producer = () -> {
+                try {
+                    for (int i = first; i < cut.length; i += step) {
+                        TagCloud.concurrentAdd(counter, cut[i]);
+                    }
+                    TagCloud.concurrentFlush(counter);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            };
+            running.add(this.pool.submit(producer));
+        }
+        for (Future<Void> f : running) {
+            f.get();
+        }
+        Object cloud = TagCloud.concurrentTop(counter, corpus.cloudWords);
+        throughput.processed(corpus);
+        return cloud;
+    }
+
+}
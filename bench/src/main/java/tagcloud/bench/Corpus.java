@@ -0,0 +1,161 @@
+package tagcloud.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A generated Zipfian corpus, written to a temporary file once per trial,
+ * together with the intermediate results each pipeline stage takes as input.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+    /**
+     * Bytes per megabyte.
+     */
+    static final double BYTES_PER_MB = 1 << 20;
+
+    /**
+     * Size of the corpus, in megabytes.
+     */
+    @Param("16")
+    public int sizeMb;
+
+    /**
+     * Number of distinct words.
+     */
+    @Param("100000")
+    public int vocabulary;
+
+    /**
+     * Zipf exponent of the word frequencies.
+     */
+    @Param("1.0")
+    public double exponent;
+
+    /**
+     * Random seed of the generator.
+     */
+    @Param("42")
+    public long seed;
+
+    /**
+     * Number of words in the tag cloud.
+     */
+    @Param("100")
+    public int cloudWords;
+
+    /**
+     * The corpus file.
+     */
+    Path file;
+
+    /**
+     * Size of the corpus, in megabytes.
+     */
+    double megabytes;
+
+    /**
+     * Number of words in the corpus.
+     */
+    long tokens;
+
+    /**
+     * The whole corpus as one string.
+     */
+    String text;
+
+    /**
+     * The default separator set.
+     */
+    Set<Character> separators;
+
+    /**
+     * Output of {@code parseWordsInFile} for the corpus.
+     */
+    SortedMap<String, Integer> counts;
+
+    /**
+     * Output of {@code numericalSort} for {@code counts}.
+     */
+    List<Object> sorted;
+
+    /**
+     * Output of {@code alphabeticalSort} for {@code sorted}.
+     */
+    SortedMap<String, Integer> cloud;
+
+    /**
+     * Highest count in {@code cloud}.
+     */
+    int maxCount;
+
+    /**
+     * The words of {@code cloud}, as a {@code TopWords}.
+     */
+    Object topWords;
+
+    /**
+     * Generates the corpus and the inputs of every stage.
+     *
+     * @throws Throwable
+     *             if the corpus cannot be written or a stage fails
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        this.file = Files.createTempFile("zipf-corpus", ".txt");
+        ZipfCorpus corpus = new ZipfCorpus(this.file,
+                (long) (this.sizeMb * BYTES_PER_MB), this.vocabulary,
+                this.exponent, this.seed);
+        this.megabytes = corpus.bytes() / BYTES_PER_MB;
+        this.tokens = corpus.tokens();
+        this.text = new String(Files.readAllBytes(this.file),
+                StandardCharsets.US_ASCII);
+        this.separators = TagCloud.generateSeparatorSet(TagCloud.SEPARATORS);
+        try (BufferedReader in = Files.newBufferedReader(this.file)) {
+            this.counts = TagCloud.parseWordsInFile(in, this.separators);
+        }
+        this.sorted = TagCloud.numericalSort(this.counts);
+        this.cloud = TagCloud.alphabeticalSort(
+                TagCloud.numericalSort(this.counts),
+                Math.min(this.cloudWords, this.counts.size()));
+        this.maxCount = this.cloud.values().stream().mapToInt(i -> i).max()
+                .orElse(1);
+        try (BufferedReader in = Files.newBufferedReader(this.file)) {
+            this.topWords = TagCloud.select(
+                    TagCloud.countWordsInFile(in,
+                            TagCloud.newTokenizer(TagCloud.SEPARATORS)),
+                    Math.max(this.cloud.size(), 1));
+        }
+        /*
+         * Printed so allocation per token can be read off gc.alloc.rate.norm
+         */
+        System.out.printf("%ncorpus: %.1f MB, %d tokens, %d distinct words%n",
+                this.megabytes, this.tokens, this.counts.size());
+    }
+
+    /**
+     * Deletes the corpus file.
+     *
+     * @throws IOException
+     *             if the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+}
@@ -0,0 +1,247 @@
+package tagcloud.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Comparison of the structures words can be counted in, from counting to the
+ * alphabetical top words {@code outputBody} consumes: a
+ * {@code TreeMap<String, Integer>} followed by
+ * {@code numericalSort}/{@code alphabeticalSort}, {@code WordCountTable}
+ * with {@code TopWords.select}, and {@code WordTrie} with its in-order
+ * selection.
+ *
+ * All three count the same pre-tokenized, case folded words, so only the
+ * structures differ. Their retained heap sizes are printed once per trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CounterBenchmarks {
+
+    /**
+     * The case folded words of the corpus, in order, packed into one buffer.
+     */
+    @State(Scope.Benchmark)
+    public static class Words {
+
+        /**
+         * The words, back to back.
+         */
+        char[] text;
+
+        /**
+         * End of each word in {@code text}; word {@code i} starts at the end
+         * of word {@code i - 1}.
+         */
+        int[] ends;
+
+        /**
+         * Tokenizes the corpus and reports the heap retained by each
+         * structure once it holds the counts of the whole corpus.
+         *
+         * @param corpus
+         *            the corpus
+         * @throws Throwable
+         *             if a structure fails
+         */
+        @Setup(Level.Trial)
+        public void setUp(Corpus corpus) throws Throwable {
+            StringBuilder text = new StringBuilder();
+            int[] ends = new int[(int) Math.min(corpus.tokens, 1 << 20)];
+            int words = 0;
+            int position = 0;
+            while (position < corpus.text.length()) {
+                String piece = TagCloud.nextWordOrSeparator(corpus.text,
+                        position, corpus.separators);
+                if (!corpus.separators.contains(piece.charAt(0))) {
+                    text.append(TagCloud.foldCase(piece));
+                    if (words == ends.length) {
+                        ends = Arrays.copyOf(ends, words * 2);
+                    }
+                    ends[words] = text.length();
+                    words++;
+                }
+                position += piece.length();
+            }
+            this.text = text.toString().toCharArray();
+            this.ends = Arrays.copyOf(ends, words);
+
+            long before = usedHeap();
+            SortedMap<String, Integer> map = countTreeMap(this);
+            long mapBytes = usedHeap() - before;
+            before = usedHeap();
+            Object table = countTable(this);
+            long tableBytes = usedHeap() - before;
+            before = usedHeap();
+            Object trie = countTrie(this);
+            long trieBytes = usedHeap() - before;
+            System.out.printf(
+                    "%nretained heap for %d distinct words: TreeMap %.1f MB,"
+                            + " WordCountTable %.1f MB (estimated %.1f),"
+                            + " WordTrie %.1f MB (estimated %.1f)%n",
+                    map.size(), mapBytes / Corpus.BYTES_PER_MB,
+                    tableBytes / Corpus.BYTES_PER_MB,
+                    TagCloud.estimatedBytes(table) / Corpus.BYTES_PER_MB,
+                    trieBytes / Corpus.BYTES_PER_MB,
+                    TagCloud.estimatedBytes(trie) / Corpus.BYTES_PER_MB);
+        }
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     *
+     * @return the used heap, in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Counts {@code words} in a {@code TreeMap}, creating a {@code String}
+     * per word as a {@code TreeMap} lookup requires.
+     *
+     * @param words
+     *            the words
+     * @return the counts
+     */
+    private static SortedMap<String, Integer> countTreeMap(Words words) {
+        SortedMap<String, Integer> map = new TreeMap<>();
+        int start = 0;
+        for (int end : words.ends) {
+            map.merge(new String(words.text, start, end - start), 1,
+                    Integer::sum);
+            start = end;
+        }
+        return map;
+    }
+
+    /**
+     * Counts {@code words} in a {@code WordCountTable}.
+     *
+     * @param words
+     *            the words
+     * @return the table
+     * @throws Throwable
+     *             if the table fails
+     */
+    private static Object countTable(Words words) throws Throwable {
+        Object table = TagCloud.newTable();
+        int start = 0;
+        for (int end : words.ends) {
+            TagCloud.tableAdd(table, words.text, start, end - start, 1);
+            start = end;
+        }
+        return table;
+    }
+
+    /**
+     * Counts {@code words} in a {@code WordTrie}.
+     *
+     * @param words
+     *            the words
+     * @return the trie
+     * @throws Throwable
+     *             if the trie fails
+     */
+    private static Object countTrie(Words words) throws Throwable {
+        Object trie = TagCloud.newTrie();
+        int start = 0;
+        for (int end : words.ends) {
+            TagCloud.trieAdd(trie, words.text, start, end - start, 1);
+            start = end;
+        }
+        return trie;
+    }
+
+    /**
+     * Counts the words in a {@code TreeMap} and picks the cloud with
+     * {@code numericalSort} and {@code alphabeticalSort}.
+     *
+     * @param corpus
+     *            the corpus
+     * @param words
+     *            the words of the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @return the words of the cloud, sorted by word
+     * @throws Throwable
+     *             if a stage fails
+     */
+    @Benchmark
+    public SortedMap<String, Integer> treeMap(Corpus corpus, Words words,
+            Throughput throughput) throws Throwable {
+        SortedMap<String, Integer> map = countTreeMap(words);
+        List<Object> sorted = TagCloud.numericalSort(map);
+        SortedMap<String, Integer> cloud = TagCloud.alphabeticalSort(sorted,
+                Math.min(corpus.cloudWords, map.size()));
+        throughput.processed(corpus);
+        return cloud;
+    }
+
+    /**
+     * Counts the words in a {@code WordCountTable} and picks the cloud with
+     * {@code TopWords.select}.
+     *
+     * @param corpus
+     *            the corpus
+     * @param words
+     *            the words of the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @return the {@code TopWords} of the cloud
+     * @throws Throwable
+     *             if a stage fails
+     */
+    @Benchmark
+    public Object table(Corpus corpus, Words words, Throughput throughput)
+            throws Throwable {
+        Object cloud = TagCloud.top(countTable(words), corpus.cloudWords);
+        throughput.processed(corpus);
+        return cloud;
+    }
+
+    /**
+     * Counts the words in a {@code WordTrie} and picks the cloud with an
+     * in-order walk.
+     *
+     * @param corpus
+     *            the corpus
+     * @param words
+     *            the words of the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @return the {@code TopWords} of the cloud
+     * @throws Throwable
+     *             if a stage fails
+     */
+    @Benchmark
+    public Object trie(Corpus corpus, Words words, Throughput throughput)
+            throws Throwable {
+        Object cloud = TagCloud.top(countTrie(words), corpus.cloudWords);
+        throughput.processed(corpus);
+        return cloud;
+    }
+
+}
@@ -0,0 +1,126 @@
+package tagcloud.bench;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of a whole run, from the corpus file to the finished page (which
+ * is discarded).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmarks {
+
+    /**
+     * The path {@code TagCloudGenerator.main} takes for files in a splittable
+     * charset: parallel count, top-k selection, page.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @throws Throwable
+     *             if a stage fails
+     */
+    @Benchmark
+    public void parallel(Corpus corpus, Throughput throughput)
+            throws Throwable {
+        Object table = TagCloud.parallelCount(
+                TagCloud.newParallelCounter(TagCloud.SEPARATORS), corpus.file);
+        render(corpus, table);
+        throughput.processed(corpus);
+    }
+
+    /**
+     * The path {@code TagCloudGenerator.main} takes for other charsets:
+     * sequential count through a {@code Reader}, top-k selection, page.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @throws Throwable
+     *             if a stage fails
+     */
+    @Benchmark
+    public void sequential(Corpus corpus, Throughput throughput)
+            throws Throwable {
+        Object table;
+        try (BufferedReader in = Files.newBufferedReader(corpus.file)) {
+            table = TagCloud.countWordsInFile(in,
+                    TagCloud.newTokenizer(TagCloud.SEPARATORS));
+        }
+        render(corpus, table);
+        throughput.processed(corpus);
+    }
+
+    /**
+     * The original pipeline built from the public stages:
+     * {@code parseWordsInFile}, {@code numericalSort},
+     * {@code alphabeticalSort}, {@code outputHeader} and {@code outputBody}.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @throws Throwable
+     *             if a stage fails
+     */
+    @Benchmark
+    public void stages(Corpus corpus, Throughput throughput) throws Throwable {
+        SortedMap<String, Integer> counts;
+        try (BufferedReader in = Files.newBufferedReader(corpus.file)) {
+            counts = TagCloud.parseWordsInFile(in,
+                    TagCloud.generateSeparatorSet(TagCloud.SEPARATORS));
+        }
+        int n = Math.min(corpus.cloudWords, counts.size());
+        SortedMap<String, Integer> cloud = TagCloud
+                .alphabeticalSort(TagCloud.numericalSort(counts), n);
+        int maxCount = 1;
+        for (int count : cloud.values()) {
+            maxCount = Math.max(maxCount, count);
+        }
+        PrintWriter html = new PrintWriter(Writer.nullWriter());
+        TagCloud.outputHeader(html, corpus.file.toString(), n);
+        TagCloud.outputBody(cloud, html, maxCount);
+        html.println("</body>");
+        html.println("</html>");
+        html.flush();
+        throughput.processed(corpus);
+    }
+
+    /**
+     * Selects the top words of {@code table} and writes their page to a
+     * discarding writer.
+     *
+     * @param corpus
+     *            the corpus
+     * @param table
+     *            the {@code WordCountTable} of the corpus
+     * @throws Throwable
+     *             if a stage fails
+     */
+    private static void render(Corpus corpus, Object table) throws Throwable {
+        int n = Math.min(corpus.cloudWords, TagCloud.tableSize(table));
+        PrintWriter html = new PrintWriter(Writer.nullWriter());
+        TagCloud.outputTagCloud(html, corpus.file.toString(), n,
+                TagCloud.select(table, Math.max(n, 1)));
+        html.flush();
+    }
+
+}
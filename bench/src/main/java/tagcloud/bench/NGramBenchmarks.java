@@ -0,0 +1,125 @@
+package tagcloud.bench;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Phrase clouds against word clouds: the corpus is scanned into a
+ * {@code WordCountTable} ({@code n=1}) or an {@code NGramCounter} of
+ * {@code n}-word phrases, and the cloud is selected from it. The estimated
+ * heap size of each counter is printed once per trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class NGramBenchmarks {
+
+    /**
+     * Upper bound on the size of one mapped window.
+     */
+    private static final int WINDOW_SIZE = 256 << 20;
+
+    /**
+     * Number of words per phrase; 1 counts single words.
+     */
+    @Param({ "1", "2", "3" })
+    public int n;
+
+    /**
+     * The scanner, a {@code MappedWordScanner}.
+     */
+    private Object scanner;
+
+    /**
+     * The open corpus file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Creates the scanner, opens the corpus and reports the size of a
+     * counter holding all of it.
+     *
+     * @param corpus
+     *            the corpus
+     * @throws Throwable
+     *             if the file cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) throws Throwable {
+        this.scanner = TagCloud.newScanner(
+                TagCloud.newTokenizer(TagCloud.SEPARATORS),
+                StandardCharsets.US_ASCII, WINDOW_SIZE, false);
+        this.channel = FileChannel.open(corpus.file);
+        System.out.printf("%nestimated counter size: %.1f MB%n",
+                TagCloud.estimatedBytes(this.count())
+                        / Corpus.BYTES_PER_MB);
+    }
+
+    /**
+     * Closes the corpus.
+     *
+     * @throws Exception
+     *             if the file cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.channel.close();
+    }
+
+    /**
+     * Counts the corpus into a new counter for {@code n}.
+     *
+     * @return the counter
+     * @throws Throwable
+     *             if the file cannot be read
+     */
+    private Object count() throws Throwable {
+        Object counter;
+        if (this.n == 1) {
+            counter = TagCloud.newTable();
+        } else {
+            counter = TagCloud.newNGramCounter(this.n);
+        }
+        TagCloud.scan(this.scanner, this.channel, 0, this.channel.size(),
+                counter);
+        return counter;
+    }
+
+    /**
+     * Counts the corpus and selects the cloud.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @return the {@code TopWords} of the cloud
+     * @throws Throwable
+     *             if the file cannot be read
+     */
+    @Benchmark
+    public Object cloud(Corpus corpus, Throughput throughput)
+            throws Throwable {
+        Object cloud = TagCloud.top(this.count(), corpus.cloudWords);
+        throughput.processed(corpus);
+        return cloud;
+    }
+
+}
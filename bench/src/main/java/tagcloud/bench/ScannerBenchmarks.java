@@ -0,0 +1,121 @@
+package tagcloud.bench;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanning the corpus from a memory-mapped file with {@code MappedWordScanner},
+ * with and without its Vector API path. The forks run with the
+ * {@code jdk.incubator.vector} module, so {@code vectorize=true} uses SIMD
+ * instructions whenever the CPU has vectors of at least 32 bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules",
+        "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class ScannerBenchmarks {
+
+    /**
+     * Upper bound on the size of one mapped window.
+     */
+    private static final int WINDOW_SIZE = 256 << 20;
+
+    /**
+     * Whether the scanner may use the Vector API path.
+     */
+    @Param({ "false", "true" })
+    public boolean vectorize;
+
+    /**
+     * The scanner, a {@code MappedWordScanner}.
+     */
+    private Object scanner;
+
+    /**
+     * The open corpus file.
+     */
+    private FileChannel channel;
+
+    /**
+     * The table the words are counted in, a {@code WordCountTable}.
+     */
+    private Object table;
+
+    /**
+     * Creates the scanner and opens the corpus.
+     *
+     * @param corpus
+     *            the corpus
+     * @throws Throwable
+     *             if the file cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) throws Throwable {
+        this.scanner = TagCloud.newScanner(
+                TagCloud.newTokenizer(TagCloud.SEPARATORS),
+                StandardCharsets.US_ASCII, WINDOW_SIZE, this.vectorize);
+        System.out.printf("%nvectorized: %b%n",
+                TagCloud.vectorized(this.scanner));
+        this.channel = FileChannel.open(corpus.file);
+    }
+
+    /**
+     * Creates a table for every iteration. Every pass adds to it, so after the
+     * first pass it no longer grows and the benchmark measures scanning and
+     * counting only.
+     *
+     * @throws Throwable
+     *             if the table cannot be created
+     */
+    @Setup(Level.Iteration)
+    public void newTable() throws Throwable {
+        this.table = TagCloud.newTable();
+    }
+
+    /**
+     * Closes the corpus.
+     *
+     * @throws Exception
+     *             if the file cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.channel.close();
+    }
+
+    /**
+     * Scans the whole corpus, counting its words.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @throws Throwable
+     *             if the file cannot be read
+     */
+    @Benchmark
+    public void scan(Corpus corpus, Throughput throughput) throws Throwable {
+        TagCloud.scan(this.scanner, this.channel, 0, this.channel.size(),
+                this.table);
+        throughput.processed(corpus);
+    }
+
+}
@@ -0,0 +1,219 @@
+package tagcloud.bench;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of each stage of {@code TagCloudGenerator}, each run on the
+ * output of the previous stage for the same corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmarks {
+
+    /**
+     * A fresh copy of the {@code numericalSort} output, which
+     * {@code alphabeticalSort} consumes.
+     */
+    @State(Scope.Thread)
+    public static class SortedCounts {
+
+        /**
+         * The copy.
+         */
+        List<Object> pairs;
+
+        /**
+         * Copies the pairs before every call, outside the timed region
+         * (though the copy still shows up in the allocation profile).
+         *
+         * @param corpus
+         *            the corpus
+         */
+        @Setup(Level.Invocation)
+        public void copy(Corpus corpus) {
+            this.pairs = new LinkedList<>(corpus.sorted);
+        }
+    }
+
+    /**
+     * Builds the separator set.
+     *
+     * @return the set
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public Set<Character> generateSeparatorSet() throws Throwable {
+        return TagCloud.generateSeparatorSet(TagCloud.SEPARATORS);
+    }
+
+    /**
+     * Splits the whole corpus into words and separator runs.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @param bh
+     *            sink for the pieces
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public void nextWordOrSeparator(Corpus corpus, Throughput throughput,
+            Blackhole bh) throws Throwable {
+        String text = corpus.text;
+        int position = 0;
+        while (position < text.length()) {
+            String piece = TagCloud.nextWordOrSeparator(text, position,
+                    corpus.separators);
+            bh.consume(piece);
+            position += piece.length();
+        }
+        throughput.processed(corpus);
+    }
+
+    /**
+     * Reads and counts the whole corpus file.
+     *
+     * @param corpus
+     *            the corpus
+     * @param throughput
+     *            MB/s and tokens/s counters
+     * @return the word counts
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public SortedMap<String, Integer> parseWordsInFile(Corpus corpus,
+            Throughput throughput) throws Throwable {
+        SortedMap<String, Integer> counts;
+        try (BufferedReader in = Files.newBufferedReader(corpus.file)) {
+            counts = TagCloud.parseWordsInFile(in, corpus.separators);
+        }
+        throughput.processed(corpus);
+        return counts;
+    }
+
+    /**
+     * Sorts the word counts of the corpus by count.
+     *
+     * @param corpus
+     *            the corpus
+     * @return the sorted pairs
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public List<Object> numericalSort(Corpus corpus) throws Throwable {
+        return TagCloud.numericalSort(corpus.counts);
+    }
+
+    /**
+     * Takes the top words off the sorted pairs.
+     *
+     * @param corpus
+     *            the corpus
+     * @param sortedCounts
+     *            a fresh copy of the sorted pairs
+     * @return the words of the cloud, sorted by word
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public SortedMap<String, Integer> alphabeticalSort(Corpus corpus,
+            SortedCounts sortedCounts) throws Throwable {
+        return TagCloud.alphabeticalSort(sortedCounts.pairs,
+                Math.min(corpus.cloudWords, corpus.counts.size()));
+    }
+
+    /**
+     * Discarding channel and renderer of the current thread.
+     */
+    @State(Scope.Thread)
+    public static class Renderer {
+
+        /**
+         * The renderer, an {@code HtmlRenderer}.
+         */
+        Object renderer;
+
+        /**
+         * Channel discarding everything written to it.
+         */
+        WritableByteChannel out;
+
+        /**
+         * Creates the renderer and the channel.
+         *
+         * @throws Throwable
+         *             if the renderer cannot be created
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            this.renderer = TagCloud.newRenderer(StandardCharsets.UTF_8);
+            this.out = Channels.newChannel(OutputStream.nullOutputStream());
+        }
+    }
+
+    /**
+     * Writes the body of the page to a discarding writer.
+     *
+     * @param corpus
+     *            the corpus
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public void outputBody(Corpus corpus) throws Throwable {
+        PrintWriter out = new PrintWriter(Writer.nullWriter());
+        TagCloud.outputBody(corpus.cloud, out, corpus.maxCount);
+        out.flush();
+    }
+
+    /**
+     * Writes the whole page with {@code HtmlRenderer} to a discarding
+     * channel, for comparison with {@code outputBody}.
+     *
+     * @param corpus
+     *            the corpus
+     * @param renderer
+     *            the renderer and channel
+     * @throws Throwable
+     *             if the stage fails
+     */
+    @Benchmark
+    public void render(Corpus corpus, Renderer renderer) throws Throwable {
+        TagCloud.render(renderer.renderer, renderer.out,
+                corpus.file.toString(), corpus.cloud.size(), corpus.topWords);
+    }
+
+}
@@ -0,0 +1,827 @@
+package tagcloud.bench;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * Typed access to the tag cloud generator from the benchmarks.
+ *
+ * The generator lives in the default package, which cannot be imported from a
+ * named package, and JMH only accepts benchmarks in a named package. Its
+ * methods are therefore looked up once, as {@code static final} method
+ * handles, which the JIT compiles down to direct calls. Types of the default
+ * package are passed around as {@code Object}.
+ */
+public final class TagCloud {
+
+    /**
+     * Lookup used for every handle; the generator's API is public.
+     */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles
+            .publicLookup();
+
+    /**
+     * {@code TagCloudGenerator.SEPARATORS}.
+     */
+    public static final String SEPARATORS;
+
+    /**
+     * {@code TagCloudGenerator.generateSeparatorSet(String)}.
+     */
+    private static final MethodHandle GENERATE_SEPARATOR_SET;
+
+    /**
+     * {@code TagCloudGenerator.nextWordOrSeparator(String, int, Set)}.
+     */
+    private static final MethodHandle NEXT_WORD_OR_SEPARATOR;
+
+    /**
+     * {@code TagCloudGenerator.parseWordsInFile(BufferedReader, Set)}.
+     */
+    private static final MethodHandle PARSE_WORDS_IN_FILE;
+
+    /**
+     * {@code TagCloudGenerator.countWordsInFile(Reader, WordTokenizer)}.
+     */
+    private static final MethodHandle COUNT_WORDS_IN_FILE;
+
+    /**
+     * {@code TagCloudGenerator.numericalSort(SortedMap)}.
+     */
+    private static final MethodHandle NUMERICAL_SORT;
+
+    /**
+     * {@code TagCloudGenerator.alphabeticalSort(List, int)}.
+     */
+    private static final MethodHandle ALPHABETICAL_SORT;
+
+    /**
+     * {@code TagCloudGenerator.outputHeader(PrintWriter, String, int)}.
+     */
+    private static final MethodHandle OUTPUT_HEADER;
+
+    /**
+     * {@code TagCloudGenerator.outputBody(SortedMap, PrintWriter, int)}.
+     */
+    private static final MethodHandle OUTPUT_BODY;
+
+    /**
+     * {@code TagCloudGenerator.outputTagCloud(PrintWriter, String, int,
+     * TopWords)}.
+     */
+    private static final MethodHandle OUTPUT_TAG_CLOUD;
+
+    /**
+     * {@code new HtmlRenderer(Charset)}.
+     */
+    private static final MethodHandle NEW_RENDERER;
+
+    /**
+     * {@code HtmlRenderer.render(WritableByteChannel, String, int, TopWords)}.
+     */
+    private static final MethodHandle RENDER;
+
+    /**
+     * {@code new WordTokenizer(String)}.
+     */
+    private static final MethodHandle NEW_TOKENIZER;
+
+    /**
+     * {@code new ParallelWordCounter(String)}.
+     */
+    private static final MethodHandle NEW_PARALLEL_COUNTER;
+
+    /**
+     * {@code ParallelWordCounter.count(Path)}.
+     */
+    private static final MethodHandle PARALLEL_COUNT;
+
+    /**
+     * {@code WordCountTable.size()}.
+     */
+    private static final MethodHandle TABLE_SIZE;
+
+    /**
+     * {@code TopWords.select(WordCountTable, int)}.
+     */
+    private static final MethodHandle SELECT;
+
+    /**
+     * {@code WordTokenizer.foldCase(String)}.
+     */
+    private static final MethodHandle FOLD_CASE;
+
+    /**
+     * {@code new WordCountTable()}.
+     */
+    private static final MethodHandle NEW_TABLE;
+
+    /**
+     * {@code WordCountTable.add(char[], int, int, int)}.
+     */
+    private static final MethodHandle TABLE_ADD;
+
+    /**
+     * {@code new WordTrie()}.
+     */
+    private static final MethodHandle NEW_TRIE;
+
+    /**
+     * {@code WordTrie.add(char[], int, int, int)}.
+     */
+    private static final MethodHandle TRIE_ADD;
+
+    /**
+     * {@code WordCounter.top(int)}.
+     */
+    private static final MethodHandle TOP;
+
+    /**
+     * {@code WordCounter.estimatedBytes()}.
+     */
+    private static final MethodHandle ESTIMATED_BYTES;
+
+    /**
+     * {@code new MappedWordScanner(WordTokenizer, Charset, int, boolean)}.
+     */
+    private static final MethodHandle NEW_SCANNER;
+
+    /**
+     * {@code MappedWordScanner.scan(FileChannel, long, long, Sink)}.
+     */
+    private static final MethodHandle SCAN;
+
+    /**
+     * {@code MappedWordScanner.vectorized()}.
+     */
+    private static final MethodHandle VECTORIZED;
+
+    /**
+     * {@code new NGramCounter(int)}.
+     */
+    private static final MethodHandle NEW_NGRAM_COUNTER;
+
+    /**
+     * {@code new ConcurrentWordCounter(String)}.
+     */
+    private static final MethodHandle NEW_CONCURRENT_COUNTER;
+
+    /**
+     * {@code ConcurrentWordCounter.add(CharSequence)}.
+     */
+    private static final MethodHandle CONCURRENT_ADD;
+
+    /**
+     * {@code ConcurrentWordCounter.flush()}.
+     */
+    private static final MethodHandle CONCURRENT_FLUSH;
+
+    /**
+     * {@code ConcurrentWordCounter.top(int)}.
+     */
+    private static final MethodHandle CONCURRENT_TOP;
+
+    static {
+        try {
+            Class<?> generator = type("TagCloudGenerator");
+            Class<?> tokenizer = type("WordTokenizer");
+            Class<?> table = type("WordCountTable");
+            Class<?> topWords = type("TopWords");
+            Class<?> parallel = type("ParallelWordCounter");
+            Class<?> renderer = type("HtmlRenderer");
+            Class<?> counter = type("WordCounter");
+            Class<?> trie = type("WordTrie");
+            Class<?> scanner = type("MappedWordScanner");
+            Class<?> sink = type("WordTokenizer$Sink");
+            Class<?> ngrams = type("NGramCounter");
+            Class<?> concurrent = type("ConcurrentWordCounter");
+
+            SEPARATORS = (String) generator.getField("SEPARATORS").get(null);
+            GENERATE_SEPARATOR_SET = erase(LOOKUP.findStatic(generator,
+                    "generateSeparatorSet",
+                    MethodType.methodType(Set.class, String.class)));
+            NEXT_WORD_OR_SEPARATOR = erase(LOOKUP.findStatic(generator,
+                    "nextWordOrSeparator", MethodType.methodType(String.class,
+                            String.class, int.class, Set.class)));
+            PARSE_WORDS_IN_FILE = erase(LOOKUP.findStatic(generator,
+                    "parseWordsInFile", MethodType.methodType(SortedMap.class,
+                            BufferedReader.class, Set.class)));
+            COUNT_WORDS_IN_FILE = erase(LOOKUP.findStatic(generator,
+                    "countWordsInFile",
+                    MethodType.methodType(table, Reader.class, tokenizer)));
+            NUMERICAL_SORT = erase(LOOKUP.findStatic(generator,
+                    "numericalSort",
+                    MethodType.methodType(List.class, SortedMap.class)));
+            ALPHABETICAL_SORT = erase(LOOKUP.findStatic(generator,
+                    "alphabeticalSort", MethodType.methodType(SortedMap.class,
+                            List.class, int.class)));
+            OUTPUT_HEADER = erase(LOOKUP.findStatic(generator, "outputHeader",
+                    MethodType.methodType(void.class, PrintWriter.class,
+                            String.class, int.class)));
+            OUTPUT_BODY = erase(LOOKUP.findStatic(generator, "outputBody",
+                    MethodType.methodType(void.class, SortedMap.class,
+                            PrintWriter.class, int.class)));
+            OUTPUT_TAG_CLOUD = erase(LOOKUP.findStatic(generator,
+                    "outputTagCloud", MethodType.methodType(void.class,
+                            PrintWriter.class, String.class, int.class,
+                            topWords)));
+            NEW_RENDERER = erase(LOOKUP.findConstructor(renderer,
+                    MethodType.methodType(void.class, Charset.class)));
+            RENDER = erase(LOOKUP.findVirtual(renderer, "render",
+                    MethodType.methodType(void.class,
+                            WritableByteChannel.class, String.class,
+                            int.class, topWords)));
+            NEW_TOKENIZER = erase(LOOKUP.findConstructor(tokenizer,
+                    MethodType.methodType(void.class, String.class)));
+            NEW_PARALLEL_COUNTER = erase(LOOKUP.findConstructor(parallel,
+                    MethodType.methodType(void.class, String.class)));
+            PARALLEL_COUNT = erase(LOOKUP.findVirtual(parallel, "count",
+                    MethodType.methodType(table, Path.class)));
+            TABLE_SIZE = erase(LOOKUP.findVirtual(table, "size",
+                    MethodType.methodType(int.class)));
+            SELECT = erase(LOOKUP.findStatic(topWords, "select",
+                    MethodType.methodType(topWords, table, int.class)));
+            FOLD_CASE = erase(LOOKUP.findStatic(tokenizer, "foldCase",
+                    MethodType.methodType(String.class, String.class)));
+            NEW_TABLE = erase(LOOKUP.findConstructor(table,
+                    MethodType.methodType(void.class)));
+            TABLE_ADD = erase(LOOKUP.findVirtual(table, "add",
+                    MethodType.methodType(int.class, char[].class, int.class,
+                            int.class, int.class)));
+            NEW_TRIE = erase(LOOKUP.findConstructor(trie,
+                    MethodType.methodType(void.class)));
+            TRIE_ADD = erase(LOOKUP.findVirtual(trie, "add",
+                    MethodType.methodType(void.class, char[].class, int.class,
+                            int.class, int.class)));
+            TOP = erase(LOOKUP.findVirtual(counter, "top",
+                    MethodType.methodType(topWords, int.class)));
+            ESTIMATED_BYTES = erase(LOOKUP.findVirtual(counter,
+                    "estimatedBytes", MethodType.methodType(long.class)));
+            NEW_SCANNER = erase(LOOKUP.findConstructor(scanner,
+                    MethodType.methodType(void.class, tokenizer,
+                            Charset.class, int.class, boolean.class)));
+            SCAN = erase(LOOKUP.findVirtual(scanner, "scan",
+                    MethodType.methodType(void.class, FileChannel.class,
+                            long.class, long.class, sink)));
+            VECTORIZED = erase(LOOKUP.findVirtual(scanner, "vectorized",
+                    MethodType.methodType(boolean.class)));
+            NEW_NGRAM_COUNTER = erase(LOOKUP.findConstructor(ngrams,
+                    MethodType.methodType(void.class, int.class)));
+            NEW_CONCURRENT_COUNTER = erase(LOOKUP.findConstructor(concurrent,
+                    MethodType.methodType(void.class, String.class)));
+            CONCURRENT_ADD = erase(LOOKUP.findVirtual(concurrent, "add",
+                    MethodType.methodType(void.class, CharSequence.class)));
+            CONCURRENT_FLUSH = erase(LOOKUP.findVirtual(concurrent, "flush",
+                    MethodType.methodType(void.class)));
+            CONCURRENT_TOP = erase(LOOKUP.findVirtual(concurrent, "top",
+                    MethodType.methodType(topWords, int.class)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private TagCloud() {
+    }
+
+    /**
+     * Loads a class of the default package.
+     *
+     * @param name
+     *            the simple name of the class
+     * @return the class
+     * @throws ClassNotFoundException
+     *             if the generator is not on the class path
+     */
+    private static Class<?> type(String name) throws ClassNotFoundException {
+        return Class.forName(name, true, TagCloud.class.getClassLoader());
+    }
+
+    /**
+     * Erases every reference type of {@code handle} to {@code Object}, so it
+     * can be invoked exactly without naming default-package types.
+     *
+     * @param handle
+     *            the method handle
+     * @return the erased handle
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        return handle.asType(handle.type().erase());
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.generateSeparatorSet}.
+     *
+     * @param separatorString
+     *            the separator characters
+     * @return the separator set
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<Character> generateSeparatorSet(String separatorString)
+            throws Throwable {
+        return (Set<Character>) (Object) GENERATE_SEPARATOR_SET
+                .invokeExact((Object) separatorString);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.nextWordOrSeparator}.
+     *
+     * @param text
+     *            the text
+     * @param position
+     *            the starting index
+     * @param separators
+     *            the separator set
+     * @return the word or separator string starting at {@code position}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static String nextWordOrSeparator(String text, int position,
+            Set<Character> separators) throws Throwable {
+        return (String) (Object) NEXT_WORD_OR_SEPARATOR
+                .invokeExact((Object) text, position, (Object) separators);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.parseWordsInFile}.
+     *
+     * @param file
+     *            the input
+     * @param separators
+     *            the separator set
+     * @return the word counts, sorted by word
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    @SuppressWarnings("unchecked")
+    public static SortedMap<String, Integer> parseWordsInFile(
+            BufferedReader file, Set<Character> separators) throws Throwable {
+        return (SortedMap<String, Integer>) (Object) PARSE_WORDS_IN_FILE
+                .invokeExact((Object) file, (Object) separators);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.countWordsInFile}.
+     *
+     * @param file
+     *            the input
+     * @param tokenizer
+     *            a {@code WordTokenizer}
+     * @return the {@code WordCountTable} of the input
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object countWordsInFile(Reader file, Object tokenizer)
+            throws Throwable {
+        return (Object) COUNT_WORDS_IN_FILE.invokeExact((Object) file,
+                tokenizer);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.numericalSort}.
+     *
+     * @param map
+     *            the word counts
+     * @return the word-count pairs, by decreasing count
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> numericalSort(SortedMap<String, Integer> map)
+            throws Throwable {
+        return (List<Object>) (Object) NUMERICAL_SORT
+                .invokeExact((Object) map);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.alphabeticalSort}.
+     *
+     * @param sortedCounts
+     *            the pairs returned by {@link #numericalSort}
+     * @param n
+     *            the number of pairs to take
+     * @return the first {@code n} pairs, sorted by word
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    @SuppressWarnings("unchecked")
+    public static SortedMap<String, Integer> alphabeticalSort(
+            List<Object> sortedCounts, int n) throws Throwable {
+        return (SortedMap<String, Integer>) (Object) ALPHABETICAL_SORT
+                .invokeExact((Object) sortedCounts, n);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.outputHeader}.
+     *
+     * @param html
+     *            the output
+     * @param inputFileName
+     *            the name shown in the page
+     * @param cloudWordAmt
+     *            the number of words in the cloud
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void outputHeader(PrintWriter html, String inputFileName,
+            int cloudWordAmt) throws Throwable {
+        OUTPUT_HEADER.invokeExact((Object) html, (Object) inputFileName,
+                cloudWordAmt);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.outputBody}.
+     *
+     * @param outputWords
+     *            the words of the cloud, sorted by word
+     * @param out
+     *            the output
+     * @param maxWordCount
+     *            the highest count in {@code outputWords}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void outputBody(SortedMap<String, Integer> outputWords,
+            PrintWriter out, int maxWordCount) throws Throwable {
+        OUTPUT_BODY.invokeExact((Object) outputWords, (Object) out,
+                maxWordCount);
+    }
+
+    /**
+     * Calls {@code TagCloudGenerator.outputTagCloud}.
+     *
+     * @param html
+     *            the output
+     * @param inputFileName
+     *            the name shown in the page
+     * @param cloudWordAmt
+     *            the number of words in the cloud
+     * @param words
+     *            a {@code TopWords}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void outputTagCloud(PrintWriter html, String inputFileName,
+            int cloudWordAmt, Object words) throws Throwable {
+        OUTPUT_TAG_CLOUD.invokeExact((Object) html, (Object) inputFileName,
+                cloudWordAmt, words);
+    }
+
+    /**
+     * Creates an {@code HtmlRenderer}.
+     *
+     * @param charset
+     *            charset of the output
+     * @return the renderer
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newRenderer(Charset charset) throws Throwable {
+        return (Object) NEW_RENDERER.invokeExact((Object) charset);
+    }
+
+    /**
+     * Calls {@code HtmlRenderer.render}.
+     *
+     * @param renderer
+     *            an {@code HtmlRenderer}
+     * @param out
+     *            the output channel
+     * @param inputFileName
+     *            the name shown in the page
+     * @param cloudWordAmt
+     *            the number of words in the cloud
+     * @param words
+     *            a {@code TopWords}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void render(Object renderer, WritableByteChannel out,
+            String inputFileName, int cloudWordAmt, Object words)
+            throws Throwable {
+        RENDER.invokeExact(renderer, (Object) out, (Object) inputFileName,
+                cloudWordAmt, words);
+    }
+
+    /**
+     * Creates a {@code WordTokenizer}.
+     *
+     * @param separatorString
+     *            the separator characters
+     * @return the tokenizer
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newTokenizer(String separatorString)
+            throws Throwable {
+        return (Object) NEW_TOKENIZER.invokeExact((Object) separatorString);
+    }
+
+    /**
+     * Creates a {@code ParallelWordCounter} on the common pool.
+     *
+     * @param separatorString
+     *            the separator characters
+     * @return the counter
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newParallelCounter(String separatorString)
+            throws Throwable {
+        return (Object) NEW_PARALLEL_COUNTER
+                .invokeExact((Object) separatorString);
+    }
+
+    /**
+     * Calls {@code ParallelWordCounter.count}.
+     *
+     * @param counter
+     *            a {@code ParallelWordCounter}
+     * @param file
+     *            the input file
+     * @return the {@code WordCountTable} of the file
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object parallelCount(Object counter, Path file)
+            throws Throwable {
+        return (Object) PARALLEL_COUNT.invokeExact(counter, (Object) file);
+    }
+
+    /**
+     * Calls {@code WordCountTable.size}.
+     *
+     * @param table
+     *            a {@code WordCountTable}
+     * @return the number of distinct words in {@code table}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static int tableSize(Object table) throws Throwable {
+        return (int) TABLE_SIZE.invokeExact(table);
+    }
+
+    /**
+     * Calls {@code TopWords.select}.
+     *
+     * @param table
+     *            a {@code WordCountTable}
+     * @param k
+     *            the number of words to select
+     * @return the {@code TopWords} of {@code table}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object select(Object table, int k) throws Throwable {
+        return (Object) SELECT.invokeExact(table, k);
+    }
+
+    /**
+     * Calls {@code WordTokenizer.foldCase}.
+     *
+     * @param word
+     *            the word
+     * @return {@code word} case folded the way the tokenizer folds it
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static String foldCase(String word) throws Throwable {
+        return (String) (Object) FOLD_CASE.invokeExact((Object) word);
+    }
+
+    /**
+     * Creates an empty {@code WordCountTable}.
+     *
+     * @return the table
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newTable() throws Throwable {
+        return (Object) NEW_TABLE.invokeExact();
+    }
+
+    /**
+     * Calls {@code WordCountTable.add(char[], int, int, int)}.
+     *
+     * @param table
+     *            a {@code WordCountTable}
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @param count
+     *            the number of occurrences to add
+     * @return the id of the word
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static int tableAdd(Object table, char[] text, int offset,
+            int length, int count) throws Throwable {
+        return (int) TABLE_ADD.invokeExact(table, (Object) text, offset,
+                length, count);
+    }
+
+    /**
+     * Creates an empty {@code WordTrie}.
+     *
+     * @return the trie
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newTrie() throws Throwable {
+        return (Object) NEW_TRIE.invokeExact();
+    }
+
+    /**
+     * Calls {@code WordTrie.add(char[], int, int, int)}.
+     *
+     * @param trie
+     *            a {@code WordTrie}
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            index of the first character of the word
+     * @param length
+     *            number of characters in the word
+     * @param count
+     *            the number of occurrences to add
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void trieAdd(Object trie, char[] text, int offset,
+            int length, int count) throws Throwable {
+        TRIE_ADD.invokeExact(trie, (Object) text, offset, length, count);
+    }
+
+    /**
+     * Calls {@code WordCounter.top}.
+     *
+     * @param counter
+     *            a {@code WordCounter}
+     * @param k
+     *            the number of words to select
+     * @return the {@code TopWords} of {@code counter}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object top(Object counter, int k) throws Throwable {
+        return (Object) TOP.invokeExact(counter, k);
+    }
+
+    /**
+     * Calls {@code WordCounter.estimatedBytes}.
+     *
+     * @param counter
+     *            a {@code WordCounter}
+     * @return the estimated heap size of {@code counter}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static long estimatedBytes(Object counter) throws Throwable {
+        return (long) ESTIMATED_BYTES.invokeExact(counter);
+    }
+
+    /**
+     * Creates a {@code MappedWordScanner}.
+     *
+     * @param tokenizer
+     *            a {@code WordTokenizer}
+     * @param charset
+     *            the charset of the files scanned
+     * @param windowSize
+     *            upper bound on the size of one mapped window
+     * @param vectorize
+     *            whether to use the Vector API path if it is available
+     * @return the scanner
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newScanner(Object tokenizer, Charset charset,
+            int windowSize, boolean vectorize) throws Throwable {
+        return (Object) NEW_SCANNER.invokeExact(tokenizer, (Object) charset,
+                windowSize, vectorize);
+    }
+
+    /**
+     * Calls {@code MappedWordScanner.scan}.
+     *
+     * @param scanner
+     *            a {@code MappedWordScanner}
+     * @param channel
+     *            the file to scan
+     * @param start
+     *            first byte to scan
+     * @param end
+     *            byte just past the last one to scan
+     * @param sink
+     *            a {@code WordTokenizer.Sink}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void scan(Object scanner, FileChannel channel, long start,
+            long end, Object sink) throws Throwable {
+        SCAN.invokeExact(scanner, (Object) channel, start, end, sink);
+    }
+
+    /**
+     * Calls {@code MappedWordScanner.vectorized}.
+     *
+     * @param scanner
+     *            a {@code MappedWordScanner}
+     * @return whether the scanner uses the Vector API path
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static boolean vectorized(Object scanner) throws Throwable {
+        return (boolean) VECTORIZED.invokeExact(scanner);
+    }
+
+    /**
+     * Creates an empty {@code NGramCounter}.
+     *
+     * @param n
+     *            the number of words per phrase
+     * @return the counter
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newNGramCounter(int n) throws Throwable {
+        return (Object) NEW_NGRAM_COUNTER.invokeExact(n);
+    }
+
+    /**
+     * Creates an empty {@code ConcurrentWordCounter}.
+     *
+     * @param separatorString
+     *            the separator characters
+     * @return the counter
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object newConcurrentCounter(String separatorString)
+            throws Throwable {
+        return (Object) NEW_CONCURRENT_COUNTER
+                .invokeExact((Object) separatorString);
+    }
+
+    /**
+     * Calls {@code ConcurrentWordCounter.add}.
+     *
+     * @param counter
+     *            a {@code ConcurrentWordCounter}
+     * @param fragment
+     *            the text
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void concurrentAdd(Object counter, CharSequence fragment)
+            throws Throwable {
+        CONCURRENT_ADD.invokeExact(counter, (Object) fragment);
+    }
+
+    /**
+     * Calls {@code ConcurrentWordCounter.flush}.
+     *
+     * @param counter
+     *            a {@code ConcurrentWordCounter}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static void concurrentFlush(Object counter) throws Throwable {
+        CONCURRENT_FLUSH.invokeExact(counter);
+    }
+
+    /**
+     * Calls {@code ConcurrentWordCounter.top}.
+     *
+     * @param counter
+     *            a {@code ConcurrentWordCounter}
+     * @param k
+     *            the number of words to select
+     * @return the {@code TopWords}
+     * @throws Throwable
+     *             anything the generator throws
+     */
+    public static Object concurrentTop(Object counter, int k)
+            throws Throwable {
+        return (Object) CONCURRENT_TOP.invokeExact(counter, k);
+    }
+
+}
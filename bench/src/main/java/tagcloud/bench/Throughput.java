@@ -0,0 +1,47 @@
+package tagcloud.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results of the benchmarks that process the whole corpus: JMH
+ * reports each field as a rate next to ops/s, giving MB/s and tokens/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    /**
+     * Megabytes of input processed.
+     */
+    public double megabytes;
+
+    /**
+     * Tokens of input processed.
+     */
+    public long tokens;
+
+    /**
+     * Resets the counters at the start of every iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.megabytes = 0;
+        this.tokens = 0;
+    }
+
+    /**
+     * Records one pass over {@code corpus}.
+     *
+     * @param corpus
+     *            the corpus processed
+     */
+    void processed(Corpus corpus) {
+        this.megabytes += corpus.megabytes;
+        this.tokens += corpus.tokens;
+    }
+
+}
@@ -0,0 +1,162 @@
+package tagcloud.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of text whose word frequencies follow Zipf's law,
+ * like natural language: the word of rank r occurs with probability
+ * proportional to {@code 1 / r^exponent}.
+ *
+ * The word of rank r is r written in bijective base 26 ("a", "b", ...,
+ * "z", "aa", ...), so frequent words are short. About one token in eight is
+ * capitalized and one in sixteen is followed by punctuation, so case folding
+ * and separator runs are exercised; lines hold about twelve words. The same
+ * parameters always produce the same bytes.
+ */
+public final class ZipfCorpus {
+
+    /**
+     * Number of letters.
+     */
+    private static final int LETTERS = 26;
+
+    /**
+     * Words per line.
+     */
+    private static final int WORDS_PER_LINE = 12;
+
+    /**
+     * One token in this many is capitalized.
+     */
+    private static final int CAPITALIZE_EVERY = 8;
+
+    /**
+     * One token in this many is followed by punctuation.
+     */
+    private static final int PUNCTUATE_EVERY = 16;
+
+    /**
+     * Punctuation put after some tokens.
+     */
+    private static final String[] PUNCTUATION = { ",", ".", ";", "!", "?",
+            " -", ":" };
+
+    /**
+     * Number of bytes written.
+     */
+    private final long bytes;
+
+    /**
+     * Number of words written.
+     */
+    private final long tokens;
+
+    /**
+     * Writes a corpus to {@code file}.
+     *
+     * @param file
+     *            the file to write
+     * @param size
+     *            number of bytes to write, rounded up to the end of a word
+     * @param vocabulary
+     *            number of distinct words
+     * @param exponent
+     *            the Zipf exponent
+     * @param seed
+     *            the random seed
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public ZipfCorpus(Path file, long size, int vocabulary, double exponent,
+            long seed) throws IOException {
+        double[] cdf = new double[vocabulary];
+        double sum = 0;
+        for (int r = 0; r < vocabulary; r++) {
+            sum += 1 / Math.pow(r + 1, exponent);
+            cdf[r] = sum;
+        }
+        String[] words = new String[vocabulary];
+        for (int r = 0; r < vocabulary; r++) {
+            words[r] = word(r);
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        long written = 0;
+        long count = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.US_ASCII)) {
+            StringBuilder line = new StringBuilder();
+            while (written < size) {
+                line.setLength(0);
+                for (int i = 0; i < WORDS_PER_LINE && written
+                        + line.length() < size; i++) {
+                    if (i > 0) {
+                        line.append(' ');
+                    }
+                    int rank = Arrays.binarySearch(cdf,
+                            random.nextDouble() * sum);
+                    String word = words[rank < 0 ? -rank - 1 : rank];
+                    if (random.nextInt(CAPITALIZE_EVERY) == 0) {
+                        line.append(Character.toUpperCase(word.charAt(0)))
+                                .append(word, 1, word.length());
+                    } else {
+                        line.append(word);
+                    }
+                    if (random.nextInt(PUNCTUATE_EVERY) == 0) {
+                        line.append(PUNCTUATION[random
+                                .nextInt(PUNCTUATION.length)]);
+                    }
+                    count++;
+                }
+                line.append('\n');
+                out.append(line);
+                written += line.length();
+            }
+        }
+        this.bytes = written;
+        this.tokens = count;
+    }
+
+    /**
+     * Returns the word of rank {@code r}.
+     *
+     * @param r
+     *            the zero-based rank
+     * @return {@code r + 1} in bijective base 26
+     */
+    private static String word(int r) {
+        StringBuilder word = new StringBuilder();
+        int n = r + 1;
+        while (n > 0) {
+            n--;
+            word.append((char) ('a' + n % LETTERS));
+            n /= LETTERS;
+        }
+        return word.reverse().toString();
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the size of the corpus
+     */
+    public long bytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the number of words written.
+     *
+     * @return the number of tokens of the corpus
+     */
+    public long tokens() {
+        return this.tokens;
+    }
+
+}
@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit test fixture for {@code WordCountIndex}.
+ */
+public final class WordCountIndexTest {
+
+    /**
+     * Charset of the input files.
+     */
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Returns the counts of {@code input}, made without an index.
+     *
+     * @param input
+     *            the input file
+     * @return the counts of the words of {@code input}
+     * @throws IOException
+     *             if the input cannot be read
+     */
+    private static WordCountTable rescan(Path input) throws IOException {
+        WordCountTable table = new WordCountTable();
+        char[] text = new String(Files.readAllBytes(input), CHARSET)
+                .toCharArray();
+        new WordTokenizer(TagCloudGenerator.SEPARATORS).tokenize(text, 0,
+                text.length, true, table);
+        return table;
+    }
+
+    /**
+     * Counting a file twice, the second time from the index, gives the same
+     * counts as a rescan, even for a word holding an unpaired surrogate
+     * ("ßß 😀" makes the tokenizer start a word at the low surrogate of the
+     * emoji).
+     *
+     * @param dir
+     *            a temporary directory
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void testReuseMatchesRescan(@TempDir Path dir) throws IOException {
+        Path input = dir.resolve("input.txt");
+        Files.write(input, "ßß 😀\nhello world\n".getBytes(CHARSET));
+        Path indexFile = dir.resolve("input.txt" + WordCountIndex.SUFFIX);
+
+        WordCountTable first = new WordCountIndex(indexFile,
+                TagCloudGenerator.SEPARATORS, CHARSET).count(input);
+        WordCountIndex index = new WordCountIndex(indexFile,
+                TagCloudGenerator.SEPARATORS, CHARSET);
+        WordCountTable second = index.count(input);
+
+        assertEquals(Files.size(input), index.reusedBytes());
+        assertEquals(rescan(input).toSortedMap(), first.toSortedMap());
+        assertEquals(first.toSortedMap(), second.toSortedMap());
+    }
+
+    /**
+     * After lines are appended, counting from the index gives the same
+     * counts as a rescan of the whole file.
+     *
+     * @param dir
+     *            a temporary directory
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void testAppendMatchesRescan(@TempDir Path dir) throws IOException {
+        Path input = dir.resolve("input.txt");
+        Files.write(input, "ßß 😀\nhello world\n".getBytes(CHARSET));
+        Path indexFile = dir.resolve("input.txt" + WordCountIndex.SUFFIX);
+        WordCountIndex index = new WordCountIndex(indexFile,
+                TagCloudGenerator.SEPARATORS, CHARSET);
+        index.count(input);
+        long indexed = Files.size(input);
+
+        Files.write(input, "😀ß hello again\npartial".getBytes(CHARSET),
+                StandardOpenOption.APPEND);
+        WordCountTable table = index.count(input);
+
+        assertEquals(indexed, index.reusedBytes());
+        assertEquals(rescan(input).toSortedMap(), table.toSortedMap());
+    }
+
+}
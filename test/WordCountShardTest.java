@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JUnit test fixture for {@code WordCountShard}.
+ */
+public final class WordCountShardTest {
+
+    /**
+     * Returns the counts of {@code text}, tokenized as by
+     * {@code TagCloudGenerator}.
+     *
+     * @param text
+     *            the text
+     * @return the counts of the words of {@code text}
+     */
+    private static WordCountTable count(String text) {
+        WordCountTable table = new WordCountTable();
+        char[] chars = text.toCharArray();
+        new WordTokenizer(TagCloudGenerator.SEPARATORS).tokenize(chars, 0,
+                chars.length, true, table);
+        return table;
+    }
+
+    /**
+     * A word holding an unpaired surrogate ("ßß 😀" makes the tokenizer start
+     * a word at the low surrogate of the emoji) reads back unchanged.
+     *
+     * @param dir
+     *            a temporary directory
+     * @throws IOException
+     *             if the shard cannot be written or read
+     */
+    @Test
+    public void testRoundTripLoneSurrogate(@TempDir Path dir)
+            throws IOException {
+        WordCountTable table = count("ßß 😀\n"
+                + "hello world hello\n");
+        Path shard = dir.resolve("a" + WordCountShard.SUFFIX);
+        WordCountShard.write(shard, table, TagCloudGenerator.SEPARATORS);
+
+        TopWords top = WordCountShard.top(List.of(shard),
+                TagCloudGenerator.SEPARATORS, Integer.MAX_VALUE);
+
+        assertEquals(table.toSortedMap(), top.toSortedMap());
+        assertEquals(1, top.toSortedMap().get("\uDE00").intValue());
+    }
+
+    /**
+     * Shards sharing words, some with unpaired surrogates, merge into the
+     * counts of their texts together.
+     *
+     * @param dir
+     *            a temporary directory
+     * @throws IOException
+     *             if the shards cannot be written or read
+     */
+    @Test
+    public void testMergeLoneSurrogates(@TempDir Path dir)
+            throws IOException {
+        String first = "ßß 😀 apple \uDE00x\n";
+        String second = "😀ß apple banana \uDE00x \uDE00\n";
+        Path a = dir.resolve("a" + WordCountShard.SUFFIX);
+        Path b = dir.resolve("b" + WordCountShard.SUFFIX);
+        WordCountShard.write(a, count(first), TagCloudGenerator.SEPARATORS);
+        WordCountShard.write(b, count(second), TagCloudGenerator.SEPARATORS);
+
+        TopWords top = WordCountShard.top(List.of(a, b),
+                TagCloudGenerator.SEPARATORS, Integer.MAX_VALUE);
+
+        assertEquals(count(first + second).toSortedMap(), top.toSortedMap());
+    }
+
+}